@@ -0,0 +1,370 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.bench;
+
+import at.co.hohl.easytravel.TravelPlugin;
+import at.co.hohl.easytravel.ports.CuboidArea;
+import at.co.hohl.easytravel.ports.Destination;
+import at.co.hohl.easytravel.ports.TravelPort;
+import at.co.hohl.easytravel.ports.TravelPortContainer;
+import at.co.hohl.easytravel.ports.depart.ManualDeparture;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * TravelPlugin which runs without a Bukkit server. The server, its worlds, players and scheduler are simulated, and the
+ * configuration is kept in memory. Scheduled tasks get run right away on the calling thread, repeating tasks never.
+ *
+ * @author Michael Hohl
+ */
+public class BenchPlugin extends TravelPlugin {
+    /**
+     * Configuration used instead of the config.yml.
+     */
+    private final YamlConfiguration config = new YamlConfiguration();
+
+    /**
+     * Worlds of the simulated server.
+     */
+    private final List<World> worlds = new ArrayList<World>();
+
+    /**
+     * Online players of the simulated server.
+     */
+    private final List<Player> players = new ArrayList<Player>();
+
+    /**
+     * Logger of the simulated server.
+     */
+    private final Logger logger = Logger.getLogger("Minecraft.EasyTravel.Benchmark");
+
+    /**
+     * Container used instead of the one created on enabling the plugin.
+     */
+    private TravelPortContainer travelPorts;
+
+    /**
+     * Number of tasks scheduled at the simulated scheduler.
+     */
+    private long scheduledTasks;
+
+    /**
+     * Creates a new plugin with an empty simulated server.
+     */
+    public BenchPlugin() {
+        final BukkitScheduler scheduler = (BukkitScheduler) createProxy(BukkitScheduler.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return onScheduled(proxy, method, args);
+            }
+        });
+        Server server = (Server) createProxy(Server.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getScheduler".equals(method.getName())) {
+                    return scheduler;
+                } else if ("getWorlds".equals(method.getName())) {
+                    return new ArrayList<World>(worlds);
+                } else if ("getOnlinePlayers".equals(method.getName())) {
+                    return players.toArray(new Player[players.size()]);
+                } else if ("getLogger".equals(method.getName())) {
+                    return logger;
+                }
+                return handleObjectMethod(proxy, method, args, "Server");
+            }
+        });
+
+        // JavaPlugin gets the server when it gets initialized by the plugin loader.
+        try {
+            for (Field field : JavaPlugin.class.getDeclaredFields()) {
+                if (field.getType() == Server.class) {
+                    field.setAccessible(true);
+                    field.set(this, server);
+                }
+            }
+        } catch (IllegalAccessException exception) {
+            throw new IllegalStateException("Can't set the server of the plugin!", exception);
+        }
+    }
+
+    @Override
+    public FileConfiguration getConfig() {
+        return config;
+    }
+
+    @Override
+    public TravelPortContainer getTravelPorts() {
+        return travelPorts;
+    }
+
+    /**
+     * @param travelPorts the container returned by getTravelPorts().
+     */
+    public void setTravelPorts(TravelPortContainer travelPorts) {
+        this.travelPorts = travelPorts;
+    }
+
+    /**
+     * Sets an option of the configuration.
+     *
+     * @param path  the path of the option.
+     * @param value the value of the option.
+     */
+    public void set(String path, Object value) {
+        config.set(path, value);
+    }
+
+    /**
+     * Adds a world to the simulated server.
+     *
+     * @param name the name of the world.
+     * @return the created world.
+     */
+    public World addWorld(final String name) {
+        final UUID uniqueId = UUID.nameUUIDFromBytes(name.getBytes());
+        World world = (World) createProxy(World.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getName".equals(method.getName())) {
+                    return name;
+                } else if ("getUID".equals(method.getName())) {
+                    return uniqueId;
+                }
+                return handleObjectMethod(proxy, method, args, name);
+            }
+        });
+        worlds.add(world);
+        return world;
+    }
+
+    /**
+     * Adds an online player to the simulated server.
+     *
+     * @param player the simulated player.
+     * @return the player.
+     */
+    public Player addPlayer(SimulatedPlayer player) {
+        players.add(player.getPlayer());
+        return player.getPlayer();
+    }
+
+    /**
+     * @return the number of tasks scheduled at the simulated scheduler.
+     */
+    public long getScheduledTasks() {
+        return scheduledTasks;
+    }
+
+    /**
+     * Creates TravelPorts with random areas and destinations.
+     *
+     * @param container the container which creates the TravelPorts.
+     * @param worldId   the id of the world of the TravelPorts.
+     * @param count     the number of TravelPorts to create.
+     * @param spread    the width and length of the region, in which the TravelPorts get placed.
+     * @param random    the generator of the positions.
+     */
+    public static void createPorts(TravelPortContainer container, int worldId, int count, int spread,
+                                      Random random) {
+        for (int index = 0; index < count; ++index) {
+            int x = random.nextInt(spread) - spread / 2, y = 40 + random.nextInt(60);
+            int z = random.nextInt(spread) - spread / 2;
+
+            TravelPort port = container.create();
+            port.setName("Port " + index);
+            port.setOwner("Player" + random.nextInt(100));
+            port.setPrice(random.nextInt(4) == 0 ? random.nextInt(100) : 0);
+            port.setArea(new CuboidArea(worldId, x, x + 2 + random.nextInt(8), y, y + 3, z, z + 2 + random.nextInt(8)));
+            port.setDestination(new Destination(worldId, x + 0.5, y, z + 0.5, random.nextFloat() * 360, 0));
+            port.setDeparture(new ManualDeparture(port));
+        }
+    }
+
+    /**
+     * Creates an empty temporary directory, which gets deleted when the benchmark exits.
+     *
+     * @param prefix the prefix of the name of the directory.
+     * @return the directory.
+     * @throws IOException thrown when the directory couldn't get created.
+     */
+    public static File createDirectory(String prefix) throws IOException {
+        final File directory = File.createTempFile(prefix, "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Can't create " + directory);
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                delete(directory);
+            }
+        });
+        return directory;
+    }
+
+    /**
+     * Deletes the passed file, or the passed directory with all its files.
+     *
+     * @param file the file to delete.
+     */
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Called when a method of the simulated scheduler got called. Runs delayed tasks right away.
+     *
+     * @param proxy  the scheduler.
+     * @param method the called method.
+     * @param args   the arguments of the method.
+     * @return the result of the method.
+     */
+    private Object onScheduled(Object proxy, Method method, Object[] args) {
+        if (method.getName().startsWith("schedule")) {
+            ++scheduledTasks;
+
+            if (!method.getName().contains("Repeating")) {
+                ((Runnable) args[1]).run();
+            }
+            return (int) scheduledTasks;
+        }
+        return handleObjectMethod(proxy, method, args, "Scheduler");
+    }
+
+    /**
+     * Creates a proxy, which implements the passed interface.
+     *
+     * @param type    the interface to implement.
+     * @param handler the handler of the calls.
+     * @return the proxy.
+     */
+    static Object createProxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(BenchPlugin.class.getClassLoader(), new Class[]{type}, handler);
+    }
+
+    /**
+     * Handles the methods of Object, and returns the default value for all other methods.
+     *
+     * @param proxy  the proxy.
+     * @param method the called method.
+     * @param args   the arguments of the method.
+     * @param name   the name returned by toString().
+     * @return the result of the method.
+     */
+    static Object handleObjectMethod(Object proxy, Method method, Object[] args, String name) {
+        Class<?> type = method.getReturnType();
+
+        if ("equals".equals(method.getName()) && args != null && args.length == 1) {
+            return proxy == args[0];
+        } else if ("hashCode".equals(method.getName()) && args == null) {
+            return System.identityHashCode(proxy);
+        } else if ("toString".equals(method.getName()) && args == null) {
+            return name;
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == int.class || type == long.class || type == short.class || type == byte.class) {
+            return type == long.class ? (Object) 0L : (Object) 0;
+        } else if (type == float.class || type == double.class) {
+            return type == float.class ? (Object) 0f : (Object) 0d;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Player of the simulated server, which could get moved around by the benchmark.
+     */
+    public static class SimulatedPlayer implements InvocationHandler {
+        private final String name;
+        private final UUID uniqueId;
+        private final Player player;
+        private final World world;
+        private double x, y, z;
+
+        /**
+         * Creates a new player.
+         *
+         * @param name  the name of the player.
+         * @param world the world of the player.
+         */
+        public SimulatedPlayer(String name, World world) {
+            this.name = name;
+            this.uniqueId = UUID.nameUUIDFromBytes(name.getBytes());
+            this.world = world;
+            this.player = (Player) createProxy(Player.class, this);
+        }
+
+        /**
+         * @return the player.
+         */
+        public Player getPlayer() {
+            return player;
+        }
+
+        /**
+         * Moves the player to the passed position.
+         *
+         * @param x the x coord.
+         * @param y the y coord.
+         * @param z the z coord.
+         */
+        public void moveTo(double x, double y, double z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            // Like the server, every call of getLocation() creates a new Location.
+            if ("getLocation".equals(method.getName()) && args == null) {
+                return new Location(world, x, y, z);
+            } else if ("getWorld".equals(method.getName())) {
+                return world;
+            } else if ("getName".equals(method.getName()) || "getDisplayName".equals(method.getName())) {
+                return name;
+            } else if ("getUniqueId".equals(method.getName())) {
+                return uniqueId;
+            } else if ("isOnline".equals(method.getName())) {
+                return true;
+            }
+            return handleObjectMethod(proxy, method, args, name);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Base class of the benchmarks. Runs a task for some warm up rounds, so the JIT compiled it, and prints the median
+ * and the best time of the measured rounds afterwards. Also prints the bytes allocated by the measuring thread and the
+ * garbage collections during the measured rounds.
+ *
+ * @author Michael Hohl
+ */
+public abstract class Benchmark {
+    /**
+     * Number of rounds which don't get measured.
+     */
+    private static final int WARM_UP_ROUNDS = 10;
+
+    /**
+     * Number of measured rounds.
+     */
+    private static final int MEASURED_ROUNDS = 20;
+
+    /**
+     * Receives the results of the tasks, so the JIT can't remove the work as dead code.
+     */
+    protected static volatile long sink;
+
+    /**
+     * Measures the passed task and prints the time per operation.
+     *
+     * @param name       the name of the task.
+     * @param operations the number of operations done by a single run of the task.
+     * @param task       the task to measure.
+     * @return the median time per operation in nanoseconds.
+     */
+    protected static double measure(String name, int operations, Runnable task) {
+        return measure(name, operations, WARM_UP_ROUNDS, MEASURED_ROUNDS, task);
+    }
+
+    /**
+     * Measures the passed task and prints the time per operation.
+     *
+     * @param name           the name of the task.
+     * @param operations     the number of operations done by a single run of the task.
+     * @param warmUpRounds   the number of rounds which don't get measured.
+     * @param measuredRounds the number of measured rounds.
+     * @param task           the task to measure.
+     * @return the median time per operation in nanoseconds.
+     */
+    protected static double measure(String name, int operations, int warmUpRounds, int measuredRounds, Runnable task) {
+        for (int round = 0; round < warmUpRounds; ++round) {
+            task.run();
+        }
+
+        long allocatedBytes = getAllocatedBytes();
+        long collections = getCollections();
+        long collectionTime = getCollectionTime();
+
+        long[] times = new long[measuredRounds];
+        for (int round = 0; round < measuredRounds; ++round) {
+            long start = System.nanoTime();
+            task.run();
+            times[round] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+
+        allocatedBytes = getAllocatedBytes() - allocatedBytes;
+        collections = getCollections() - collections;
+        collectionTime = getCollectionTime() - collectionTime;
+
+        System.out.println(String.format("%-40s median %12.1f ns/op, best %12.1f ns/op, %10.1f B/op, %d GCs (%d ms)",
+            name, (double) times[measuredRounds / 2] / operations, (double) times[0] / operations,
+            (double) allocatedBytes / measuredRounds / operations, collections, collectionTime));
+
+        return (double) times[measuredRounds / 2] / operations;
+    }
+
+    /**
+     * @return the number of bytes allocated by the current thread, or 0 if the JVM doesn't support it.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the number of garbage collections since the start of the JVM.
+     */
+    private static long getCollections() {
+        long collections = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections += Math.max(0, collector.getCollectionCount());
+        }
+        return collections;
+    }
+
+    /**
+     * @return the milliseconds spent by garbage collections since the start of the JVM.
+     */
+    private static long getCollectionTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return time;
+    }
+}
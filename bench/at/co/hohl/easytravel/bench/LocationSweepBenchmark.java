@@ -0,0 +1,207 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.bench;
+
+import at.co.hohl.easytravel.listener.TravelPlayerListener;
+import at.co.hohl.easytravel.ports.WorldRegistry;
+import at.co.hohl.easytravel.ports.implementation.file.FlatFileTravelPortContainer;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Measures the location sweep of the poll tracking with many online players. The players walk around randomly
+ * between the TravelPorts, and every sweep checks all of them once.
+ * <p/>
+ * The sweep used to schedule one delayed task per player. That part is measured on its own, with a queue modelled
+ * after the one of the CraftBukkit scheduler, so the output shows what the single pass saves per sweep.
+ *
+ * @author Michael Hohl
+ */
+public class LocationSweepBenchmark extends Benchmark {
+    /**
+     * Number of TravelPorts.
+     */
+    private static final int PORTS = 1000;
+
+    /**
+     * Width and length of the region, in which the TravelPorts and the players are.
+     */
+    private static final int SPREAD = 2000;
+
+    /**
+     * Number of sweeps per run.
+     */
+    private static final int SWEEPS = 100;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the number of online players, defaults to 500.
+     * @throws IOException thrown when the TravelPorts couldn't get stored.
+     */
+    public static void main(String[] args) throws IOException {
+        int playerCount = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        final Random random = new Random(playerCount);
+
+        BenchPlugin plugin = new BenchPlugin();
+        World world = plugin.addWorld("world");
+        FlatFileTravelPortContainer container =
+            new FlatFileTravelPortContainer(plugin, new File(BenchPlugin.createDirectory("sweep"), "ports.csv"));
+        container.load();
+        plugin.setTravelPorts(container);
+        BenchPlugin.createPorts(container, WorldRegistry.getId(world), PORTS, SPREAD, random);
+
+        final BenchPlugin.SimulatedPlayer[] players = new BenchPlugin.SimulatedPlayer[playerCount];
+        for (int index = 0; index < playerCount; ++index) {
+            players[index] = new BenchPlugin.SimulatedPlayer("Player" + index, world);
+            players[index].moveTo(random.nextInt(SPREAD) - SPREAD / 2, 40 + random.nextInt(60),
+                random.nextInt(SPREAD) - SPREAD / 2);
+            plugin.addPlayer(players[index]);
+        }
+
+        final TravelPlayerListener listener = new TravelPlayerListener(plugin);
+        measure("single pass, " + playerCount + " players", SWEEPS, new Runnable() {
+            public void run() {
+                for (int sweep = 0; sweep < SWEEPS; ++sweep) {
+                    for (BenchPlugin.SimulatedPlayer player : players) {
+                        player.moveTo(random.nextInt(SPREAD) - SPREAD / 2, 40 + random.nextInt(60),
+                            random.nextInt(SPREAD) - SPREAD / 2);
+                    }
+                    listener.onPlayerLocationUpdate();
+                }
+            }
+        });
+
+        final SchedulerQueue queue = new SchedulerQueue();
+        measure("task per player, " + playerCount + " players", SWEEPS, new Runnable() {
+            public void run() {
+                long locatedPlayers = 0;
+                for (int sweep = 0; sweep < SWEEPS; ++sweep) {
+                    final long[] located = new long[1];
+                    for (BenchPlugin.SimulatedPlayer simulatedPlayer : players) {
+                        final Player player = simulatedPlayer.getPlayer();
+                        queue.schedule(new Runnable() {
+                            public void run() {
+                                located[0] += player.hashCode();
+                            }
+                        }, 0);
+                    }
+                    queue.heartbeat();
+                    locatedPlayers += located[0];
+                }
+                sink = locatedPlayers;
+            }
+        });
+    }
+
+    /**
+     * Queue of delayed tasks, modelled after the scheduler of CraftBukkit. Every task gets wrapped into an object with
+     * its own id and is kept in a synchronized tree, sorted by the tick it should run at. The heartbeat of the main
+     * thread removes the due tasks and runs them.
+     */
+    private static class SchedulerQueue {
+        /**
+         * Tasks waiting for their tick.
+         */
+        private final TreeMap<Task, Boolean> tasks = new TreeMap<Task, Boolean>(new Comparator<Task>() {
+            public int compare(Task first, Task second) {
+                if (first.tick != second.tick) {
+                    return first.tick < second.tick ? -1 : 1;
+                }
+                return first.id < second.id ? -1 : (first.id == second.id ? 0 : 1);
+            }
+        });
+
+        /**
+         * Current tick of the server.
+         */
+        private long currentTick;
+
+        /**
+         * Id of the next scheduled task.
+         */
+        private int nextId;
+
+        /**
+         * Schedules the passed runnable.
+         *
+         * @param runnable the runnable to run.
+         * @param delay    the delay in ticks.
+         * @return the id of the task.
+         */
+        public synchronized int schedule(Runnable runnable, long delay) {
+            Task task = new Task(runnable, currentTick + delay, ++nextId);
+            synchronized (tasks) {
+                tasks.put(task, Boolean.TRUE);
+            }
+            return task.id;
+        }
+
+        /**
+         * Runs all due tasks and advances to the next tick.
+         */
+        public void heartbeat() {
+            List<Task> dueTasks = new ArrayList<Task>();
+            synchronized (tasks) {
+                while (!tasks.isEmpty()) {
+                    Map.Entry<Task, Boolean> first = tasks.firstEntry();
+                    if (first.getKey().tick > currentTick) {
+                        break;
+                    }
+                    dueTasks.add(tasks.pollFirstEntry().getKey());
+                }
+            }
+
+            for (Task task : dueTasks) {
+                task.runnable.run();
+            }
+            ++currentTick;
+        }
+
+        /**
+         * Task inside the queue.
+         */
+        private static class Task {
+            private final Runnable runnable;
+            private final long tick;
+            private final int id;
+
+            /**
+             * @param runnable the runnable to run.
+             * @param tick     the tick the runnable should run at.
+             * @param id       the id of the task.
+             */
+            public Task(Runnable runnable, long tick, int id) {
+                this.runnable = runnable;
+                this.tick = tick;
+                this.id = id;
+            }
+        }
+    }
+}
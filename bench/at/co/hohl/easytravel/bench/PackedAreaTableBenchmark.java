@@ -0,0 +1,130 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.bench;
+
+import at.co.hohl.easytravel.ports.BoundingBox;
+import at.co.hohl.easytravel.ports.CuboidArea;
+import at.co.hohl.easytravel.ports.index.PackedAreaTable;
+import at.co.hohl.easytravel.ports.implementation.file.FlatFileTravelPort;
+
+import java.util.Random;
+
+/**
+ * Compares a scan of the PackedAreaTable with calling CuboidArea.contains for every area. Both look up the same
+ * random blocks in a world with randomly placed areas. Every fourth block is inside an area, the others miss all areas,
+ * like for a player who walks around.
+ * <p/>
+ * Run with -XX:-UseSuperWord as second run, to see how much of the scan is won by the vectorization.
+ *
+ * @author Michael Hohl
+ */
+public class PackedAreaTableBenchmark extends Benchmark {
+    /**
+     * Number of looked up blocks per run.
+     */
+    private static final int LOOKUPS = 10000;
+
+    /**
+     * Every HIT_RATIO-th looked up block is inside an area.
+     */
+    private static final int HIT_RATIO = 4;
+
+    /**
+     * Id of the world used for all areas.
+     */
+    private static final int WORLD_ID = 0;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the numbers of areas to check, defaults to 100, 1000 and 10000.
+     */
+    public static void main(String[] args) {
+        int[] sizes = {100, 1000, 10000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int index = 0; index < args.length; ++index) {
+                sizes[index] = Integer.parseInt(args[index]);
+            }
+        }
+
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    /**
+     * Measures both lookups for the passed number of areas.
+     *
+     * @param size the number of areas.
+     */
+    private static void run(int size) {
+        Random random = new Random(size);
+
+        final CuboidArea[] areas = new CuboidArea[size];
+        final PackedAreaTable table = new PackedAreaTable();
+        for (int id = 0; id < size; ++id) {
+            int x = random.nextInt(20000) - 10000, y = random.nextInt(128), z = random.nextInt(20000) - 10000;
+            areas[id] = new CuboidArea(WORLD_ID, x, x + random.nextInt(16), y, y + random.nextInt(8), z,
+                z + random.nextInt(16));
+            table.add(new FlatFileTravelPort(null, id), areas[id].getBoundingBox());
+        }
+
+        final int[] blocks = new int[LOOKUPS * 3];
+        for (int index = 0; index < LOOKUPS; ++index) {
+            if (index % HIT_RATIO == 0) {
+                BoundingBox box = areas[random.nextInt(size)].getBoundingBox();
+                blocks[index * 3] = box.getLowX();
+                blocks[index * 3 + 1] = box.getLowY();
+                blocks[index * 3 + 2] = box.getLowZ();
+            } else {
+                blocks[index * 3] = random.nextInt(20000) - 10000;
+                blocks[index * 3 + 1] = random.nextInt(128);
+                blocks[index * 3 + 2] = random.nextInt(20000) - 10000;
+            }
+        }
+
+        measure("CuboidArea.contains, " + size + " areas", LOOKUPS, new Runnable() {
+            public void run() {
+                long found = 0;
+                for (int index = 0; index < LOOKUPS; ++index) {
+                    int x = blocks[index * 3], y = blocks[index * 3 + 1], z = blocks[index * 3 + 2];
+                    for (CuboidArea area : areas) {
+                        if (area.contains(WORLD_ID, x, y, z)) {
+                            ++found;
+                        }
+                    }
+                }
+                sink = found;
+            }
+        });
+
+        final int[] matches = new int[size];
+        measure("PackedAreaTable.scan, " + size + " areas", LOOKUPS, new Runnable() {
+            public void run() {
+                long found = 0;
+                for (int index = 0; index < LOOKUPS; ++index) {
+                    found += table.scan(blocks[index * 3], blocks[index * 3 + 1], blocks[index * 3 + 2], matches);
+                }
+                sink = found;
+            }
+        });
+    }
+}
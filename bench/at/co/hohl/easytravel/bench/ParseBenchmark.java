@@ -0,0 +1,296 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.bench;
+
+import at.co.hohl.easytravel.ports.AreaHelper;
+import at.co.hohl.easytravel.ports.Destination;
+import at.co.hohl.easytravel.ports.TravelPort;
+import at.co.hohl.easytravel.ports.WorldRegistry;
+import at.co.hohl.easytravel.ports.depart.DepartureHelper;
+import at.co.hohl.easytravel.ports.implementation.file.FlatFileTravelPort;
+import at.co.hohl.easytravel.ports.implementation.file.FlatFileTravelPortContainer;
+import at.co.hohl.utils.StringHelper;
+import at.co.hohl.utils.storage.CsvLineParser;
+import at.co.hohl.utils.storage.PropertiesParser;
+import at.co.hohl.utils.storage.SyntaxException;
+import org.bukkit.World;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures the parse throughput of the lines of a ports.csv, on a single thread and without reading the file. The
+ * columns get parsed by the CsvLineParser, and by String.split like the parser did before, to compare both. The same
+ * is done for the properties of the destinations, with the PropertiesParser and with the regex and the HashMap used
+ * before. The areas and destinations get parsed on their own too, and at last the whole line gets decoded into a
+ * TravelPort, like the container does when it loads the file.
+ *
+ * @author Michael Hohl
+ */
+public class ParseBenchmark extends Benchmark {
+    /**
+     * Width and length of the region, in which the TravelPorts are.
+     */
+    private static final int SPREAD = 20000;
+
+    /**
+     * Columns of a line of the ports.csv.
+     */
+    private static final int ID = 0, NAME = 1, TARGET = 2, OWNER = 3, ALLOWED = 4, PASSWORD = 5, PRICE = 6,
+        AREA = 7, DESTINATION = 8, DEPARTURE = 9;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the number of lines, defaults to 10000.
+     * @throws IOException thrown when the TravelPorts couldn't get stored or read.
+     */
+    public static void main(String[] args) throws IOException {
+        int lineCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+
+        BenchPlugin plugin = new BenchPlugin();
+        World world = plugin.addWorld("world");
+        plugin.set("journal", false);
+        File csvFile = new File(BenchPlugin.createDirectory("parse"), "ports.csv");
+        final FlatFileTravelPortContainer container = new FlatFileTravelPortContainer(plugin, csvFile);
+        container.load();
+        BenchPlugin.createPorts(container, WorldRegistry.getId(world), lineCount, SPREAD, new Random(lineCount));
+        container.saveNow();
+
+        final List<String> lines = readLines(csvFile);
+        final List<String> areas = new ArrayList<String>(), destinations = new ArrayList<String>();
+        long characters = 0;
+        CsvLineParser columnParser = new CsvLineParser();
+        for (String line : lines) {
+            columnParser.parse(line);
+            areas.add(columnParser.getString(AREA));
+            destinations.add(columnParser.getString(DESTINATION));
+            characters += line.length() + 1;
+        }
+        double charactersPerLine = (double) characters / lines.size();
+
+        final CsvLineParser parser = new CsvLineParser();
+        print(lines.size(), charactersPerLine, measure("columns, CsvLineParser", lines.size(), new Runnable() {
+            public void run() {
+                long hash = 0;
+                for (String line : lines) {
+                    parser.parse(line);
+                    hash += parser.getInt(ID) + parser.getString(NAME).length() + (long) parser.getDouble(PRICE);
+                    hash += parser.getInteger(TARGET) != null ? 1 : 0;
+                    for (int column = OWNER; column <= PASSWORD; ++column) {
+                        hash += parser.getString(column) != null ? 1 : 0;
+                    }
+                    for (int column = AREA; column <= DEPARTURE; ++column) {
+                        hash += parser.getString(column) != null ? 1 : 0;
+                    }
+                }
+                sink = hash;
+            }
+        }));
+
+        print(lines.size(), charactersPerLine, measure("columns, String.split", lines.size(), new Runnable() {
+            public void run() {
+                long hash = 0;
+                for (String line : lines) {
+                    String[] columns = line.split(";");
+                    hash += Integer.parseInt(columns[ID]) + decode(columns[NAME]).length();
+                    hash += (long) Double.parseDouble(columns[PRICE]);
+                    hash += !"null".equals(columns[TARGET]) ? Integer.valueOf(columns[TARGET]) : 0;
+                    for (int column = OWNER; column <= PASSWORD; ++column) {
+                        hash += decode(columns[column]) != null ? 1 : 0;
+                    }
+                    for (int column = AREA; column <= DEPARTURE && column < columns.length; ++column) {
+                        hash += decode(columns[column]) != null ? 1 : 0;
+                    }
+                }
+                sink = hash;
+            }
+        }));
+
+        measure("properties, PropertiesParser", destinations.size(), new Runnable() {
+            public void run() {
+                double sum = 0;
+                try {
+                    for (String destination : destinations) {
+                        PropertiesParser properties = new PropertiesParser(destination);
+                        sum += properties.getDouble("locx") + properties.getDouble("locy")
+                            + properties.getDouble("locz") + properties.getFloat("pitch") + properties.getFloat("yaw")
+                            + properties.getString("world").length() + properties.getType().length();
+                    }
+                } catch (SyntaxException exception) {
+                    throw new IllegalStateException(exception);
+                }
+                sink = (long) sum;
+            }
+        });
+
+        measure("properties, regex and HashMap", destinations.size(), new Runnable() {
+            public void run() {
+                double sum = 0;
+                for (String destination : destinations) {
+                    Map<String, String> properties = splitProperties(destination);
+                    sum += Double.parseDouble(properties.get("locx")) + Double.parseDouble(properties.get("locy"))
+                        + Double.parseDouble(properties.get("locz")) + Float.parseFloat(properties.get("pitch"))
+                        + Float.parseFloat(properties.get("yaw")) + properties.get("world").length()
+                        + properties.get("").length();
+                }
+                sink = (long) sum;
+            }
+        });
+
+        measure("areas, AreaHelper.load", areas.size(), new Runnable() {
+            public void run() {
+                long hash = 0;
+                try {
+                    for (String area : areas) {
+                        hash += AreaHelper.load(area).getBoundingBox().getLowX();
+                    }
+                } catch (SyntaxException exception) {
+                    throw new IllegalStateException(exception);
+                }
+                sink = hash;
+            }
+        });
+
+        measure("destinations, new Destination", destinations.size(), new Runnable() {
+            public void run() {
+                long hash = 0;
+                try {
+                    for (String destination : destinations) {
+                        hash += (long) new Destination(destination).getX();
+                    }
+                } catch (SyntaxException exception) {
+                    throw new IllegalStateException(exception);
+                }
+                sink = hash;
+            }
+        });
+
+        print(lines.size(), charactersPerLine, measure("lines into TravelPorts", lines.size(), new Runnable() {
+            public void run() {
+                long hash = 0;
+                try {
+                    for (String line : lines) {
+                        hash += parseLine(container, parser, line).getId();
+                    }
+                } catch (SyntaxException exception) {
+                    throw new IllegalStateException(exception);
+                }
+                sink = hash;
+            }
+        }));
+    }
+
+    /**
+     * Decodes a line into a TravelPort, like the container does. (The method of the container is package-private)
+     *
+     * @param container the container of the TravelPort.
+     * @param parser    the parser to use for the line.
+     * @param line      the line to parse.
+     * @return the created TravelPort.
+     * @throws SyntaxException thrown when the area, the destination or the departure is corrupt.
+     */
+    private static TravelPort parseLine(FlatFileTravelPortContainer container, CsvLineParser parser, String line)
+            throws SyntaxException {
+        parser.parse(line);
+        TravelPort port = new FlatFileTravelPort(container, parser.getInt(ID));
+        port.setName(parser.getString(NAME));
+        port.setPrice(parser.getDouble(PRICE));
+        port.setTargetId(parser.getInteger(TARGET));
+        port.setPassword(parser.getString(PASSWORD));
+        port.setOwner(parser.getString(OWNER));
+        port.setAllowed(StringHelper.decode(parser.getString(ALLOWED)));
+        port.setDeparture(DepartureHelper.load(port, parser.getString(DEPARTURE)));
+        port.setArea(AreaHelper.load(parser.getString(AREA)));
+        port.setDestination(new Destination(parser.getString(DESTINATION)));
+        return port;
+    }
+
+    /**
+     * Decodes a column like the CsvLineParser did before.
+     *
+     * @param column the column to decode.
+     * @return the decoded column, or null.
+     */
+    private static String decode(String column) {
+        return "null".equals(column) ? null : column.replace("&#59", ";");
+    }
+
+    /**
+     * Splits the properties of a description like the PropertiesParser did before. The type gets stored with an empty
+     * key.
+     *
+     * @param description the description to split.
+     * @return the properties.
+     */
+    private static Map<String, String> splitProperties(String description) {
+        Map<String, String> properties = new HashMap<String, String>();
+
+        if (description.matches("[A-Za-z0-9]+\\{.*\\}")) {
+            String type = description.split("\\{")[0];
+            properties.put("", type);
+            for (String property : description.substring(type.length() + 1, description.length() - 1).split(",")) {
+                String[] keyAndValue = property.split("=");
+                properties.put(keyAndValue[0].trim(), keyAndValue[1].trim());
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Reads the lines of the passed file, without the header.
+     *
+     * @param file the file to read.
+     * @return the lines.
+     * @throws IOException thrown when the file couldn't get read.
+     */
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (!line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    /**
+     * Prints the throughput of the passed time per line.
+     *
+     * @param lines             the number of lines.
+     * @param charactersPerLine the average number of characters per line, including the line break.
+     * @param nanosPerLine      the median time per line in nanoseconds.
+     */
+    private static void print(int lines, double charactersPerLine, double nanosPerLine) {
+        System.out.println(String.format("%-40s %12.0f lines/s, %8.1f MB/s (%d lines, %.0f chars per line)", "",
+            1e9 / nanosPerLine, 1e3 * charactersPerLine / nanosPerLine, lines, charactersPerLine));
+    }
+}
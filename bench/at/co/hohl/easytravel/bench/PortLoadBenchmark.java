@@ -0,0 +1,124 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.bench;
+
+import at.co.hohl.easytravel.ports.WorldRegistry;
+import at.co.hohl.easytravel.ports.implementation.file.FlatFileTravelPortContainer;
+import org.bukkit.World;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compares loading the TravelPorts out of the CSV file with loading them out of the binary file. Both files hold the
+ * same randomly created TravelPorts. They are stored in their own directories, because a container loads the newer
+ * one of both files and converts it, if both are inside the same directory.
+ * <p/>
+ * Every round loads a new container, like the plugin does when it gets enabled.
+ *
+ * @author Michael Hohl
+ */
+public class PortLoadBenchmark extends Benchmark {
+    /**
+     * Width and length of the region, in which the TravelPorts are.
+     */
+    private static final int SPREAD = 20000;
+
+    /**
+     * Number of rounds which don't get measured.
+     */
+    private static final int WARM_UP_ROUNDS = 3;
+
+    /**
+     * Number of measured rounds.
+     */
+    private static final int MEASURED_ROUNDS = 10;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the number of TravelPorts, defaults to 100000.
+     * @throws IOException thrown when the TravelPorts couldn't get stored.
+     */
+    public static void main(String[] args) throws IOException {
+        int portCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        final BenchPlugin plugin = new BenchPlugin();
+        World world = plugin.addWorld("world");
+        plugin.set("journal", false);
+
+        final File csvFile = new File(BenchPlugin.createDirectory("csv"), "ports.csv");
+        final File binaryFile = new File(BenchPlugin.createDirectory("binary"), "ports.csv");
+        createFile(plugin, csvFile, "csv", WorldRegistry.getId(world), portCount);
+        createFile(plugin, binaryFile, "binary", WorldRegistry.getId(world), portCount);
+
+        System.out.println(String.format("%d TravelPorts, ports.csv %d bytes, ports.dat %d bytes", portCount,
+            csvFile.length(), new File(binaryFile.getParentFile(), "ports.dat").length()));
+
+        // Every load logs the number of loaded TravelPorts, which would drown the results.
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        measure("load ports.csv, per TravelPort", portCount, WARM_UP_ROUNDS, MEASURED_ROUNDS, new Runnable() {
+            public void run() {
+                sink = load(plugin, csvFile, "csv");
+            }
+        });
+        measure("load ports.dat, per TravelPort", portCount, WARM_UP_ROUNDS, MEASURED_ROUNDS, new Runnable() {
+            public void run() {
+                sink = load(plugin, binaryFile, "binary");
+            }
+        });
+    }
+
+    /**
+     * Creates random TravelPorts and stores them in the passed storage format.
+     *
+     * @param plugin        the plugin used by the container.
+     * @param csvFile       the CSV file of the container. The binary file is stored beside it.
+     * @param storageFormat the storage format to use.
+     * @param worldId       the id of the world of the TravelPorts.
+     * @param portCount     the number of TravelPorts.
+     */
+    private static void createFile(BenchPlugin plugin, File csvFile, String storageFormat, int worldId,
+                                   int portCount) {
+        plugin.set("storage-format", storageFormat);
+        FlatFileTravelPortContainer container = new FlatFileTravelPortContainer(plugin, csvFile);
+        container.load();
+        BenchPlugin.createPorts(container, worldId, portCount, SPREAD, new Random(portCount));
+        container.saveNow();
+    }
+
+    /**
+     * Loads a new container in the passed storage format.
+     *
+     * @param plugin        the plugin used by the container.
+     * @param csvFile       the CSV file of the container.
+     * @param storageFormat the storage format to use.
+     * @return the number of loaded TravelPorts.
+     */
+    private static int load(BenchPlugin plugin, File csvFile, String storageFormat) {
+        plugin.set("storage-format", storageFormat);
+        FlatFileTravelPortContainer container = new FlatFileTravelPortContainer(plugin, csvFile);
+        container.load();
+        return container.size();
+    }
+}
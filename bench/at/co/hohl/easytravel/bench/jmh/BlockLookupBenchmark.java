@@ -0,0 +1,171 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.bench.jmh;
+
+import at.co.hohl.easytravel.bench.BenchPlugin;
+import at.co.hohl.easytravel.ports.TravelPort;
+import at.co.hohl.easytravel.ports.WorldRegistry;
+import at.co.hohl.easytravel.ports.implementation.file.FlatFileTravelPortContainer;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of looking up the TravelPorts at a block, once with search(Location), which creates a Location and a
+ * result list per lookup, and once with search(worldId, x, y, z, result), which reuses the result list. Run it with
+ * the GC profiler to see the allocations per lookup:
+ * <pre>
+ *     ant bench -Dbenchmark=jmh.BlockLookupBenchmark
+ *     java -cp ... org.openjdk.jmh.Main BlockLookupBenchmark -prof gc
+ * </pre>
+ *
+ * @author Michael Hohl
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockLookupBenchmark {
+    /**
+     * Number of looked up blocks, needs to be a power of two.
+     */
+    private static final int BLOCKS = 4096;
+
+    /**
+     * Width and length of the region, in which the TravelPorts and the blocks are.
+     */
+    private static final int SPREAD = 2000;
+
+    /**
+     * Spatial index used by the container.
+     */
+    @Param({"chunk", "rtree", "packed"})
+    public String spatialIndex;
+
+    /**
+     * Number of TravelPorts.
+     */
+    @Param({"1000", "10000"})
+    public int ports;
+
+    private FlatFileTravelPortContainer container;
+    private World world;
+    private int worldId;
+    private int[] blocks;
+    private int nextBlock;
+    private final List<TravelPort> result = new ArrayList<TravelPort>();
+
+    /**
+     * Creates the TravelPorts and the blocks to look up.
+     *
+     * @throws IOException thrown when the TravelPorts couldn't get stored.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(ports);
+
+        BenchPlugin plugin = new BenchPlugin();
+        plugin.set("spatial-index", spatialIndex);
+        world = plugin.addWorld("world");
+        worldId = WorldRegistry.getId(world);
+        container = new FlatFileTravelPortContainer(plugin,
+            new File(BenchPlugin.createDirectory("lookup"), "ports.csv"));
+        container.load();
+        plugin.setTravelPorts(container);
+        BenchPlugin.createPorts(container, worldId, ports, SPREAD, random);
+
+        // Every fourth block is inside a TravelPort.
+        List<TravelPort> allPorts = new ArrayList<TravelPort>(container.getAll());
+        blocks = new int[BLOCKS * 3];
+        for (int index = 0; index < BLOCKS; ++index) {
+            if (index % 4 == 0) {
+                TravelPort port = allPorts.get(random.nextInt(allPorts.size()));
+                blocks[index * 3] = port.getArea().getBoundingBox().getLowX();
+                blocks[index * 3 + 1] = port.getArea().getBoundingBox().getLowY();
+                blocks[index * 3 + 2] = port.getArea().getBoundingBox().getLowZ();
+            } else {
+                blocks[index * 3] = random.nextInt(SPREAD) - SPREAD / 2;
+                blocks[index * 3 + 1] = 40 + random.nextInt(60);
+                blocks[index * 3 + 2] = random.nextInt(SPREAD) - SPREAD / 2;
+            }
+        }
+    }
+
+    /**
+     * Looks up the next block with search(Location), like the tracking loop did with the location of the player.
+     *
+     * @return the found TravelPorts.
+     */
+    @Benchmark
+    public Collection<TravelPort> searchLocation() {
+        int block = (nextBlock++ & (BLOCKS - 1)) * 3;
+        return container.search(new Location(world, blocks[block], blocks[block + 1], blocks[block + 2]));
+    }
+
+    /**
+     * Looks up the next block with search(worldId, x, y, z, result) and a reused result list.
+     *
+     * @return the number of found TravelPorts.
+     */
+    @Benchmark
+    public int searchBlock() {
+        int block = (nextBlock++ & (BLOCKS - 1)) * 3;
+        result.clear();
+        container.search(worldId, blocks[block], blocks[block + 1], blocks[block + 2], result);
+        return result.size();
+    }
+
+    /**
+     * Runs the benchmark with the GC profiler.
+     *
+     * @param args not used.
+     * @throws RunnerException thrown when JMH failed.
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(BlockLookupBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
@@ -19,6 +19,7 @@
 package at.co.hohl.easytravel;
 
 import at.co.hohl.easytravel.ports.TravelPort;
+import at.co.hohl.easytravel.ports.WorldRegistry;
 import org.bukkit.entity.Player;
 
 import java.util.LinkedList;
@@ -50,6 +51,41 @@ public class PlayerInformation {
      */
     private List<String> enteredPasswords = new LinkedList<String>();
 
+    /**
+     * Id of the world of the chunk of the last lookup.
+     */
+    private int candidateChunkWorld = WorldRegistry.UNKNOWN_WORLD;
+
+    /**
+     * Coords of the chunk of the last lookup.
+     */
+    private int candidateChunkX, candidateChunkZ;
+
+    /**
+     * Modification count of the TravelPortContainer, when the candidate ports got looked up.
+     */
+    private int candidateModificationCount;
+
+    /**
+     * TravelPorts which overlap the chunk of the last lookup.
+     */
+    private TravelPort[] candidatePorts;
+
+    /**
+     * Lower bound of the distance to the nearest TravelPort, measured at the last location check.
+     */
+    private double portDistance;
+
+    /**
+     * Tick, at which the location of the player needs to get checked next.
+     */
+    private long nextLocationCheck;
+
+    /**
+     * Modification count of the TravelPortContainer, when the distance to the nearest TravelPort got measured.
+     */
+    private int portDistanceModificationCount;
+
     /**
      * Creates a new players information.
      */
@@ -87,6 +123,89 @@ public class PlayerInformation {
         this.currentPort = currentPort;
     }
 
+    /**
+     * Returns the TravelPorts, which overlap the passed chunk, if the chunk is the same as the one of the last lookup.
+     *
+     * @param world             the id of the world.
+     * @param chunkX            the x coord of the chunk.
+     * @param chunkZ            the z coord of the chunk.
+     * @param modificationCount the current modification count of the TravelPortContainer.
+     * @return the TravelPorts overlapping the chunk, or null if they need to get looked up again.
+     */
+    public TravelPort[] getCandidatePorts(int world, int chunkX, int chunkZ, int modificationCount) {
+        if (chunkX == candidateChunkX && chunkZ == candidateChunkZ
+            && modificationCount == candidateModificationCount && world == candidateChunkWorld) {
+            return candidatePorts;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Remembers the TravelPorts, which overlap the passed chunk.
+     *
+     * @param world             the id of the world.
+     * @param chunkX            the x coord of the chunk.
+     * @param chunkZ            the z coord of the chunk.
+     * @param modificationCount the current modification count of the TravelPortContainer.
+     * @param ports             the TravelPorts overlapping the chunk.
+     */
+    public void setCandidatePorts(int world, int chunkX, int chunkZ, int modificationCount, TravelPort[] ports) {
+        this.candidateChunkWorld = world;
+        this.candidateChunkX = chunkX;
+        this.candidateChunkZ = chunkZ;
+        this.candidateModificationCount = modificationCount;
+        this.candidatePorts = ports;
+    }
+
+    /**
+     * Forgets all cached results of location lookups. Needed when the TravelPortContainer got replaced.
+     */
+    public void clearLocationCache() {
+        candidateChunkWorld = WorldRegistry.UNKNOWN_WORLD;
+        candidatePorts = null;
+        nextLocationCheck = 0;
+    }
+
+    /**
+     * @return lower bound of the distance to the nearest TravelPort, measured at the last location check.
+     */
+    public double getPortDistance() {
+        return portDistance;
+    }
+
+    /**
+     * Sets the distance to the nearest TravelPort and when the location of the player needs to get checked next.
+     *
+     * @param portDistance      lower bound of the distance to the nearest TravelPort.
+     * @param nextLocationCheck tick, at which the location needs to get checked next.
+     * @param modificationCount the current modification count of the TravelPortContainer.
+     */
+    public void setPortDistance(double portDistance, long nextLocationCheck, int modificationCount) {
+        this.portDistance = portDistance;
+        this.nextLocationCheck = nextLocationCheck;
+        this.portDistanceModificationCount = modificationCount;
+    }
+
+    /**
+     * Checks if the location of the player needs to get checked. That's the case when the player could have reached
+     * a TravelPort since the last check, or when the TravelPorts got changed.
+     *
+     * @param currentTick       the current tick.
+     * @param modificationCount the current modification count of the TravelPortContainer.
+     * @return true, if the location needs to get checked.
+     */
+    public boolean isLocationCheckDue(long currentTick, int modificationCount) {
+        return currentTick >= nextLocationCheck || modificationCount != portDistanceModificationCount;
+    }
+
+    /**
+     * Forces a check of the location at the next possibility. Needed when the player got teleported.
+     */
+    public void resetLocationCheck() {
+        nextLocationCheck = 0;
+    }
+
     /**
      * Checks if the user has entered the passed password.
      *
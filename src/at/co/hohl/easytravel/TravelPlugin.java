@@ -20,17 +20,25 @@ package at.co.hohl.easytravel;
 
 import at.co.hohl.easytravel.commands.DepartCommandExecutor;
 import at.co.hohl.easytravel.commands.PortCommandExecutor;
+import at.co.hohl.easytravel.listener.AsyncLocationResolver;
 import at.co.hohl.easytravel.listener.TravelPlayerListener;
+import at.co.hohl.easytravel.listener.TravelWorldListener;
 import at.co.hohl.easytravel.messages.Messages;
 import at.co.hohl.easytravel.ports.Area;
 import at.co.hohl.easytravel.ports.CuboidArea;
+import at.co.hohl.easytravel.ports.PolygonArea;
 import at.co.hohl.easytravel.ports.TravelPortContainer;
 import at.co.hohl.easytravel.ports.implementation.file.FlatFileTravelPortContainer;
+import at.co.hohl.easytravel.ports.implementation.file.ShardedTravelPortContainer;
+import at.co.hohl.easytravel.ports.implementation.sql.SqlTravelPortContainer;
 import at.co.hohl.permissions.PermissionHandler;
 import at.co.hohl.utils.network.Download;
+import at.co.hohl.utils.storage.SyntaxException;
 import com.nijikokun.register.payment.Method;
 import com.nijikokun.register.payment.Methods;
+import com.sk89q.worldedit.BlockVector2D;
 import com.sk89q.worldedit.bukkit.WorldEditPlugin;
+import com.sk89q.worldedit.bukkit.selections.Polygonal2DSelection;
 import com.sk89q.worldedit.bukkit.selections.Selection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
@@ -43,6 +51,7 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -83,6 +92,11 @@ public class TravelPlugin extends JavaPlugin {
      */
     private final TravelPlayerListener playerListener = new TravelPlayerListener(this);
 
+    /**
+     * Listener for world events.
+     */
+    private final TravelWorldListener worldListener = new TravelWorldListener(this);
+
     /**
      * Player Information implementation.
      */
@@ -106,7 +120,7 @@ public class TravelPlugin extends JavaPlugin {
     /**
      * The container which holds the TravelPorts.
      */
-    private FlatFileTravelPortContainer travelPortContainer;
+    private TravelPortContainer travelPortContainer;
 
     /**
      * Downloaded configuration file which contains information about the latest version.
@@ -146,8 +160,10 @@ public class TravelPlugin extends JavaPlugin {
      */
     public void onDisable() {
         if (getConfig().getBoolean("auto-save", true)) {
-            save();
+            logger.info("Save TravelPorts...");
+            travelPortContainer.saveNow();
         }
+        travelPortContainer.close();
 
         logger.info(String.format("%s is disabled!", getDescription().getName()));
     }
@@ -215,12 +231,23 @@ public class TravelPlugin extends JavaPlugin {
      *
      * @param player the players
      * @return the selection of the passed players.
+     * @throws SyntaxException thrown when the selection is too large for an area.
      */
-    public Area getSelectedArea(Player player) {
+    public Area getSelectedArea(Player player) throws SyntaxException {
         if (worldEditPlugin != null) {
             Selection weSelection = worldEditPlugin.getSelection(player);
 
-            if (weSelection != null && weSelection.getArea() > 0) {
+            if (weSelection instanceof Polygonal2DSelection && weSelection.getArea() > 0) {
+                List<BlockVector2D> points = ((Polygonal2DSelection) weSelection).getNativePoints();
+                int[] pointsX = new int[points.size()], pointsZ = new int[points.size()];
+                for (int index = 0; index < pointsX.length; ++index) {
+                    pointsX[index] = points.get(index).getBlockX();
+                    pointsZ[index] = points.get(index).getBlockZ();
+                }
+
+                return new PolygonArea(weSelection.getWorld(), pointsX, pointsZ,
+                    weSelection.getMinimumPoint().getBlockY(), weSelection.getMaximumPoint().getBlockY());
+            } else if (weSelection != null && weSelection.getArea() > 0) {
                 return new CuboidArea(weSelection.getMinimumPoint(), weSelection.getMaximumPoint());
             } else {
                 return null;
@@ -273,11 +300,14 @@ public class TravelPlugin extends JavaPlugin {
      * @return the PlayerInformation.
      */
     public PlayerInformation getPlayerInformation(Player player) {
-        if (!playerInformationMap.containsKey(player)) {
-            playerInformationMap.put(player, new PlayerInformation(player));
+        PlayerInformation playerInformation = playerInformationMap.get(player);
+
+        if (playerInformation == null) {
+            playerInformation = new PlayerInformation(player);
+            playerInformationMap.put(player, playerInformation);
         }
 
-        return playerInformationMap.get(player);
+        return playerInformation;
     }
 
     /**
@@ -332,9 +362,23 @@ public class TravelPlugin extends JavaPlugin {
         // Messages...
         Messages.load(getMessagesConfig());
 
-        // TravelPorts...
-        travelPortContainer = new FlatFileTravelPortContainer(this, new File(getDataFolder(), "ports.csv"));
+        // TravelPorts... (Wait for running saves of the old container, before loading the file again)
+        if (travelPortContainer != null) {
+            travelPortContainer.close();
+        }
+        if ("sqlite".equalsIgnoreCase(getConfig().getString("storage", "flatfile"))) {
+            travelPortContainer = new SqlTravelPortContainer(this, new File(getDataFolder(), "ports.db"));
+        } else if (getConfig().getBoolean("shard-by-world", false)) {
+            travelPortContainer = new ShardedTravelPortContainer(this, new File(getDataFolder(), "ports.csv"),
+                new File(getDataFolder(), "ports"));
+        } else {
+            travelPortContainer = new FlatFileTravelPortContainer(this, new File(getDataFolder(), "ports.csv"));
+        }
         travelPortContainer.load();
+
+        for (PlayerInformation playerInformation : playerInformationMap.values()) {
+            playerInformation.clearLocationCache();
+        }
     }
 
     /**
@@ -347,13 +391,75 @@ public class TravelPlugin extends JavaPlugin {
         // Remove player information on quit.
         getServer().getPluginManager().registerEvents(playerListener, this);
 
-        // Update player information controlled by an scheduler.
+        // Keep track of the loaded worlds.
+        getServer().getPluginManager().registerEvents(worldListener, this);
+
+        // Update player information controlled by an scheduler, or by the move events of the players.
         int locationUpdateInterval = getConfig().getInt("location-update-interval", 60);
+        String locationTracking = getConfig().getString("location-tracking", "poll");
+        playerListener.setLocationUpdateInterval(locationUpdateInterval);
+        if ("event".equalsIgnoreCase(locationTracking)) {
+            playerListener.setMoveTracking(true);
+            getServer().getScheduler().scheduleSyncRepeatingTask(this, new Runnable() {
+                public void run() {
+                    playerListener.onDepartureUpdate();
+                }
+            }, locationUpdateInterval * 3, locationUpdateInterval);
+        } else if ("adaptive".equalsIgnoreCase(locationTracking)) {
+            playerListener.setMaxPlayerSpeed(getConfig().getDouble("max-player-speed", 1));
+            getServer().getScheduler().scheduleSyncRepeatingTask(this, new Runnable() {
+                public void run() {
+                    playerListener.onAdaptiveLocationUpdate();
+                }
+            }, locationUpdateInterval * 3, 1);
+        } else if ("async".equalsIgnoreCase(locationTracking)) {
+            final AsyncLocationResolver locationResolver = new AsyncLocationResolver(this, playerListener);
+            getServer().getScheduler().scheduleSyncRepeatingTask(this, new Runnable() {
+                public void run() {
+                    locationResolver.onLocationUpdate();
+                }
+            }, locationUpdateInterval * 3, locationUpdateInterval);
+        } else if ("sliced".equalsIgnoreCase(locationTracking)) {
+            getServer().getScheduler().scheduleSyncRepeatingTask(this, new Runnable() {
+                public void run() {
+                    playerListener.onSlicedLocationUpdate();
+                }
+            }, locationUpdateInterval * 3, 1);
+        } else {
+            getServer().getScheduler().scheduleSyncRepeatingTask(this, new Runnable() {
+                public void run() {
+                    playerListener.onPlayerLocationUpdate();
+                }
+            }, locationUpdateInterval * 3, locationUpdateInterval);
+        }
+
+        // Save changed TravelPorts periodically.
+        if (getConfig().getBoolean("auto-save", true)) {
+            int autoSaveInterval = getConfig().getInt("auto-save-interval", 6000);
+            getServer().getScheduler().scheduleSyncRepeatingTask(this, new Runnable() {
+                public void run() {
+                    travelPortContainer.save();
+                }
+            }, autoSaveInterval, autoSaveInterval);
+        }
+
+        // Write changes of the TravelPorts into the journal or the database, so they survive a crash.
+        int journalInterval = getConfig().getInt("journal-interval", 20);
         getServer().getScheduler().scheduleSyncRepeatingTask(this, new Runnable() {
             public void run() {
-                playerListener.onPlayerLocationUpdate();
+                travelPortContainer.flushChanges();
             }
-        }, locationUpdateInterval * 3, locationUpdateInterval);
+        }, journalInterval, journalInterval);
+
+        // Apply changes of the stored TravelPorts, which got made by other programs.
+        int watchInterval = getConfig().getInt("watch-interval", 0);
+        if (watchInterval > 0) {
+            getServer().getScheduler().scheduleSyncRepeatingTask(this, new Runnable() {
+                public void run() {
+                    travelPortContainer.checkForChanges();
+                }
+            }, watchInterval, watchInterval);
+        }
 
         // Register commands.
         getCommand("port").setExecutor(new PortCommandExecutor(this));
@@ -63,6 +63,7 @@ public class PortCommandExecutor implements CommandExecutor {
         subCommands.put("unlink", new PortUnlinkCommandExecutor(plugin, this));
         subCommands.put("destination", new PortDestinationCommandExecutor(plugin, this));
         subCommands.put("redefine", new PortRedefineCommandExecutor(plugin, this));
+        subCommands.put("expand", new PortExpandCommandExecutor(plugin, this));
         subCommands.put("rename", new PortRenameCommandExecutor(plugin, this));
         subCommands.put("info", new PortInfoCommandExecutor(plugin, this));
         subCommands.put("list", new PortListCommandExecutor(plugin, this));
@@ -74,6 +75,7 @@ public class PortCommandExecutor implements CommandExecutor {
         subCommands.put("owner", new PortOwnerCommandExecutor(plugin, this));
         subCommands.put("allow", new PortAllowCommandExecutor(plugin, this));
         subCommands.put("save", new PortSaveCommandExecutor(plugin, this));
+        subCommands.put("migrate", new PortMigrateCommandExecutor(plugin, this));
         subCommands.put("depart", new PortDepartCommandExecutor(plugin, this));
         subCommands.put("reload", new PortReloadCommandExecutor(plugin, this));
     }
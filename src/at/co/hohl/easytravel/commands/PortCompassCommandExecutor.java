@@ -22,9 +22,11 @@ import at.co.hohl.easytravel.PlayerInformation;
 import at.co.hohl.easytravel.TravelPermissions;
 import at.co.hohl.easytravel.TravelPlugin;
 import at.co.hohl.easytravel.messages.Messages;
+import at.co.hohl.easytravel.ports.Destination;
 import at.co.hohl.easytravel.ports.TravelPort;
 import at.co.hohl.easytravel.ports.TravelPortContainer;
 import at.co.hohl.easytravel.ports.TravelPortNotFound;
+import at.co.hohl.easytravel.ports.WorldRegistry;
 import at.co.hohl.permissions.Permission;
 import at.co.hohl.utils.ChatHelper;
 import org.bukkit.command.Command;
@@ -81,7 +83,14 @@ public class PortCompassCommandExecutor extends SubCommandExecutor {
             }
         }
 
-        player.setCompassTarget(travelPortToPoint.getDestination().getLocation());
+        // The location of a destination in an unloaded world has no world, which can't be a compass target.
+        Destination destination = travelPortToPoint.getDestination();
+        if (destination == null || !WorldRegistry.isLoaded(destination.getWorldId())) {
+            ChatHelper.sendMessage(sender, Messages.get("moderator.problem.world-not-loaded"));
+            return true;
+        }
+
+        player.setCompassTarget(destination.getLocation());
         ChatHelper.sendMessage(sender, Messages.get("moderator.success.point-compass"));
 
         return true;
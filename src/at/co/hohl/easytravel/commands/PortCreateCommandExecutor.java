@@ -27,6 +27,7 @@ import at.co.hohl.easytravel.ports.TravelPort;
 import at.co.hohl.permissions.Permission;
 import at.co.hohl.utils.ChatHelper;
 import at.co.hohl.utils.StringHelper;
+import at.co.hohl.utils.storage.SyntaxException;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -63,7 +64,13 @@ public class PortCreateCommandExecutor extends SubCommandExecutor {
 
         if (plugin.getPermissionsHandler().hasPermission(sender, TravelPermissions.MODERATE)) {
             String name = StringHelper.toSingleString(args, " ", 1);
-            Area playerSelection = plugin.getSelectedArea(player);
+            Area playerSelection;
+            try {
+                playerSelection = plugin.getSelectedArea(player);
+            } catch (SyntaxException exception) {
+                ChatHelper.sendMessage(sender, Messages.get("moderator.problem.area-too-large"));
+                return true;
+            }
 
             if (playerSelection != null) {
                 TravelPort port = plugin.getTravelPorts().create();
@@ -0,0 +1,158 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.commands;
+
+import at.co.hohl.easytravel.PlayerInformation;
+import at.co.hohl.easytravel.TravelPermissions;
+import at.co.hohl.easytravel.TravelPlugin;
+import at.co.hohl.easytravel.messages.Messages;
+import at.co.hohl.easytravel.ports.Area;
+import at.co.hohl.easytravel.ports.BoundingBox;
+import at.co.hohl.easytravel.ports.CuboidArea;
+import at.co.hohl.easytravel.ports.CuboidUnionArea;
+import at.co.hohl.easytravel.ports.TravelPort;
+import at.co.hohl.easytravel.ports.TravelPortContainer;
+import at.co.hohl.easytravel.ports.TravelPortNotFound;
+import at.co.hohl.permissions.Permission;
+import at.co.hohl.utils.ChatHelper;
+import at.co.hohl.utils.storage.SyntaxException;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command to add the selected cuboid to the area which is used by the TravelPort.
+ *
+ * @author Michael Hohl
+ */
+public class PortExpandCommandExecutor extends SubCommandExecutor {
+    /**
+     * Creates a new SubCommandExecutor.
+     *
+     * @param plugin the plugin which holds this command.
+     * @param parent the parent of this CommandExecutor.
+     */
+    public PortExpandCommandExecutor(TravelPlugin plugin, CommandExecutor parent) {
+        super(plugin, parent, 0, 1);
+    }
+
+    /**
+     * Called when the players uses the parentCommand.
+     *
+     * @param sender        the sender of the command.
+     * @param parentCommand the parent command.
+     * @param label         the label of the parent command.
+     * @param args          the arguments passed to the parentCommand. (Index 0 = the label of the sub parentCommand
+     *                      itself!)
+     * @return true, if the SubCommandExecutor could handle the parentCommand.
+     */
+    @Override
+    public boolean onCommand(CommandSender sender, Command parentCommand, String label, String[] args) {
+        Player player = (Player) sender;
+        PlayerInformation playerInformation = plugin.getPlayerInformation(player);
+        TravelPortContainer travelPorts = plugin.getTravelPorts();
+
+        TravelPort travelPortToExpand;
+        if (args.length == 2) {
+            try {
+                travelPortToExpand = travelPorts.search(args[1]);
+            } catch (TravelPortNotFound travelPortNotFound) {
+                ChatHelper.sendMessage(sender, Messages.get("moderator.problem.invalid-id"));
+                return true;
+            }
+        } else {
+            travelPortToExpand = playerInformation.getCurrentPort();
+
+            if (travelPortToExpand == null) {
+                ChatHelper.sendMessage(sender, Messages.get("moderator.problem.not-inside"));
+                return true;
+            }
+        }
+
+        boolean isModerator = permissionHandler.hasPermission(player, TravelPermissions.MODERATE);
+        boolean isOwner = player.getName().equals(travelPortToExpand.getOwner());
+        if (isModerator || isOwner) {
+            Area selectedArea;
+            try {
+                selectedArea = plugin.getSelectedArea(player);
+            } catch (SyntaxException exception) {
+                ChatHelper.sendMessage(sender, Messages.get("moderator.problem.area-too-large"));
+                return true;
+            }
+            Area currentArea = travelPortToExpand.getArea();
+
+            if (selectedArea == null) {
+                ChatHelper.sendMessage(sender, Messages.get("moderator.problem.select-area"));
+            } else if (!(selectedArea instanceof CuboidArea)
+                || !(currentArea instanceof CuboidArea || currentArea instanceof CuboidUnionArea)
+                || selectedArea.getBoundingBox().getWorldId() != currentArea.getBoundingBox().getWorldId()) {
+                ChatHelper.sendMessage(sender, Messages.get("moderator.problem.expand-cuboid"));
+            } else {
+                List<BoundingBox> cuboids = new ArrayList<BoundingBox>();
+                if (currentArea instanceof CuboidUnionArea) {
+                    cuboids.addAll(((CuboidUnionArea) currentArea).getCuboids());
+                } else {
+                    cuboids.add(currentArea.getBoundingBox());
+                }
+                cuboids.add(selectedArea.getBoundingBox());
+
+                try {
+                    travelPortToExpand.setArea(new CuboidUnionArea(cuboids));
+                } catch (SyntaxException exception) {
+                    ChatHelper.sendMessage(sender, Messages.get("moderator.problem.area-too-large"));
+                    return true;
+                }
+                ChatHelper.sendMessage(sender, Messages.get("moderator.success.expand"));
+            }
+
+        } else {
+            ChatHelper.sendMessage(sender, Messages.get("moderator.problem.not-own"));
+        }
+
+        return true;
+    }
+
+    /**
+     * @return string which describes the valid usage.
+     */
+    @Override
+    public String getUsage() {
+        return "/<command> expand [<id>]";
+    }
+
+    /**
+     * @return description of the command.
+     */
+    @Override
+    public String getDescription() {
+        return "Adds the selected cuboid to the area of a TravelPort.";
+    }
+
+    /**
+     * @return required permission for executing this command.
+     */
+    @Override
+    public Permission getRequiredPermission() {
+        return TravelPermissions.CREATE;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.commands;
+
+import at.co.hohl.easytravel.TravelPermissions;
+import at.co.hohl.easytravel.TravelPlugin;
+import at.co.hohl.easytravel.messages.Messages;
+import at.co.hohl.easytravel.ports.TravelPortContainer;
+import at.co.hohl.easytravel.ports.implementation.file.FlatFileTravelPortContainer;
+import at.co.hohl.easytravel.ports.implementation.file.ShardedTravelPortContainer;
+import at.co.hohl.easytravel.ports.implementation.sql.SqlTravelPortContainer;
+import at.co.hohl.permissions.Permission;
+import at.co.hohl.utils.ChatHelper;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command to copy the TravelPorts of the flat file into the database.
+ *
+ * @author Michael Hohl
+ */
+public class PortMigrateCommandExecutor extends SubCommandExecutor {
+    /**
+     * Creates a new SubCommandExecutor.
+     *
+     * @param plugin the plugin which holds this command.
+     * @param parent the parent of this CommandExecutor.
+     */
+    public PortMigrateCommandExecutor(TravelPlugin plugin, CommandExecutor parent) {
+        super(plugin, parent, 0, 0);
+    }
+
+    /**
+     * Called when the players uses the parentCommand.
+     *
+     * @param sender        the sender of the command.
+     * @param parentCommand the parent command.
+     * @param label         the label of the parent command.
+     * @param args          the arguments passed to the parentCommand. (Index 0 = the label of the sub parentCommand
+     *                      itself!)
+     * @return true, if the SubCommandExecutor could handle the parentCommand.
+     */
+    @Override
+    public boolean onCommand(CommandSender sender, Command parentCommand, String label, String[] args) {
+        TravelPortContainer travelPorts = plugin.getTravelPorts();
+
+        if (travelPorts instanceof SqlTravelPortContainer) {
+            TravelPortContainer flatFile;
+            if (plugin.getConfig().getBoolean("shard-by-world", false)) {
+                ShardedTravelPortContainer shardedFlatFile = new ShardedTravelPortContainer(plugin,
+                    new File(plugin.getDataFolder(), "ports.csv"), new File(plugin.getDataFolder(), "ports"));
+                shardedFlatFile.load();
+                shardedFlatFile.loadAll();
+                flatFile = shardedFlatFile;
+            } else {
+                flatFile = new FlatFileTravelPortContainer(plugin, new File(plugin.getDataFolder(), "ports.csv"));
+                flatFile.load();
+            }
+            ((SqlTravelPortContainer) travelPorts).importPorts(flatFile.getAll());
+            flatFile.close();
+
+            // Reload, so no player holds one of the replaced TravelPorts.
+            plugin.reload();
+
+            Map<String, String> variables = new HashMap<String, String>();
+            variables.put("count", String.valueOf(flatFile.size()));
+            ChatHelper.sendMessage(sender, Messages.get("moderator.success.migrated", variables));
+        } else {
+            ChatHelper.sendMessage(sender, Messages.get("moderator.problem.migrate-storage"));
+        }
+
+        return true;
+    }
+
+    /**
+     * @return string which describes the valid usage.
+     */
+    @Override
+    public String getUsage() {
+        return "/<command> migrate";
+    }
+
+    /**
+     * @return description of the command.
+     */
+    @Override
+    public String getDescription() {
+        return "Copies the TravelPorts of the flat file into the database.";
+    }
+
+    /**
+     * @return required permission for executing this command.
+     */
+    @Override
+    public Permission getRequiredPermission() {
+        return TravelPermissions.ADMINISTRATE;
+    }
+}
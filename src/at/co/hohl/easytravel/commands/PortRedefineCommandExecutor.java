@@ -28,6 +28,7 @@ import at.co.hohl.easytravel.ports.TravelPortContainer;
 import at.co.hohl.easytravel.ports.TravelPortNotFound;
 import at.co.hohl.permissions.Permission;
 import at.co.hohl.utils.ChatHelper;
+import at.co.hohl.utils.storage.SyntaxException;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -85,10 +86,16 @@ public class PortRedefineCommandExecutor extends SubCommandExecutor {
         boolean isModerator = permissionHandler.hasPermission(player, TravelPermissions.MODERATE);
         boolean isOwner = player.getName().equals(travelPortToRedefine.getOwner());
         if (isModerator || isOwner) {
-            Area selectedArea = plugin.getSelectedArea(player);
+            Area selectedArea;
+            try {
+                selectedArea = plugin.getSelectedArea(player);
+            } catch (SyntaxException exception) {
+                ChatHelper.sendMessage(sender, Messages.get("moderator.problem.area-too-large"));
+                return true;
+            }
 
             if (selectedArea != null) {
-                travelPortToRedefine.setArea(plugin.getSelectedArea(player));
+                travelPortToRedefine.setArea(selectedArea);
                 ChatHelper.sendMessage(sender, Messages.get("moderator.success.redefine"));
             } else {
                 ChatHelper.sendMessage(sender, Messages.get("moderator.problem.select-area"));
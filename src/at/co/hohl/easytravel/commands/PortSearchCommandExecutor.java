@@ -29,7 +29,7 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 
-import java.util.Collection;
+import java.util.List;
 
 /**
  * Command Executor for searching TravelPorts.
@@ -37,6 +37,11 @@ import java.util.Collection;
  * @author Michael Hohl
  */
 public class PortSearchCommandExecutor extends SubCommandExecutor {
+    /**
+     * Maximum number of TravelPorts listed for a search.
+     */
+    private static final int MAX_RESULTS = 10;
+
     /**
      * Creates a new SubCommandExecutor.
      *
@@ -63,7 +68,7 @@ public class PortSearchCommandExecutor extends SubCommandExecutor {
 
         sender.sendMessage(ChatColor.GREEN + String.format("= = = Travel Ports [Search: %s] = = =", keyword));
 
-        Collection<TravelPort> result = plugin.getTravelPorts().searchAll(keyword);
+        List<TravelPort> result = plugin.getTravelPorts().searchRanked(keyword, MAX_RESULTS);
         for (TravelPort port : result) {
             Destination destination = port.getDestination();
             sender.sendMessage(
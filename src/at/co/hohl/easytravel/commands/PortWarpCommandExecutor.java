@@ -21,9 +21,11 @@ package at.co.hohl.easytravel.commands;
 import at.co.hohl.easytravel.TravelPermissions;
 import at.co.hohl.easytravel.TravelPlugin;
 import at.co.hohl.easytravel.messages.Messages;
+import at.co.hohl.easytravel.ports.Destination;
 import at.co.hohl.easytravel.ports.TravelPort;
 import at.co.hohl.easytravel.ports.TravelPortContainer;
 import at.co.hohl.easytravel.ports.TravelPortNotFound;
+import at.co.hohl.easytravel.ports.WorldRegistry;
 import at.co.hohl.permissions.Permission;
 import at.co.hohl.utils.ChatHelper;
 import at.co.hohl.utils.StringHelper;
@@ -66,7 +68,14 @@ public class PortWarpCommandExecutor extends SubCommandExecutor {
 
         try {
             TravelPort target = travelPorts.search(targetName);
-            target.getDestination().teleport(player);
+            Destination destination = target.getDestination();
+
+            // Teleporting into an unloaded world would fail with a MissDestinationException.
+            if (destination == null || !WorldRegistry.isLoaded(destination.getWorldId())) {
+                ChatHelper.sendMessage(sender, Messages.get("moderator.problem.world-not-loaded"));
+            } else {
+                destination.teleport(player);
+            }
         } catch (TravelPortNotFound travelPortNotFound) {
             ChatHelper.sendMessage(sender, Messages.get("moderator.problem.invalid-id"));
         }
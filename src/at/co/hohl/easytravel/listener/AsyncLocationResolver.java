@@ -0,0 +1,227 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.listener;
+
+import at.co.hohl.easytravel.PlayerInformation;
+import at.co.hohl.easytravel.TravelPlugin;
+import at.co.hohl.easytravel.ports.TravelPort;
+import at.co.hohl.easytravel.ports.WorldRegistry;
+import at.co.hohl.easytravel.ports.index.AreaSnapshot;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Resolves the TravelPorts of the players on another thread. The main thread only copies the positions of the players
+ * and applies the resolved TravelPorts afterwards.
+ *
+ * @author Michael Hohl
+ */
+public class AsyncLocationResolver {
+    /**
+     * Plugin which holds the instance.
+     */
+    private final TravelPlugin plugin;
+
+    /**
+     * Listener which applies the resolved TravelPorts.
+     */
+    private final TravelPlayerListener listener;
+
+    /**
+     * Logger used for outputting errors.
+     */
+    private final Logger logger;
+
+    /**
+     * Players of the current sweep. Only accessed by the main thread.
+     */
+    private Player[] players = new Player[0];
+
+    /**
+     * Ids of the worlds of the players.
+     */
+    private int[] worlds = new int[0];
+
+    /**
+     * Block coords of the players.
+     */
+    private int[] blockX = new int[0], blockY = new int[0], blockZ = new int[0];
+
+    /**
+     * Ids of the TravelPorts the players were inside, when the sweep started. Replaced by the resolved ids.
+     */
+    private int[] portIds = new int[0];
+
+    /**
+     * Number of players in the current sweep.
+     */
+    private int playerCount;
+
+    /**
+     * Snapshot of the areas used by the current sweep.
+     */
+    private AreaSnapshot areaSnapshot;
+
+    /**
+     * Flag if there is a sweep running. Set by the main thread, cleared by the thread which finishes the sweep.
+     */
+    private volatile boolean running;
+
+    /**
+     * Resolves the TravelPorts on another thread. A failed sweep gets dropped, so the next one could start.
+     */
+    private final Runnable resolveTask = new Runnable() {
+        public void run() {
+            boolean resolved = false;
+
+            try {
+                resolve();
+                resolved = true;
+            } catch (RuntimeException exception) {
+                logger.severe("Error occurred when resolving the TravelPorts of the players!");
+                logger.severe(exception.toString());
+            } finally {
+                if (!resolved || plugin.getServer().getScheduler().scheduleSyncDelayedTask(plugin, applyTask) < 0) {
+                    finish();
+                }
+            }
+        }
+    };
+
+    /**
+     * Applies the resolved TravelPorts on the main thread.
+     */
+    private final Runnable applyTask = new Runnable() {
+        public void run() {
+            apply();
+        }
+    };
+
+    /**
+     * Creates a new resolver.
+     *
+     * @param plugin   the plugin which holds the instance.
+     * @param listener the listener which applies the resolved TravelPorts.
+     */
+    public AsyncLocationResolver(TravelPlugin plugin, TravelPlayerListener listener) {
+        this.plugin = plugin;
+        this.listener = listener;
+        this.logger = plugin.getLogger();
+    }
+
+    /**
+     * Starts a new sweep, by copying the positions of the online players. Skipped if the last sweep isn't finished
+     * yet. Needs to get called from the main thread.
+     */
+    public void onLocationUpdate() {
+        if (running) {
+            return;
+        }
+
+        Player[] onlinePlayers = plugin.getServer().getOnlinePlayers();
+        ensureCapacity(onlinePlayers.length);
+
+        playerCount = onlinePlayers.length;
+        for (int index = 0; index < playerCount; ++index) {
+            Player player = onlinePlayers[index];
+            Location location = player.getLocation();
+            TravelPort currentPort = plugin.getPlayerInformation(player).getCurrentPort();
+
+            players[index] = player;
+            worlds[index] = WorldRegistry.getId(location.getWorld());
+            blockX[index] = location.getBlockX();
+            blockY[index] = location.getBlockY();
+            blockZ[index] = location.getBlockZ();
+            portIds[index] = currentPort != null ? currentPort.getId() : -1;
+        }
+        areaSnapshot = plugin.getTravelPorts().getAreaSnapshot();
+
+        running = true;
+        if (plugin.getServer().getScheduler().scheduleAsyncDelayedTask(plugin, resolveTask) < 0) {
+            finish();
+        }
+    }
+
+    /**
+     * Resolves the TravelPorts of the copied positions. Players stay inside their current TravelPort, as long as it
+     * contains them.
+     */
+    private void resolve() {
+        for (int index = 0; index < playerCount; ++index) {
+            int currentPortId = portIds[index];
+
+            if (currentPortId < 0 ||
+                !areaSnapshot.contains(currentPortId, worlds[index], blockX[index], blockY[index], blockZ[index])) {
+                portIds[index] = areaSnapshot.search(worlds[index], blockX[index], blockY[index], blockZ[index]);
+            }
+        }
+    }
+
+    /**
+     * Applies the resolved TravelPorts to the players. An error for one player doesn't stop the others.
+     */
+    private void apply() {
+        try {
+            for (int index = 0; index < playerCount; ++index) {
+                Player player = players[index];
+
+                try {
+                    if (player.isOnline()) {
+                        listener.applyResolvedPort(player, portIds[index]);
+                    }
+                } catch (RuntimeException exception) {
+                    logger.severe(String.format("Error occurred when updating the TravelPort of %s!",
+                        player.getName()));
+                    logger.severe(exception.toString());
+                }
+            }
+        } finally {
+            finish();
+        }
+    }
+
+    /**
+     * Releases the players and the snapshot of the current sweep and allows the next sweep to start.
+     */
+    private void finish() {
+        Arrays.fill(players, 0, playerCount, null);
+        playerCount = 0;
+        areaSnapshot = null;
+        running = false;
+    }
+
+    /**
+     * Makes sure, that the arrays could hold the passed number of players.
+     *
+     * @param capacity the needed capacity.
+     */
+    private void ensureCapacity(int capacity) {
+        if (players.length < capacity) {
+            players = new Player[capacity];
+            worlds = new int[capacity];
+            blockX = new int[capacity];
+            blockY = new int[capacity];
+            blockZ = new int[capacity];
+            portIds = new int[capacity];
+        }
+    }
+}
@@ -21,16 +21,26 @@ package at.co.hohl.easytravel.listener;
 import at.co.hohl.easytravel.PlayerInformation;
 import at.co.hohl.easytravel.TravelPermissions;
 import at.co.hohl.easytravel.TravelPlugin;
+import at.co.hohl.easytravel.ports.Destination;
 import at.co.hohl.easytravel.ports.TravelPort;
+import at.co.hohl.easytravel.ports.TravelPortContainer;
+import at.co.hohl.easytravel.ports.TravelPortNotFound;
+import at.co.hohl.easytravel.ports.WorldRegistry;
 import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
-import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Handle events for all Player related events
@@ -38,15 +48,50 @@ import java.util.Collection;
  * @author Michael Hohl
  */
 public class TravelPlayerListener implements Listener {
+    /**
+     * Maximum distance in blocks, used when looking for the nearest TravelPort of a player.
+     */
+    private static final double MAX_PORT_DISTANCE = 128;
+
     /**
      * Plugin which holds the instance.
      */
     private final TravelPlugin plugin;
 
     /**
-     * Scheduler of the plugin.
+     * Flag if the location of the players get updated by their move events, instead of the scheduler.
+     */
+    private boolean moveTracking;
+
+    /**
+     * Number of ticks, in which every player gets checked at least once.
+     */
+    private int locationUpdateInterval = 60;
+
+    /**
+     * Players of the current sliced sweep, split into buckets. One bucket gets checked at once.
+     */
+    private final List<List<Player>> buckets = new ArrayList<List<Player>>();
+
+    /**
+     * Number of buckets used by the current sliced sweep.
+     */
+    private int bucketCount;
+
+    /**
+     * Ticks passed since the current sliced sweep started.
+     */
+    private int sweepTick;
+
+    /**
+     * Maximum number of blocks a player could move per tick.
      */
-    private BukkitScheduler scheduler;
+    private double maxPlayerSpeed = 1;
+
+    /**
+     * Ticks passed since the adaptive location updates started.
+     */
+    private long currentTick;
 
     /**
      * Creates a new instance of the players listener.
@@ -74,6 +119,10 @@ public class TravelPlayerListener implements Listener {
                 event.getPlayer().sendMessage(ChatColor.GREEN + "[EasyTravel] Your plugin version is outdated!");
             }
         }
+
+        if (moveTracking) {
+            updatePlayerLocation(event.getPlayer(), event.getPlayer().getLocation());
+        }
     }
 
     /**
@@ -87,50 +136,282 @@ public class TravelPlayerListener implements Listener {
     }
 
     /**
-     * Updates the information if the players is inside of a TravelPort.
+     * Called when a player moves. Only used, when tracking the players by their move events.
+     *
+     * @param event details of the event.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerMove(PlayerMoveEvent event) {
+        if (moveTracking && !event.isCancelled()) {
+            onPlayerMoved(event.getPlayer(), event.getFrom(), event.getTo());
+        }
+    }
+
+    /**
+     * Called when a player teleports. Only used, when tracking the players by their move events.
+     *
+     * @param event details of the event.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerTeleport(PlayerTeleportEvent event) {
+        if (event.isCancelled()) {
+            return;
+        }
+
+        if (moveTracking) {
+            onPlayerMoved(event.getPlayer(), event.getFrom(), event.getTo());
+        } else {
+            plugin.getPlayerInformation(event.getPlayer()).resetLocationCheck();
+        }
+    }
+
+    /**
+     * Called when a player respawns.
+     *
+     * @param event details of the event.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(PlayerRespawnEvent event) {
+        plugin.getPlayerInformation(event.getPlayer()).resetLocationCheck();
+    }
+
+    /**
+     * Sets if the location of the players get updated by their move events, instead of the scheduler.
+     *
+     * @param moveTracking true, to track the players by their move events.
+     */
+    public void setMoveTracking(boolean moveTracking) {
+        this.moveTracking = moveTracking;
+    }
+
+    /**
+     * Sets the number of ticks, in which every player gets checked at least once.
+     *
+     * @param locationUpdateInterval the interval in ticks.
+     */
+    public void setLocationUpdateInterval(int locationUpdateInterval) {
+        this.locationUpdateInterval = Math.max(1, locationUpdateInterval);
+    }
+
+    /**
+     * Sets the maximum number of blocks a player could move per tick. Used to find out, how long it takes at least
+     * until a player could reach a TravelPort.
+     *
+     * @param maxPlayerSpeed the speed in blocks per tick.
+     */
+    public void setMaxPlayerSpeed(double maxPlayerSpeed) {
+        this.maxPlayerSpeed = maxPlayerSpeed > 0 ? maxPlayerSpeed : 1;
+    }
+
+    /**
+     * Updates the departures of the TravelPorts with players inside. Used instead of the location update, when tracking
+     * the players by their move events.
+     */
+    public void onDepartureUpdate() {
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            PlayerInformation playerInformation = plugin.getPlayerInformation(player);
+
+            if (playerInformation.isInsideTravelPort()) {
+                TravelPort currentTravelPort = playerInformation.getCurrentPort();
+                long currentTime = getCurrentTime(currentTravelPort, player);
+                currentTravelPort.getDeparture().onPlayersInside(currentTime);
+            }
+        }
+    }
+
+    /**
+     * Updates the information if the players is inside of a TravelPort. All players get checked in a single pass.
      */
     public void onPlayerLocationUpdate() {
         Player[] players = plugin.getServer().getOnlinePlayers();
-        scheduler = plugin.getServer().getScheduler();
 
-        for (final Player player : players) {
-            scheduler.scheduleSyncDelayedTask(plugin, new Runnable() {
-                public void run() {
-                    updatePlayerLocation(player);
+        for (int index = 0; index < players.length; ++index) {
+            updatePlayerLocation(players[index], players[index].getLocation());
+        }
+    }
+
+    /**
+     * Updates the information if the players is inside of a TravelPort. Needs to get called every tick, and spreads
+     * the players over the ticks of the location update interval, by splitting them into buckets. The number of
+     * buckets adapts to the number of players, so every player still gets checked once per interval.
+     */
+    public void onSlicedLocationUpdate() {
+        if (sweepTick == 0) {
+            startSlicedSweep();
+        }
+
+        int ticksPerBucket = locationUpdateInterval / bucketCount;
+        if (sweepTick % ticksPerBucket == 0 && sweepTick / ticksPerBucket < bucketCount) {
+            List<Player> bucket = buckets.get(sweepTick / ticksPerBucket);
+
+            for (int index = 0, size = bucket.size(); index < size; ++index) {
+                Player player = bucket.get(index);
+
+                if (player.isOnline()) {
+                    updatePlayerLocation(player, player.getLocation());
                 }
-            });
+            }
+        }
+
+        sweepTick = (sweepTick + 1) % locationUpdateInterval;
+    }
+
+    /**
+     * Splits the online players into buckets for the next sliced sweep, by using the hash of their unique id.
+     */
+    private void startSlicedSweep() {
+        Player[] players = plugin.getServer().getOnlinePlayers();
+        bucketCount = Math.max(1, Math.min(locationUpdateInterval, players.length));
+
+        while (buckets.size() < bucketCount) {
+            buckets.add(new ArrayList<Player>());
+        }
+        for (List<Player> bucket : buckets) {
+            bucket.clear();
+        }
+
+        for (Player player : players) {
+            int hash = player.getUniqueId().hashCode() & Integer.MAX_VALUE;
+            buckets.get(hash % bucketCount).add(player);
+        }
+    }
+
+    /**
+     * Updates the information if the players is inside of a TravelPort. Needs to get called every tick, but only
+     * checks the players which could have reached a TravelPort since their last check. This depends on the distance
+     * to the nearest TravelPort and the maximum speed of the players.
+     */
+    public void onAdaptiveLocationUpdate() {
+        ++currentTick;
+
+        TravelPortContainer travelPorts = plugin.getTravelPorts();
+        int modificationCount = travelPorts.getModificationCount();
+        Player[] players = plugin.getServer().getOnlinePlayers();
+
+        for (int index = 0; index < players.length; ++index) {
+            Player player = players[index];
+            PlayerInformation playerInformation = plugin.getPlayerInformation(player);
+
+            if (playerInformation.isLocationCheckDue(currentTick, modificationCount)) {
+                Location location = player.getLocation();
+                updatePlayerLocation(player, location);
+
+                // Players could be anywhere inside the block, so remove a bit of the distance to be on the safe side.
+                double portDistance = 0;
+                if (!playerInformation.isInsideTravelPort()) {
+                    portDistance = Math.max(0, travelPorts.getDistanceToNearestPort(location, MAX_PORT_DISTANCE) - 2);
+                }
+
+                long ticksToSkip = Math.max(1, (long) (portDistance / maxPlayerSpeed));
+                playerInformation.setPortDistance(portDistance, currentTick + ticksToSkip, modificationCount);
+            }
+        }
+    }
+
+    /**
+     * Applies the TravelPort, which got resolved for the player by the AsyncLocationResolver.
+     *
+     * @param player the player to update.
+     * @param portId the id of the TravelPort, the player is inside now, or -1 if the player is outside.
+     */
+    void applyResolvedPort(Player player, int portId) {
+        PlayerInformation playerInformation = plugin.getPlayerInformation(player);
+        TravelPort currentTravelPort = playerInformation.getCurrentPort();
+
+        if (currentTravelPort != null && currentTravelPort.getId() == portId) {
+            long currentTime = getCurrentTime(currentTravelPort, player);
+            currentTravelPort.getDeparture().onPlayersInside(currentTime);
+            return;
+        }
+
+        if (currentTravelPort != null) {
+            currentTravelPort.onPlayerLeft(player);
+            playerInformation.setCurrentPort(null);
+        }
+
+        if (portId >= 0) {
+            try {
+                TravelPort port = plugin.getTravelPorts().get(portId);
+                playerInformation.setCurrentPort(port);
+                port.onPlayerEntered(player);
+            } catch (TravelPortNotFound exception) {
+                // TravelPort got removed in the meantime.
+            }
+        }
+    }
+
+    /**
+     * Called when a player moved. Skips the update, as long as the player stays on the same block.
+     *
+     * @param player the player who moved.
+     * @param from   the location before moving.
+     * @param to     the location after moving.
+     */
+    private void onPlayerMoved(Player player, Location from, Location to) {
+        if (from.getBlockX() != to.getBlockX() || from.getBlockY() != to.getBlockY()
+            || from.getBlockZ() != to.getBlockZ() || from.getWorld() != to.getWorld()) {
+            updatePlayerLocation(player, to);
         }
     }
 
     /**
      * Updates the location information of a player.
      *
-     * @param player player to locate.
+     * @param player   player to locate.
+     * @param location the current location of the player.
      */
-    private void updatePlayerLocation(Player player) {
+    private void updatePlayerLocation(Player player, Location location) {
         // Get Information about player.
         PlayerInformation playerInformation = plugin.getPlayerInformation(player);
+        int world = WorldRegistry.getId(location.getWorld());
+        int x = location.getBlockX(), y = location.getBlockY(), z = location.getBlockZ();
 
         // Check if players is now in TravelPort too!
         if (playerInformation.isInsideTravelPort()) {
             TravelPort currentTravelPort = playerInformation.getCurrentPort();
 
-            if (!currentTravelPort.getArea().contains(player.getLocation())) {
+            if (!currentTravelPort.getArea().contains(world, x, y, z)) {
                 currentTravelPort.onPlayerLeft(player);
                 playerInformation.setCurrentPort(null);
             } else {
-                long currentTime = currentTravelPort.getDestination().getLocation().getWorld().getTime();
+                long currentTime = getCurrentTime(currentTravelPort, player);
                 currentTravelPort.getDeparture().onPlayersInside(currentTime);
             }
         } else {
-            // Check if players now has entered one.
-            Collection<TravelPort> ports = plugin.getTravelPorts().search(player.getLocation());
+            TravelPortContainer travelPorts = plugin.getTravelPorts();
+            int chunkX = x >> 4, chunkZ = z >> 4;
+            int modificationCount = travelPorts.getModificationCount();
 
-            for (TravelPort port : ports) {
-                playerInformation.setCurrentPort(port);
-                port.onPlayerEntered(player);
+            // Look up the TravelPorts of the chunk only, when the player entered another chunk.
+            TravelPort[] candidatePorts =
+                playerInformation.getCandidatePorts(world, chunkX, chunkZ, modificationCount);
+            if (candidatePorts == null) {
+                candidatePorts = travelPorts.getPortsInChunk(world, chunkX, chunkZ);
+                playerInformation.setCandidatePorts(world, chunkX, chunkZ, modificationCount, candidatePorts);
+            }
+
+            // Check if players now has entered one.
+            for (TravelPort port : candidatePorts) {
+                if (port.getArea().contains(world, x, y, z)) {
+                    playerInformation.setCurrentPort(port);
+                    port.onPlayerEntered(player);
+                }
             }
         }
     }
-}
 
+    /**
+     * Returns the time used for the departure of the passed TravelPort. That's the time of the world of the
+     * destination, or the time of the world of the player, if the world of the destination isn't loaded.
+     *
+     * @param port   the TravelPort to depart.
+     * @param player a player inside the TravelPort.
+     * @return the current time.
+     */
+    private static long getCurrentTime(TravelPort port, Player player) {
+        Destination destination = port.getDestination();
+        World world = destination != null ? destination.getWorld() : null;
+
+        return (world != null ? world : player.getWorld()).getTime();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.listener;
+
+import at.co.hohl.easytravel.TravelPlugin;
+import at.co.hohl.easytravel.ports.WorldRegistry;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+/**
+ * Handle events for all World related events.
+ *
+ * @author Michael Hohl
+ */
+public class TravelWorldListener implements Listener {
+    /**
+     * Plugin which holds the instance.
+     */
+    private final TravelPlugin plugin;
+
+    /**
+     * Creates a new listener.
+     *
+     * @param instance the plugin which holds the instance.
+     */
+    public TravelWorldListener(TravelPlugin instance) {
+        plugin = instance;
+    }
+
+    /**
+     * Called when a world got loaded.
+     *
+     * @param event the event of the world.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        WorldRegistry.onWorldLoaded(event.getWorld());
+
+        if (plugin.getTravelPorts() != null) {
+            plugin.getTravelPorts().onWorldLoaded(event.getWorld());
+        }
+    }
+
+    /**
+     * Called when a world got unloaded.
+     *
+     * @param event the event of the world.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        if (!event.isCancelled()) {
+            if (plugin.getTravelPorts() != null) {
+                plugin.getTravelPorts().onWorldUnloaded(event.getWorld());
+            }
+
+            WorldRegistry.onWorldUnloaded(event.getWorld());
+        }
+    }
+}
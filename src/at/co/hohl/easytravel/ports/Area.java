@@ -33,4 +33,20 @@ public interface Area {
      * @return true, if the passed location is inside this area.
      */
     boolean contains(Location location);
+
+    /**
+     * Checks if the passed block is inside the area. Areas are immutable, so this could get called from any thread.
+     *
+     * @param worldId the id of the world of the block, assigned by the WorldRegistry.
+     * @param x       the x coord of the block.
+     * @param y       the y coord of the block.
+     * @param z       the z coord of the block.
+     * @return true, if the passed block is inside this area.
+     */
+    boolean contains(int worldId, int x, int y, int z);
+
+    /**
+     * @return the smallest box which contains the whole area, or null if the area isn't bounded.
+     */
+    BoundingBox getBoundingBox();
 }
@@ -0,0 +1,54 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.ports;
+
+import at.co.hohl.utils.storage.SyntaxException;
+
+/**
+ * Static helper class for loading Areas.
+ *
+ * @author Michael Hohl
+ */
+public final class AreaHelper {
+    /**
+     * Loads the Area out of the passed description.
+     *
+     * @param description the description of the Area, like created by the toString() of the Area.
+     * @return the loaded Area.
+     * @throws SyntaxException invalid format of description.
+     */
+    public static Area load(String description) throws SyntaxException {
+        description = description.trim();
+        if (description.startsWith("CuboidArea{")) {
+            return new CuboidArea(description);
+        } else if (description.startsWith("PolygonArea{")) {
+            return new PolygonArea(description);
+        } else if (description.startsWith("CuboidUnionArea{")) {
+            return new CuboidUnionArea(description);
+        } else {
+            throw new SyntaxException("Unknown type of area!");
+        }
+    }
+
+    /**
+     * No need of creating an instance of that!
+     */
+    private AreaHelper() {
+    }
+}
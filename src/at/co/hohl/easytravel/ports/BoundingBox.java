@@ -0,0 +1,156 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.ports;
+
+import org.bukkit.Location;
+
+/**
+ * Immutable axis aligned box of blocks inside a world. The high coords are inclusive.
+ *
+ * @author Michael Hohl
+ */
+public final class BoundingBox {
+    private final int worldId;
+    private final int lowX, lowY, lowZ;
+    private final int highX, highY, highZ;
+
+    /**
+     * Creates a new BoundingBox.
+     *
+     * @param worldId the id of the world in which the box is inside.
+     * @param lowX    the lowest x coord.
+     * @param lowY    the lowest y coord.
+     * @param lowZ    the lowest z coord.
+     * @param highX   the highest x coord.
+     * @param highY   the highest y coord.
+     * @param highZ   the highest z coord.
+     */
+    public BoundingBox(int worldId, int lowX, int lowY, int lowZ, int highX, int highY, int highZ) {
+        this.worldId = worldId;
+        this.lowX = lowX;
+        this.lowY = lowY;
+        this.lowZ = lowZ;
+        this.highX = highX;
+        this.highY = highY;
+        this.highZ = highZ;
+    }
+
+    /**
+     * Checks if the passed location is inside the box.
+     *
+     * @param location the location to check.
+     * @return true, if the passed location is inside this box.
+     */
+    public boolean contains(Location location) {
+        return worldId == WorldRegistry.getId(location.getWorld())
+            && lowX <= location.getBlockX() && location.getBlockX() <= highX
+            && lowY <= location.getBlockY() && location.getBlockY() <= highY
+            && lowZ <= location.getBlockZ() && location.getBlockZ() <= highZ;
+    }
+
+    /**
+     * Checks if the passed box shares at least one block with this box.
+     *
+     * @param box the box to check.
+     * @return true, if both boxes intersect.
+     */
+    public boolean intersects(BoundingBox box) {
+        return worldId == box.worldId
+            && lowX <= box.highX && box.lowX <= highX
+            && lowY <= box.highY && box.lowY <= highY
+            && lowZ <= box.highZ && box.lowZ <= highZ;
+    }
+
+    /**
+     * Calculates the distance between the passed block and the nearest block of this box.
+     *
+     * @param x the x coord of the block.
+     * @param y the y coord of the block.
+     * @param z the z coord of the block.
+     * @return the distance in blocks, or 0 if the block is inside the box.
+     */
+    public double distance(int x, int y, int z) {
+        double distanceX = Math.max(0, Math.max(lowX - x, x - highX));
+        double distanceY = Math.max(0, Math.max(lowY - y, y - highY));
+        double distanceZ = Math.max(0, Math.max(lowZ - z, z - highZ));
+        return Math.sqrt(distanceX * distanceX + distanceY * distanceY + distanceZ * distanceZ);
+    }
+
+    /**
+     * @return id of the world in which the box is inside.
+     */
+    public int getWorldId() {
+        return worldId;
+    }
+
+    /**
+     * @return the lowest x coord.
+     */
+    public int getLowX() {
+        return lowX;
+    }
+
+    /**
+     * @return the lowest y coord.
+     */
+    public int getLowY() {
+        return lowY;
+    }
+
+    /**
+     * @return the lowest z coord.
+     */
+    public int getLowZ() {
+        return lowZ;
+    }
+
+    /**
+     * @return the highest x coord.
+     */
+    public int getHighX() {
+        return highX;
+    }
+
+    /**
+     * @return the highest y coord.
+     */
+    public int getHighY() {
+        return highY;
+    }
+
+    /**
+     * @return the highest z coord.
+     */
+    public int getHighZ() {
+        return highZ;
+    }
+
+    @Override
+    public String toString() {
+        return "BoundingBox{" +
+            "world=" + WorldRegistry.getName(worldId) +
+            ", lowx=" + lowX +
+            ", lowy=" + lowY +
+            ", lowz=" + lowZ +
+            ", highx=" + highX +
+            ", highy=" + highY +
+            ", highz=" + highZ +
+            '}';
+    }
+}
@@ -29,10 +29,10 @@ import org.bukkit.World;
  * @author Michael Hohl
  */
 public class CuboidArea implements Area {
-    private int highx, lowx;
-    private int highy, lowy;
-    private int highz, lowz;
-    private String world;
+    private final int highx, lowx;
+    private final int highy, lowy;
+    private final int highz, lowz;
+    private final int worldId;
 
     /**
      * Creates a new CuboidArea with the two passed locations as edges.
@@ -50,7 +50,7 @@ public class CuboidArea implements Area {
         highz = Math.max(edge1.getBlockZ(), edge2.getBlockZ());
         lowz = Math.min(edge1.getBlockZ(), edge2.getBlockZ());
 
-        world = edge1.getWorld().getName();
+        worldId = WorldRegistry.getId(edge1.getWorld());
     }
 
     /**
@@ -74,7 +74,31 @@ public class CuboidArea implements Area {
         highz = Math.max(z1, z2);
         lowz = Math.min(z1, z2);
 
-        this.world = world.getName();
+        worldId = WorldRegistry.getId(world);
+    }
+
+    /**
+     * Creates a new CuboidArea with the passed coordinates.
+     *
+     * @param worldId the id of the world, assigned by the WorldRegistry.
+     * @param x1      coord
+     * @param x2      coord
+     * @param y1      coord
+     * @param y2      coord
+     * @param z1      coord
+     * @param z2      coord
+     */
+    public CuboidArea(int worldId, int x1, int x2, int y1, int y2, int z1, int z2) {
+        highx = Math.max(x1, x2);
+        lowx = Math.min(x1, x2);
+
+        highy = Math.max(y1, y2);
+        lowy = Math.min(y1, y2);
+
+        highz = Math.max(z1, z2);
+        lowz = Math.min(z1, z2);
+
+        this.worldId = worldId;
     }
 
     /**
@@ -92,7 +116,12 @@ public class CuboidArea implements Area {
             lowy = parser.getInt("lowy");
             highz = parser.getInt("highz");
             lowz = parser.getInt("lowz");
-            world = parser.getString("world");
+            String worldName = parser.getString("world");
+            if (worldName != null) {
+                worldId = WorldRegistry.getId(worldName);
+            } else {
+                throw new SyntaxException("No world property found!");
+            }
         } else {
             throw new SyntaxException("String isn't a valid description for a CuboidArea!");
         }
@@ -105,10 +134,31 @@ public class CuboidArea implements Area {
      * @return true, if the passed location is inside this area.
      */
     public boolean contains(final Location location) {
-        return world.equalsIgnoreCase(location.getWorld().getName()) // Same World?
-            && (highx >= location.getBlockX() && lowx <= location.getBlockX()) // Inside X coords?
-            && (highy >= location.getBlockY() && lowy <= location.getBlockY()) // Inside Y coords?
-            && (highz >= location.getBlockZ() && lowz <= location.getBlockZ()); // Inside Z coords?
+        return contains(WorldRegistry.getId(location.getWorld()),
+            location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+
+    /**
+     * Checks if the passed block is inside the area.
+     *
+     * @param worldId the id of the world of the block, assigned by the WorldRegistry.
+     * @param x       the x coord of the block.
+     * @param y       the y coord of the block.
+     * @param z       the z coord of the block.
+     * @return true, if the passed block is inside this area.
+     */
+    public boolean contains(int worldId, int x, int y, int z) {
+        return this.worldId == worldId // Same World?
+            && (highx >= x && lowx <= x) // Inside X coords?
+            && (highy >= y && lowy <= y) // Inside Y coords?
+            && (highz >= z && lowz <= z); // Inside Z coords?
+    }
+
+    /**
+     * @return the smallest box which contains the whole area.
+     */
+    public BoundingBox getBoundingBox() {
+        return new BoundingBox(worldId, lowx, lowy, lowz, highx, highy, highz);
     }
 
     @Override
@@ -120,7 +170,7 @@ public class CuboidArea implements Area {
             ", lowy=" + lowy +
             ", highz=" + highz +
             ", lowz=" + lowz +
-            ", world=" + world +
+            ", world=" + WorldRegistry.getName(worldId) +
             '}';
     }
 }
@@ -0,0 +1,180 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.ports;
+
+import at.co.hohl.utils.storage.PropertiesParser;
+import at.co.hohl.utils.storage.SyntaxException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents a union of cuboids inside the same world. Used for TravelPorts with shapes like L-shaped platforms.
+ *
+ * @author Michael Hohl
+ */
+public class CuboidUnionArea extends VoxelArea {
+    private final List<BoundingBox> cuboids;
+
+    /**
+     * Creates a new CuboidUnionArea.
+     *
+     * @param cuboids the cuboids of the area. All cuboids need to be inside the same world.
+     * @throws SyntaxException thrown when the area is larger than MAX_SIZE.
+     */
+    public CuboidUnionArea(final List<BoundingBox> cuboids) throws SyntaxException {
+        this(cuboids.get(0).getWorldId(), new ArrayList<BoundingBox>(cuboids));
+    }
+
+    /**
+     * Creates a new CuboidUnionArea out of a String containing information.
+     *
+     * @param string the string containing the information.
+     * @throws SyntaxException thrown when the string isn't formatted valid.
+     */
+    public CuboidUnionArea(final String string) throws SyntaxException {
+        this(new PropertiesParser(string));
+    }
+
+    /**
+     * Creates a new CuboidUnionArea out of the parsed information.
+     *
+     * @param parser the parser containing the information.
+     * @throws SyntaxException thrown when the information isn't valid.
+     */
+    private CuboidUnionArea(final PropertiesParser parser) throws SyntaxException {
+        this(parseCuboids(parser));
+    }
+
+    /**
+     * Creates a new CuboidUnionArea and compiles it into the bitmap.
+     *
+     * @param worldId the id of the world in which the area is inside.
+     * @param cuboids the cuboids of the area.
+     * @throws SyntaxException thrown when the area is larger than MAX_SIZE.
+     */
+    private CuboidUnionArea(int worldId, List<BoundingBox> cuboids) throws SyntaxException {
+        super(worldId, lowest(cuboids, 0), lowest(cuboids, 1), lowest(cuboids, 2),
+            highest(cuboids, 0), highest(cuboids, 1), highest(cuboids, 2));
+
+        for (BoundingBox cuboid : cuboids) {
+            if (cuboid.getWorldId() != worldId) {
+                throw new IllegalArgumentException("All cuboids need to be inside the same world!");
+            }
+
+            addCuboid(cuboid.getLowX(), cuboid.getLowY(), cuboid.getLowZ(),
+                cuboid.getHighX(), cuboid.getHighY(), cuboid.getHighZ());
+        }
+
+        this.cuboids = Collections.unmodifiableList(cuboids);
+    }
+
+    /**
+     * @return the cuboids of the area.
+     */
+    public List<BoundingBox> getCuboids() {
+        return cuboids;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder cuboidsString = new StringBuilder();
+        for (BoundingBox cuboid : cuboids) {
+            if (cuboidsString.length() > 0) {
+                cuboidsString.append('/');
+            }
+            cuboidsString.append(cuboid.getLowX()).append(':')
+                .append(cuboid.getLowY()).append(':')
+                .append(cuboid.getLowZ()).append(':')
+                .append(cuboid.getHighX()).append(':')
+                .append(cuboid.getHighY()).append(':')
+                .append(cuboid.getHighZ());
+        }
+
+        return "CuboidUnionArea{" +
+            "cuboids=" + cuboidsString +
+            ", world=" + WorldRegistry.getName(worldId) +
+            '}';
+    }
+
+    /**
+     * Reads the cuboids out of the parsed information. The cuboids are stored like "lx:ly:lz:hx:hy:hz/lx:ly:...".
+     *
+     * @param parser the parser containing the information.
+     * @return the cuboids.
+     * @throws SyntaxException thrown when the information isn't valid.
+     */
+    private static List<BoundingBox> parseCuboids(PropertiesParser parser) throws SyntaxException {
+        if (!"CuboidUnionArea".equals(parser.getType())) {
+            throw new SyntaxException("String isn't a valid description for a CuboidUnionArea!");
+        }
+
+        String worldName = parser.getString("world");
+        String cuboidsString = parser.getString("cuboids");
+        if (worldName == null) {
+            throw new SyntaxException("No world property found!");
+        } else if (cuboidsString == null) {
+            throw new SyntaxException("No cuboids property found!");
+        }
+
+        int worldId = WorldRegistry.getId(worldName);
+        List<BoundingBox> cuboids = new ArrayList<BoundingBox>();
+        for (String cuboidString : cuboidsString.split("/")) {
+            String[] coords = cuboidString.split(":");
+            if (coords.length != 6) {
+                throw new SyntaxException(String.format("Invalid cuboid '%s'!", cuboidString));
+            }
+
+            int x1 = Integer.parseInt(coords[0].trim()), x2 = Integer.parseInt(coords[3].trim());
+            int y1 = Integer.parseInt(coords[1].trim()), y2 = Integer.parseInt(coords[4].trim());
+            int z1 = Integer.parseInt(coords[2].trim()), z2 = Integer.parseInt(coords[5].trim());
+            cuboids.add(new BoundingBox(worldId, Math.min(x1, x2), Math.min(y1, y2), Math.min(z1, z2),
+                Math.max(x1, x2), Math.max(y1, y2), Math.max(z1, z2)));
+        }
+        return cuboids;
+    }
+
+    /**
+     * @param cuboids the cuboids.
+     * @param axis    0 for x, 1 for y and 2 for z.
+     * @return the lowest coord of all cuboids on the passed axis.
+     */
+    private static int lowest(List<BoundingBox> cuboids, int axis) {
+        int lowest = Integer.MAX_VALUE;
+        for (BoundingBox cuboid : cuboids) {
+            lowest = Math.min(lowest, axis == 0 ? cuboid.getLowX() : axis == 1 ? cuboid.getLowY() : cuboid.getLowZ());
+        }
+        return lowest;
+    }
+
+    /**
+     * @param cuboids the cuboids.
+     * @param axis    0 for x, 1 for y and 2 for z.
+     * @return the highest coord of all cuboids on the passed axis.
+     */
+    private static int highest(List<BoundingBox> cuboids, int axis) {
+        int highest = Integer.MIN_VALUE;
+        for (BoundingBox cuboid : cuboids) {
+            highest = Math.max(highest,
+                axis == 0 ? cuboid.getHighX() : axis == 1 ? cuboid.getHighY() : cuboid.getHighZ());
+        }
+        return highest;
+    }
+}
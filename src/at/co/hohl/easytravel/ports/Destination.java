@@ -21,20 +21,31 @@ package at.co.hohl.easytravel.ports;
 import at.co.hohl.utils.storage.PropertiesParser;
 import at.co.hohl.utils.storage.SyntaxException;
 import org.bukkit.Location;
-import org.bukkit.Server;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 
 /**
- * Represents a destination for a TravelPort.
+ * Represents a destination for a TravelPort. Only stores the id of the world and the coords, the world gets resolved
+ * by the WorldRegistry when the destination gets used. So a destination could get loaded before its world, and
+ * doesn't keep its world in memory after it got unloaded.
  *
  * @author Michael Hohl
  */
 public class Destination {
     /**
-     * Location of the destination.
+     * Id of the world of the destination, assigned by the WorldRegistry.
      */
-    private final Location location;
+    private final int worldId;
+
+    /**
+     * Coords of the destination.
+     */
+    private final double x, y, z;
+
+    /**
+     * Direction of the destination.
+     */
+    private final float pitch, yaw;
 
     /**
      * Creates a destination with the passed Location.
@@ -42,32 +53,52 @@ public class Destination {
      * @param location the location.
      */
     public Destination(final Location location) {
-        this.location = location;
+        worldId = WorldRegistry.getId(location.getWorld());
+        x = location.getX();
+        y = location.getY();
+        z = location.getZ();
+        pitch = location.getPitch();
+        yaw = location.getYaw();
+    }
+
+    /**
+     * Creates a Destination with the passed coords. The world doesn't need to be loaded.
+     *
+     * @param worldId the id of the world, assigned by the WorldRegistry.
+     * @param x       the x coord.
+     * @param y       the y coord.
+     * @param z       the z coord.
+     * @param yaw     the yaw of the direction.
+     * @param pitch   the pitch of the direction.
+     */
+    public Destination(int worldId, double x, double y, double z, float yaw, float pitch) {
+        this.worldId = worldId;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.yaw = yaw;
+        this.pitch = pitch;
     }
 
     /**
-     * Creates a Destination with the passed description.
+     * Creates a Destination with the passed description. The world doesn't need to be loaded.
      *
-     * @param server      the server which wants to load the destination.
      * @param description the string which contains all information.
      * @throws SyntaxException thrown when the description isn't formatted valid.
      */
-    public Destination(final Server server, final String description) throws SyntaxException {
+    public Destination(final String description) throws SyntaxException {
         PropertiesParser parser = new PropertiesParser(description);
 
         if ("Destination".equals(parser.getType())) {
-            double locx = parser.getDouble("locx");
-            double locy = parser.getDouble("locy");
-            double locz = parser.getDouble("locz");
-            float pitch = parser.getFloat("pitch");
-            float yaw = parser.getFloat("yaw");
+            x = parser.getDouble("locx");
+            y = parser.getDouble("locy");
+            z = parser.getDouble("locz");
+            pitch = parser.getFloat("pitch");
+            yaw = parser.getFloat("yaw");
             String worldName = parser.getString("world");
 
             if (worldName != null) {
-                World world = server.getWorld(worldName);
-                location = new Location(world, locx, locy, locz);
-                location.setPitch(pitch);
-                location.setYaw(yaw);
+                worldId = WorldRegistry.getId(worldName);
             } else {
                 throw new SyntaxException("No world property found!");
             }
@@ -82,10 +113,12 @@ public class Destination {
      * @param player the location to teleport to.
      */
     public void teleport(Player player) {
-        if (location != null) {
+        Location location = getLocation();
+
+        if (location.getWorld() != null) {
             player.teleport(location);
         } else {
-            throw new MissDestinationException("Whoops, something went wrong! Travel port destination not set!");
+            throw new MissDestinationException("Whoops, the world of the travel port destination isn't loaded!");
         }
     }
 
@@ -93,39 +126,67 @@ public class Destination {
      * @return the x coord of the destination.
      */
     public double getX() {
-        return location.getX();
+        return x;
     }
 
     /**
      * @return the y coord of the destination.
      */
     public double getY() {
-        return location.getY();
+        return y;
     }
 
     /**
      * @return the z coord of the destination.
      */
     public double getZ() {
-        return location.getZ();
+        return z;
+    }
+
+    /**
+     * @return the pitch of the direction.
+     */
+    public float getPitch() {
+        return pitch;
+    }
+
+    /**
+     * @return the yaw of the direction.
+     */
+    public float getYaw() {
+        return yaw;
+    }
+
+    /**
+     * @return the id of the world of the destination.
+     */
+    public int getWorldId() {
+        return worldId;
+    }
+
+    /**
+     * @return the world of the destination, or null if the world isn't loaded.
+     */
+    public World getWorld() {
+        return WorldRegistry.getWorld(worldId);
     }
 
     /**
-     * @return the location of the destination.
+     * @return the location of the destination. The world of the location is null, if the world isn't loaded.
      */
     public Location getLocation() {
-        return location;
+        return new Location(WorldRegistry.getWorld(worldId), x, y, z, yaw, pitch);
     }
 
     @Override
     public String toString() {
         return "Destination{" +
-            "locx=" + location.getX() +
-            ", locy=" + location.getY() +
-            ", locz=" + location.getZ() +
-            ", world=" + location.getWorld().getName() +
-            ", pitch=" + location.getPitch() +
-            ", yaw=" + location.getYaw() +
+            "locx=" + x +
+            ", locy=" + y +
+            ", locz=" + z +
+            ", world=" + WorldRegistry.getName(worldId) +
+            ", pitch=" + pitch +
+            ", yaw=" + yaw +
             '}';
     }
 
@@ -0,0 +1,350 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.ports;
+
+import at.co.hohl.utils.storage.PropertiesParser;
+import at.co.hohl.utils.storage.SyntaxException;
+import org.bukkit.World;
+
+import java.util.Arrays;
+
+/**
+ * Represents a prism with a polygon as base, like the polygon selections of WorldEdit. Blocks on the edges of the
+ * polygon are inside the area.
+ *
+ * @author Michael Hohl
+ */
+public class PolygonArea extends VoxelArea {
+    private final int[] pointsX, pointsZ;
+    private final int lowy, highy;
+
+    /**
+     * Creates a new PolygonArea.
+     *
+     * @param world   the world in which the area is inside.
+     * @param pointsX the x coords of the points of the polygon.
+     * @param pointsZ the z coords of the points of the polygon.
+     * @param y1      coord
+     * @param y2      coord
+     * @throws SyntaxException thrown when the polygon is larger than MAX_SIZE.
+     */
+    public PolygonArea(final World world, int[] pointsX, int[] pointsZ, int y1, int y2) throws SyntaxException {
+        this(WorldRegistry.getId(world), pointsX, pointsZ, y1, y2);
+    }
+
+    /**
+     * Creates a new PolygonArea out of a String containing information.
+     *
+     * @param string the string containing the information.
+     * @throws SyntaxException thrown when the string isn't formatted valid.
+     */
+    public PolygonArea(final String string) throws SyntaxException {
+        this(new PropertiesParser(string));
+    }
+
+    /**
+     * Creates a new PolygonArea out of the parsed information.
+     *
+     * @param parser the parser containing the information.
+     * @throws SyntaxException thrown when the information isn't valid.
+     */
+    private PolygonArea(final PropertiesParser parser) throws SyntaxException {
+        this(parseWorld(parser), parsePoints(parser, 0), parsePoints(parser, 1),
+            parser.getInt("lowy"), parser.getInt("highy"));
+    }
+
+    /**
+     * Creates a new PolygonArea and compiles it into the bitmap.
+     *
+     * @param worldId the id of the world in which the area is inside.
+     * @param pointsX the x coords of the points of the polygon.
+     * @param pointsZ the z coords of the points of the polygon.
+     * @param y1      coord
+     * @param y2      coord
+     * @throws SyntaxException thrown when the polygon is larger than MAX_SIZE.
+     */
+    private PolygonArea(int worldId, int[] pointsX, int[] pointsZ, int y1, int y2) throws SyntaxException {
+        super(worldId, min(pointsX), Math.min(y1, y2), min(pointsZ), max(pointsX), Math.max(y1, y2), max(pointsZ));
+
+        this.pointsX = pointsX.clone();
+        this.pointsZ = pointsZ.clone();
+        this.lowy = Math.min(y1, y2);
+        this.highy = Math.max(y1, y2);
+
+        compile();
+    }
+
+    /**
+     * Adds the columns of blocks inside the polygon to the bitmap. The polygon gets rasterised in strips of 16 rows,
+     * aligned to the sections of the bitmap, so sections completely inside the polygon get added at once.
+     */
+    private void compile() {
+        BoundingBox box = getBoundingBox();
+        int lowX = box.getLowX(), lowZ = box.getLowZ(), highX = box.getHighX(), highZ = box.getHighZ();
+        int width = highX - lowX + 1;
+
+        long[] edgeBlocks = getEdgeBlocks(lowX, lowZ);
+        double[] crossings = new double[pointsX.length];
+        boolean[] strip = new boolean[16 * width];
+        int nextEdgeBlock = 0;
+
+        for (int stripZ = lowZ >> 4; stripZ <= highZ >> 4; ++stripZ) {
+            int fromZ = Math.max(lowZ, stripZ << 4), toZ = Math.min(highZ, (stripZ << 4) + 15);
+            Arrays.fill(strip, false);
+
+            // Blocks inside the polygon. (Same as WorldEdit, the block coords are used as points)
+            for (int z = fromZ; z <= toZ; ++z) {
+                int row = (z & 15) * width;
+                int crossingCount = getCrossings(z, crossings);
+
+                // Using the even odd rule, a block is inside if an odd number of crossings is right of it.
+                for (int index = 0; index + 1 < crossingCount; index += 2) {
+                    int runStart = Math.max(lowX, (int) Math.ceil(crossings[index]));
+                    int runEnd = Math.min(highX, (int) Math.ceil(crossings[index + 1]) - 1);
+                    for (int x = runStart; x <= runEnd; ++x) {
+                        strip[row + x - lowX] = true;
+                    }
+                }
+            }
+
+            // Blocks on the edges.
+            while (nextEdgeBlock < edgeBlocks.length && (int) (edgeBlocks[nextEdgeBlock] >>> 32) + lowZ <= toZ) {
+                int z = (int) (edgeBlocks[nextEdgeBlock] >>> 32) + lowZ;
+                int x = (int) edgeBlocks[nextEdgeBlock] + lowX;
+                strip[(z & 15) * width + x - lowX] = true;
+                ++nextEdgeBlock;
+            }
+
+            // Add the sections of the strip to the bitmap.
+            for (int sectionX = lowX >> 4; sectionX <= highX >> 4; ++sectionX) {
+                int fromX = Math.max(lowX, sectionX << 4), toX = Math.min(highX, (sectionX << 4) + 15);
+
+                if (isFilled(strip, width, lowX, fromX, fromZ, toX, toZ)) {
+                    addCuboid(fromX, lowy, fromZ, toX, highy, toZ);
+                } else {
+                    addRows(strip, width, lowX, fromX, fromZ, toX, toZ);
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates the x coords at which the edges of the polygon cross the passed row.
+     *
+     * @param z         the z coord of the row.
+     * @param crossings array which receives the sorted crossings.
+     * @return the number of crossings.
+     */
+    private int getCrossings(int z, double[] crossings) {
+        int count = 0;
+
+        for (int index = 0, last = pointsX.length - 1; index < pointsX.length; last = index++) {
+            double x1 = pointsX[index], z1 = pointsZ[index];
+            double x2 = pointsX[last], z2 = pointsZ[last];
+
+            if ((z1 > z) != (z2 > z)) {
+                crossings[count++] = (x2 - x1) * (z - z1) / (z2 - z1) + x1;
+            }
+        }
+
+        Arrays.sort(crossings, 0, count);
+        return count;
+    }
+
+    /**
+     * Returns the blocks on the edges of the polygon. Every block is stored as the z coord in the upper and the x coord
+     * in the lower 32 bits, both relative to the passed coords, so sorting them sorts them by rows.
+     *
+     * @param lowX the lowest x coord of the polygon.
+     * @param lowZ the lowest z coord of the polygon.
+     * @return the sorted blocks.
+     */
+    private long[] getEdgeBlocks(int lowX, int lowZ) {
+        int count = 0;
+        for (int index = 0; index < pointsX.length; ++index) {
+            int next = (index + 1) % pointsX.length;
+            count += Math.max(Math.abs(pointsX[next] - pointsX[index]), Math.abs(pointsZ[next] - pointsZ[index])) + 1;
+        }
+
+        long[] blocks = new long[count];
+        count = 0;
+        for (int index = 0; index < pointsX.length; ++index) {
+            int next = (index + 1) % pointsX.length;
+            int deltaX = pointsX[next] - pointsX[index], deltaZ = pointsZ[next] - pointsZ[index];
+            int steps = Math.max(Math.abs(deltaX), Math.abs(deltaZ));
+
+            for (int step = 0; step <= steps; ++step) {
+                int x = pointsX[index] + (steps > 0 ? Math.round((float) deltaX * step / steps) : 0);
+                int z = pointsZ[index] + (steps > 0 ? Math.round((float) deltaZ * step / steps) : 0);
+                blocks[count++] = (long) (z - lowZ) << 32 | (x - lowX);
+            }
+        }
+
+        Arrays.sort(blocks);
+        return blocks;
+    }
+
+    /**
+     * Checks if the passed part of the strip is a whole section, which is completely inside the polygon.
+     *
+     * @param strip the columns of the strip.
+     * @param width the width of the strip.
+     * @param lowX  the x coord of the first column of the strip.
+     * @param fromX the lowest x coord of the section.
+     * @param fromZ the lowest z coord of the section.
+     * @param toX   the highest x coord of the section.
+     * @param toZ   the highest z coord of the section.
+     * @return true, if the section is filled.
+     */
+    private static boolean isFilled(boolean[] strip, int width, int lowX, int fromX, int fromZ, int toX, int toZ) {
+        if (toX - fromX != 15 || toZ - fromZ != 15) {
+            return false;
+        }
+
+        for (int z = fromZ; z <= toZ; ++z) {
+            for (int x = fromX; x <= toX; ++x) {
+                if (!strip[(z & 15) * width + x - lowX]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the runs of columns inside the passed part of the strip to the bitmap.
+     *
+     * @param strip the columns of the strip.
+     * @param width the width of the strip.
+     * @param lowX  the x coord of the first column of the strip.
+     * @param fromX the lowest x coord of the section.
+     * @param fromZ the lowest z coord of the section.
+     * @param toX   the highest x coord of the section.
+     * @param toZ   the highest z coord of the section.
+     */
+    private void addRows(boolean[] strip, int width, int lowX, int fromX, int fromZ, int toX, int toZ) {
+        for (int z = fromZ; z <= toZ; ++z) {
+            int row = (z & 15) * width;
+            int runStart = Integer.MIN_VALUE;
+
+            for (int x = fromX; x <= toX + 1; ++x) {
+                boolean inside = x <= toX && strip[row + x - lowX];
+
+                if (inside && runStart == Integer.MIN_VALUE) {
+                    runStart = x;
+                } else if (!inside && runStart != Integer.MIN_VALUE) {
+                    addCuboid(runStart, lowy, z, x - 1, highy, z);
+                    runStart = Integer.MIN_VALUE;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder points = new StringBuilder();
+        for (int index = 0; index < pointsX.length; ++index) {
+            if (index > 0) {
+                points.append('/');
+            }
+            points.append(pointsX[index]).append(':').append(pointsZ[index]);
+        }
+
+        return "PolygonArea{" +
+            "lowy=" + lowy +
+            ", highy=" + highy +
+            ", points=" + points +
+            ", world=" + WorldRegistry.getName(worldId) +
+            '}';
+    }
+
+    /**
+     * Reads the world out of the parsed information.
+     *
+     * @param parser the parser containing the information.
+     * @return the id of the world.
+     * @throws SyntaxException thrown when the information isn't valid.
+     */
+    private static int parseWorld(PropertiesParser parser) throws SyntaxException {
+        if (!"PolygonArea".equals(parser.getType())) {
+            throw new SyntaxException("String isn't a valid description for a PolygonArea!");
+        }
+
+        String worldName = parser.getString("world");
+        if (worldName != null) {
+            return WorldRegistry.getId(worldName);
+        } else {
+            throw new SyntaxException("No world property found!");
+        }
+    }
+
+    /**
+     * Reads the coords of the points out of the parsed information. The points are stored like "x:z/x:z/x:z".
+     *
+     * @param parser the parser containing the information.
+     * @param axis   0 for the x coords, 1 for the z coords.
+     * @return the coords of the points.
+     * @throws SyntaxException thrown when the information isn't valid.
+     */
+    private static int[] parsePoints(PropertiesParser parser, int axis) throws SyntaxException {
+        String pointsString = parser.getString("points");
+        if (pointsString == null) {
+            throw new SyntaxException("No points property found!");
+        }
+
+        String[] points = pointsString.split("/");
+        if (points.length < 3) {
+            throw new SyntaxException("A polygon needs at least three points!");
+        }
+
+        int[] coords = new int[points.length];
+        for (int index = 0; index < points.length; ++index) {
+            String[] coordStrings = points[index].split(":");
+            if (coordStrings.length != 2) {
+                throw new SyntaxException(String.format("Invalid point '%s'!", points[index]));
+            }
+            coords[index] = Integer.parseInt(coordStrings[axis].trim());
+        }
+        return coords;
+    }
+
+    /**
+     * @param values the values.
+     * @return the smallest of the passed values.
+     */
+    private static int min(int[] values) {
+        int min = Integer.MAX_VALUE;
+        for (int value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    /**
+     * @param values the values.
+     * @return the largest of the passed values.
+     */
+    private static int max(int[] values) {
+        int max = Integer.MIN_VALUE;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+}
@@ -20,10 +20,14 @@ package at.co.hohl.easytravel.ports;
 
 import at.co.hohl.easytravel.TravelException;
 import at.co.hohl.easytravel.TravelPlugin;
+import at.co.hohl.easytravel.ports.index.AreaSnapshot;
+import at.co.hohl.easytravel.ports.index.PortTable;
 import org.bukkit.Location;
 import org.bukkit.Server;
+import org.bukkit.World;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Interface for the TravelPortContainer.
@@ -58,16 +62,16 @@ public interface TravelPortContainer {
     TravelPort get(Integer id) throws TravelPortNotFound;
 
     /**
-     * @return list of TravelPorts.
+     * @return unmodifiable snapshot of the TravelPorts, which doesn't change when TravelPorts get added or removed.
      */
     Collection<TravelPort> getAll();
 
     /**
-     * Searches a TravelPort.
+     * Searches a TravelPort. If the keyword isn't an id, the TravelPort which name matches the keyword best is used.
      *
      * @param keyword could be a part of the name or the id.
      * @return the founded TravelPort.
-     * @throws TravelPortNotFound thrown when there is no match for the id.
+     * @throws TravelPortNotFound thrown when there is no match, or several names match equally well.
      */
     TravelPort search(String keyword) throws TravelPortNotFound;
 
@@ -79,6 +83,48 @@ public interface TravelPortContainer {
      */
     Collection<TravelPort> search(Location location);
 
+    /**
+     * Searches the TravelPorts containing the passed block and adds them to the passed collection. Other than
+     * search(Location), no objects get allocated, as long as the collection has enough capacity. So the collection
+     * could get reused for every lookup.
+     *
+     * @param worldId the id of the world of the block, assigned by the WorldRegistry.
+     * @param x       the x coord of the block.
+     * @param y       the y coord of the block.
+     * @param z       the z coord of the block.
+     * @param result  collection which receives the TravelPorts containing the block.
+     */
+    void search(int worldId, int x, int y, int z, Collection<TravelPort> result);
+
+    /**
+     * Searches the TravelPorts which could contain blocks of the passed chunk.
+     *
+     * @param world  the id of the world.
+     * @param chunkX the x coord of the chunk.
+     * @param chunkZ the z coord of the chunk.
+     * @return the TravelPorts which bounding boxes overlap the chunk.
+     */
+    TravelPort[] getPortsInChunk(int world, int chunkX, int chunkZ);
+
+    /**
+     * Calculates a lower bound of the distance between the passed location and the nearest TravelPort.
+     *
+     * @param location    the location to measure from.
+     * @param maxDistance the maximum distance to look for TravelPorts.
+     * @return the distance in blocks, or maxDistance if there is no TravelPort nearer.
+     */
+    double getDistanceToNearestPort(Location location, double maxDistance);
+
+    /**
+     * @return immutable snapshot of the areas of the TravelPorts, which could get read from any thread.
+     */
+    AreaSnapshot getAreaSnapshot();
+
+    /**
+     * @return immutable snapshot of the TravelPorts mapped by their ids, which could get read from any thread.
+     */
+    PortTable getPortTable();
+
     /**
      * Searches the TravelPorts.
      *
@@ -87,6 +133,17 @@ public interface TravelPortContainer {
      */
     Collection<TravelPort> searchAll(String keyword);
 
+    /**
+     * Searches the TravelPorts, which names match the keyword best. Exact matches come first, followed by names
+     * starting with the keyword and names containing it. Names with a few typos only get found, if no name contains
+     * the keyword.
+     *
+     * @param keyword    the keyword to search for.
+     * @param maxResults the maximum number of results.
+     * @return the found TravelPorts, sorted from the best to the worst match.
+     */
+    List<TravelPort> searchRanked(String keyword, int maxResults);
+
     /**
      * Adds the passed travel port to the port list.
      *
@@ -101,6 +158,21 @@ public interface TravelPortContainer {
      */
     void remove(TravelPort port);
 
+    /**
+     * Called by the TravelPorts after their area got changed, so the container could update its indexes.
+     *
+     * @param port the port which area got changed.
+     */
+    void onAreaChanged(TravelPort port);
+
+    /**
+     * Called by the TravelPorts after any of their other properties got changed, so the container knows which
+     * TravelPorts need to get saved.
+     *
+     * @param port the port which got changed.
+     */
+    void onPortChanged(TravelPort port);
+
     /**
      * Links the passed TravelPorts.
      *
@@ -125,6 +197,63 @@ public interface TravelPortContainer {
      */
     int size();
 
+    /**
+     * @return counter which gets increased every time TravelPorts get added, removed or their areas get changed.
+     */
+    int getModificationCount();
+
+    /**
+     * Loads the TravelPorts.
+     */
+    void load();
+
+    /**
+     * Saves the changed TravelPorts in the background.
+     */
+    void save();
+
+    /**
+     * Saves the changed TravelPorts on the calling thread. Used when the plugin gets disabled, because no tasks could
+     * get scheduled then.
+     */
+    void saveNow();
+
+    /**
+     * Writes the changes since the last call, so they survive a crash. Called periodically.
+     */
+    void flushChanges();
+
+    /**
+     * Checks if the stored TravelPorts got changed by another program, and applies the changed ones. Called
+     * periodically, when watching is enabled.
+     */
+    void checkForChanges();
+
+    /**
+     * Writes the remaining changes and waits until all saves got written.
+     */
+    void flush();
+
+    /**
+     * Writes the remaining changes and releases the resources of the container. The container mustn't get used
+     * afterwards.
+     */
+    void close();
+
+    /**
+     * Called after a world got loaded.
+     *
+     * @param world the loaded world.
+     */
+    void onWorldLoaded(World world);
+
+    /**
+     * Called before a world gets unloaded.
+     *
+     * @param world the world to unload.
+     */
+    void onWorldUnloaded(World world);
+
     /**
      * Exception for invalid links.
      */
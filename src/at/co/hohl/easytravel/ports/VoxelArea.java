@@ -0,0 +1,300 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.ports;
+
+import at.co.hohl.utils.storage.SyntaxException;
+import org.bukkit.Location;
+
+import java.util.Arrays;
+
+/**
+ * Area of any shape, which gets compiled into a bitmap of blocks when created. The bitmap is split into sections of
+ * 16x16x16 blocks, which are stored in an open addressing hash table. So checking if a block is inside the area is
+ * O(1), no matter how complex the shape is.
+ *
+ * @author Michael Hohl
+ */
+public abstract class VoxelArea implements Area {
+    /**
+     * Maximum width and length of an area in blocks. Larger areas get rejected, so compiling them can't use up the
+     * whole memory of the server.
+     */
+    public static final int MAX_SIZE = 2048;
+
+    /**
+     * Number of longs needed for the bitmap of a section.
+     */
+    private static final int SECTION_WORDS = 16 * 16 * 16 / 64;
+
+    /**
+     * Key used for marking empty slots of the hash table.
+     */
+    private static final long EMPTY_KEY = Long.MIN_VALUE;
+
+    /**
+     * Bitmap shared by all sections, which are completely inside the area.
+     */
+    private static final long[] FULL_SECTION = new long[SECTION_WORDS];
+
+    static {
+        Arrays.fill(FULL_SECTION, -1L);
+    }
+
+    /**
+     * Id of the world of the area, assigned by the WorldRegistry.
+     */
+    protected final int worldId;
+
+    /**
+     * The smallest box which contains the whole area.
+     */
+    private final BoundingBox boundingBox;
+
+    /**
+     * Keys of the sections. Empty slots contain EMPTY_KEY.
+     */
+    private long[] sectionKeys;
+
+    /**
+     * Bitmaps of the sections, in the same order as the keys.
+     */
+    private long[][] sectionBitmaps;
+
+    /**
+     * Number of sections stored inside the table.
+     */
+    private int sectionCount;
+
+    /**
+     * Creates a new empty VoxelArea. The blocks get added by the constructors of the sub classes.
+     *
+     * @param worldId the id of the world in which the area is inside.
+     * @param lowX    the lowest x coord of the area.
+     * @param lowY    the lowest y coord of the area.
+     * @param lowZ    the lowest z coord of the area.
+     * @param highX   the highest x coord of the area.
+     * @param highY   the highest y coord of the area.
+     * @param highZ   the highest z coord of the area.
+     * @throws SyntaxException thrown when the area is larger than MAX_SIZE.
+     */
+    protected VoxelArea(int worldId, int lowX, int lowY, int lowZ, int highX, int highY, int highZ)
+            throws SyntaxException {
+        if ((long) highX - lowX >= MAX_SIZE || (long) highZ - lowZ >= MAX_SIZE) {
+            throw new SyntaxException(String.format("An area could be at most %d blocks wide and long!", MAX_SIZE));
+        }
+
+        this.worldId = worldId;
+        this.boundingBox = new BoundingBox(worldId, lowX, lowY, lowZ, highX, highY, highZ);
+
+        sectionKeys = new long[16];
+        sectionBitmaps = new long[16][];
+        Arrays.fill(sectionKeys, EMPTY_KEY);
+    }
+
+    /**
+     * Checks if the passed location is inside the area.
+     *
+     * @param location the location to check.
+     * @return true, if the passed location is inside this area.
+     */
+    public boolean contains(final Location location) {
+        return contains(WorldRegistry.getId(location.getWorld()),
+            location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+
+    /**
+     * Checks if the passed block is inside the area.
+     *
+     * @param worldId the id of the world of the block, assigned by the WorldRegistry.
+     * @param x       the x coord of the block.
+     * @param y       the y coord of the block.
+     * @param z       the z coord of the block.
+     * @return true, if the passed block is inside this area.
+     */
+    public boolean contains(int worldId, int x, int y, int z) {
+        if (this.worldId != worldId
+            || x < boundingBox.getLowX() || x > boundingBox.getHighX()
+            || y < boundingBox.getLowY() || y > boundingBox.getHighY()
+            || z < boundingBox.getLowZ() || z > boundingBox.getHighZ()) {
+            return false;
+        }
+
+        long[] bitmap = getSection(toKey(x >> 4, y >> 4, z >> 4));
+        if (bitmap == null) {
+            return false;
+        }
+
+        int bit = toBit(x, y, z);
+        return (bitmap[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return the smallest box which contains the whole area.
+     */
+    public BoundingBox getBoundingBox() {
+        return boundingBox;
+    }
+
+    /**
+     * Adds all blocks of the passed cuboid to the area. Only used while compiling the shape.
+     *
+     * @param lowX  the lowest x coord.
+     * @param lowY  the lowest y coord.
+     * @param lowZ  the lowest z coord.
+     * @param highX the highest x coord.
+     * @param highY the highest y coord.
+     * @param highZ the highest z coord.
+     */
+    protected final void addCuboid(int lowX, int lowY, int lowZ, int highX, int highY, int highZ) {
+        for (int sectionX = lowX >> 4; sectionX <= highX >> 4; ++sectionX) {
+            for (int sectionZ = lowZ >> 4; sectionZ <= highZ >> 4; ++sectionZ) {
+                for (int sectionY = lowY >> 4; sectionY <= highY >> 4; ++sectionY) {
+                    int fromX = Math.max(lowX, sectionX << 4), toX = Math.min(highX, (sectionX << 4) + 15);
+                    int fromY = Math.max(lowY, sectionY << 4), toY = Math.min(highY, (sectionY << 4) + 15);
+                    int fromZ = Math.max(lowZ, sectionZ << 4), toZ = Math.min(highZ, (sectionZ << 4) + 15);
+                    long key = toKey(sectionX, sectionY, sectionZ);
+
+                    if (toX - fromX == 15 && toY - fromY == 15 && toZ - fromZ == 15) {
+                        putSection(key, FULL_SECTION);
+                    } else {
+                        long[] bitmap = getWritableSection(key);
+                        for (int y = fromY; y <= toY; ++y) {
+                            for (int z = fromZ; z <= toZ; ++z) {
+                                for (int x = fromX; x <= toX; ++x) {
+                                    int bit = toBit(x, y, z);
+                                    bitmap[bit >>> 6] |= 1L << bit;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the bitmap of the section with the passed key.
+     *
+     * @param key the key of the section.
+     * @return the bitmap, or null if no block of the section is inside the area.
+     */
+    private long[] getSection(long key) {
+        int mask = sectionKeys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (sectionKeys[slot] == key) {
+                return sectionBitmaps[slot];
+            } else if (sectionKeys[slot] == EMPTY_KEY) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns the bitmap of the section with the passed key, which could get modified. Creates the section if
+     * necessary.
+     *
+     * @param key the key of the section.
+     * @return the bitmap of the section.
+     */
+    private long[] getWritableSection(long key) {
+        long[] bitmap = getSection(key);
+
+        if (bitmap == null) {
+            bitmap = new long[SECTION_WORDS];
+            putSection(key, bitmap);
+        } else if (bitmap == FULL_SECTION) {
+            bitmap = FULL_SECTION.clone();
+            putSection(key, bitmap);
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Stores the bitmap of the section with the passed key.
+     *
+     * @param key    the key of the section.
+     * @param bitmap the bitmap of the section.
+     */
+    private void putSection(long key, long[] bitmap) {
+        int mask = sectionKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (sectionKeys[slot] != key && sectionKeys[slot] != EMPTY_KEY) {
+            slot = (slot + 1) & mask;
+        }
+
+        if (sectionKeys[slot] == EMPTY_KEY) {
+            sectionKeys[slot] = key;
+            ++sectionCount;
+        }
+        sectionBitmaps[slot] = bitmap;
+
+        // Keep the table at most half full.
+        if (sectionCount * 2 > sectionKeys.length) {
+            long[] oldKeys = sectionKeys;
+            long[][] oldBitmaps = sectionBitmaps;
+
+            sectionKeys = new long[oldKeys.length * 2];
+            sectionBitmaps = new long[oldKeys.length * 2][];
+            sectionCount = 0;
+            Arrays.fill(sectionKeys, EMPTY_KEY);
+
+            for (int index = 0; index < oldKeys.length; ++index) {
+                if (oldKeys[index] != EMPTY_KEY) {
+                    putSection(oldKeys[index], oldBitmaps[index]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the key of a section.
+     *
+     * @param sectionX the x coord of the section.
+     * @param sectionY the y coord of the section.
+     * @param sectionZ the z coord of the section.
+     * @return the key of the section.
+     */
+    private static long toKey(int sectionX, int sectionY, int sectionZ) {
+        return ((long) (sectionX & 0x3FFFFF) << 42) | ((long) (sectionZ & 0x3FFFFF) << 20) | (sectionY & 0xFFFFF);
+    }
+
+    /**
+     * Returns the index of the bit of the passed block inside the bitmap of its section.
+     *
+     * @param x the x coord of the block.
+     * @param y the y coord of the block.
+     * @param z the z coord of the block.
+     * @return the index of the bit.
+     */
+    private static int toBit(int x, int y, int z) {
+        return (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+    }
+
+    /**
+     * Spreads the bits of the passed key.
+     *
+     * @param key the key of the section.
+     * @return the hash of the key.
+     */
+    private static int hash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.ports;
+
+import org.bukkit.World;
+
+import java.util.*;
+
+/**
+ * Maps the worlds to small ids, so areas only need to compare integers instead of the names of the worlds. Ids are
+ * assigned by name (case insensitive) and stay the same as long as the plugin is running, even if a world gets
+ * unloaded and loaded again. A world which isn't loaded never matches any location, so the areas inside it get
+ * skipped as a whole.
+ * <p/>
+ * The registry is the only place which holds loaded worlds. Areas and destinations only store the ids and resolve the
+ * worlds when they need them, so they don't depend on the order in which the worlds get loaded and never keep an
+ * unloaded world in memory. The loaded worlds get replaced on every load and unload of a world, so looking them up
+ * needs no lock.
+ *
+ * @author Michael Hohl
+ */
+public final class WorldRegistry {
+    /**
+     * Id returned for unknown worlds. Never used by any area.
+     */
+    public static final int UNKNOWN_WORLD = -1;
+
+    /**
+     * Ids of the worlds, mapped by the lower case name of the world.
+     */
+    private static final Map<String, Integer> namedIds = new HashMap<String, Integer>();
+
+    /**
+     * Ids of the loaded worlds, mapped by the unique id of the world. Replaced instead of changed.
+     */
+    private static volatile Map<UUID, Integer> uniqueIds = new HashMap<UUID, Integer>();
+
+    /**
+     * Names of the worlds, indexed by the id.
+     */
+    private static final List<String> names = new ArrayList<String>();
+
+    /**
+     * Loaded worlds, indexed by the id. Null for worlds which aren't loaded. Replaced instead of changed.
+     */
+    private static volatile World[] worlds = new World[0];
+
+    /**
+     * Hidden constructor.
+     */
+    private WorldRegistry() {
+    }
+
+    /**
+     * Returns the id of the world with the passed name. Assigns a new id, if the world isn't known yet.
+     *
+     * @param name the name of the world.
+     * @return the id of the world.
+     */
+    public static synchronized int getId(String name) {
+        String key = name.toLowerCase();
+        Integer id = namedIds.get(key);
+
+        if (id == null) {
+            id = names.size();
+            namedIds.put(key, id);
+            names.add(name);
+
+            World[] newWorlds = new World[id + 1];
+            System.arraycopy(worlds, 0, newWorlds, 0, worlds.length);
+            worlds = newWorlds;
+        }
+
+        return id;
+    }
+
+    /**
+     * Returns the id of the passed world. Registers the world as loaded, if it isn't known yet.
+     *
+     * @param world the world.
+     * @return the id of the world.
+     */
+    public static int getId(World world) {
+        Integer id = uniqueIds.get(world.getUID());
+
+        if (id == null) {
+            synchronized (WorldRegistry.class) {
+                id = register(world);
+            }
+        }
+
+        return id;
+    }
+
+    /**
+     * Returns the id of the passed world, without assigning a new one.
+     *
+     * @param name the name of the world.
+     * @return the id of the world, or UNKNOWN_WORLD if there is no world with the passed name.
+     */
+    public static synchronized int findId(String name) {
+        Integer id = namedIds.get(name.toLowerCase());
+        return id != null ? id : UNKNOWN_WORLD;
+    }
+
+    /**
+     * @param id the id of the world.
+     * @return the name of the world with the passed id.
+     */
+    public static synchronized String getName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * @param id the id of the world.
+     * @return the world with the passed id, or null if the world isn't loaded.
+     */
+    public static World getWorld(int id) {
+        World[] loadedWorlds = worlds;
+        return id >= 0 && id < loadedWorlds.length ? loadedWorlds[id] : null;
+    }
+
+    /**
+     * @param id the id of the world.
+     * @return true, if the world with the passed id is loaded.
+     */
+    public static boolean isLoaded(int id) {
+        return getWorld(id) != null;
+    }
+
+    /**
+     * Registers all passed worlds as loaded. Called before loading the TravelPorts, so the areas get resolved to the
+     * ids of the loaded worlds.
+     *
+     * @param loadedWorlds the worlds which are loaded.
+     */
+    public static synchronized void resolve(Collection<World> loadedWorlds) {
+        for (World world : loadedWorlds) {
+            register(world);
+        }
+    }
+
+    /**
+     * Called when a world got loaded.
+     *
+     * @param world the loaded world.
+     */
+    public static synchronized void onWorldLoaded(World world) {
+        register(world);
+    }
+
+    /**
+     * Called when a world got unloaded.
+     *
+     * @param world the unloaded world.
+     */
+    public static synchronized void onWorldUnloaded(World world) {
+        Integer id = uniqueIds.get(world.getUID());
+
+        if (id != null) {
+            Map<UUID, Integer> newUniqueIds = new HashMap<UUID, Integer>(uniqueIds);
+            newUniqueIds.remove(world.getUID());
+            uniqueIds = newUniqueIds;
+
+            World[] newWorlds = worlds.clone();
+            newWorlds[id] = null;
+            worlds = newWorlds;
+        }
+    }
+
+    /**
+     * Registers the passed world as loaded. Needs to get called while holding the lock of the registry.
+     *
+     * @param world the world to register.
+     * @return the id of the world.
+     */
+    private static int register(World world) {
+        int id = getId(world.getName());
+
+        if (worlds[id] != world) {
+            Map<UUID, Integer> newUniqueIds = new HashMap<UUID, Integer>(uniqueIds);
+            newUniqueIds.put(world.getUID(), id);
+            uniqueIds = newUniqueIds;
+
+            World[] newWorlds = worlds.clone();
+            newWorlds[id] = world;
+            worlds = newWorlds;
+        }
+
+        return id;
+    }
+}
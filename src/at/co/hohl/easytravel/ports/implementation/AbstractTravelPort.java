@@ -20,8 +20,10 @@ package at.co.hohl.easytravel.ports.implementation;
 
 import at.co.hohl.easytravel.TravelPlugin;
 import at.co.hohl.easytravel.messages.Messages;
+import at.co.hohl.easytravel.ports.Destination;
 import at.co.hohl.easytravel.ports.TravelPort;
 import at.co.hohl.easytravel.ports.TravelPortContainer;
+import at.co.hohl.easytravel.ports.WorldRegistry;
 import at.co.hohl.utils.ChatHelper;
 import com.nijikokun.register.payment.Method;
 import org.bukkit.entity.Player;
@@ -65,14 +67,18 @@ public abstract class AbstractTravelPort implements TravelPort {
                 // Teleport all players.
                 for (Player player : players) {
                     TravelPort targetPort = getTarget();
+                    Destination destination = targetPort != null ? targetPort.getDestination() : null;
 
-                    if (targetPort != null) {
-                        targetPort.getDestination().teleport(player);
+                    if (targetPort == null) {
+                        ChatHelper.sendMessage(player, Messages.get("problem.miss-target"));
+                    } else if (destination == null || !WorldRegistry.isLoaded(destination.getWorldId())) {
+                        // Skip only this player, so the others still depart.
+                        ChatHelper.sendMessage(player, Messages.get("moderator.problem.world-not-loaded"));
+                    } else {
+                        destination.teleport(player);
 
                         onPlayerLeft(player);
                         targetPort.onPlayerArrived(player);
-                    } else {
-                        ChatHelper.sendMessage(player, Messages.get("problem.miss-target"));
                     }
                 }
             }
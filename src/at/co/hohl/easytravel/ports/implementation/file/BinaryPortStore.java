@@ -0,0 +1,438 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.ports.implementation.file;
+
+import at.co.hohl.easytravel.ports.*;
+import at.co.hohl.easytravel.ports.depart.DepartureHelper;
+import at.co.hohl.utils.StringHelper;
+import at.co.hohl.utils.storage.SyntaxException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Reads and writes TravelPorts in a compact binary format. Every TravelPort is stored as a record with fixed width,
+ * which contains the ids, bounds, coords and prices. Strings like names, owners and world names are stored only once
+ * in a string table and referenced by their index. So loading doesn't need to parse any text, except departures and
+ * areas which aren't cuboids.
+ * <p/>
+ * Layout: header (magic, version, sequence, number of records, number of strings), records, string table. Every
+ * string of the table is stored as its length in bytes followed by its UTF-8 bytes.
+ *
+ * @author Michael Hohl
+ */
+final class BinaryPortStore {
+    /**
+     * Magic number at the beginning of the file. ("ETPS")
+     */
+    private static final int MAGIC = 0x45545053;
+
+    /**
+     * Version of the format.
+     */
+    private static final int VERSION = 1;
+
+    // Sizes of the header and the records
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_SIZE = 104;
+
+    // Offsets of the fields inside of a record
+    private static final int OFFSET_ID = 0;
+    private static final int OFFSET_NAME = 4;
+    private static final int OFFSET_TARGET = 8;
+    private static final int OFFSET_OWNER = 12;
+    private static final int OFFSET_ALLOWED = 16;
+    private static final int OFFSET_PASSWORD = 20;
+    private static final int OFFSET_PRICE = 24;
+    private static final int OFFSET_AREA_TYPE = 32;
+    private static final int OFFSET_AREA = 36;
+    private static final int OFFSET_AREA_BOUNDS = 40;
+    private static final int OFFSET_DESTINATION_WORLD = 64;
+    private static final int OFFSET_DESTINATION = 68;
+    private static final int OFFSET_DEPARTURE = 100;
+
+    // Types of areas
+    private static final int AREA_NONE = 0;
+    private static final int AREA_CUBOID = 1;
+    private static final int AREA_SERIALIZED = 2;
+
+    /**
+     * Reference used for strings which are null, and for missing link targets.
+     */
+    private static final int NULL = -1;
+
+    /**
+     * Charset of the strings.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Encodes the passed TravelPorts.
+     *
+     * @param ports    the ports to encode.
+     * @param sequence the sequence number of the last record of the journal, which is contained by the ports.
+     * @return the content of the file.
+     */
+    static byte[] encode(Collection<TravelPort> ports, long sequence) {
+        StringTable strings = new StringTable();
+        ByteBuffer records = ByteBuffer.allocate(ports.size() * RECORD_SIZE);
+
+        int record = 0;
+        for (TravelPort port : ports) {
+            records.putInt(record + OFFSET_ID, port.getId());
+            records.putInt(record + OFFSET_NAME, strings.add(port.getName()));
+            records.putInt(record + OFFSET_TARGET, port.getTargetId() != null ? port.getTargetId() : NULL);
+            records.putInt(record + OFFSET_OWNER, strings.add(port.getOwner()));
+            records.putInt(record + OFFSET_ALLOWED,
+                port.isAllowedToEverybody() ? NULL : strings.add(StringHelper.encode(port.getAllowed())));
+            records.putInt(record + OFFSET_PASSWORD, strings.add(port.getPassword()));
+            records.putDouble(record + OFFSET_PRICE, port.getPrice());
+
+            Area area = port.getArea();
+            if (area instanceof CuboidArea) {
+                BoundingBox box = area.getBoundingBox();
+                records.putInt(record + OFFSET_AREA_TYPE, AREA_CUBOID);
+                records.putInt(record + OFFSET_AREA, strings.add(WorldRegistry.getName(box.getWorldId())));
+                records.putInt(record + OFFSET_AREA_BOUNDS, box.getLowX());
+                records.putInt(record + OFFSET_AREA_BOUNDS + 4, box.getLowY());
+                records.putInt(record + OFFSET_AREA_BOUNDS + 8, box.getLowZ());
+                records.putInt(record + OFFSET_AREA_BOUNDS + 12, box.getHighX());
+                records.putInt(record + OFFSET_AREA_BOUNDS + 16, box.getHighY());
+                records.putInt(record + OFFSET_AREA_BOUNDS + 20, box.getHighZ());
+            } else if (area != null) {
+                records.putInt(record + OFFSET_AREA_TYPE, AREA_SERIALIZED);
+                records.putInt(record + OFFSET_AREA, strings.add(area.toString()));
+            } else {
+                records.putInt(record + OFFSET_AREA_TYPE, AREA_NONE);
+                records.putInt(record + OFFSET_AREA, NULL);
+            }
+
+            Destination destination = port.getDestination();
+            if (destination != null) {
+                records.putInt(record + OFFSET_DESTINATION_WORLD,
+                    strings.add(WorldRegistry.getName(destination.getWorldId())));
+                records.putDouble(record + OFFSET_DESTINATION, destination.getX());
+                records.putDouble(record + OFFSET_DESTINATION + 8, destination.getY());
+                records.putDouble(record + OFFSET_DESTINATION + 16, destination.getZ());
+                records.putFloat(record + OFFSET_DESTINATION + 24, destination.getPitch());
+                records.putFloat(record + OFFSET_DESTINATION + 28, destination.getYaw());
+            } else {
+                records.putInt(record + OFFSET_DESTINATION_WORLD, NULL);
+            }
+
+            records.putInt(record + OFFSET_DEPARTURE,
+                strings.add(port.getDeparture() != null ? port.getDeparture().toString() : null));
+
+            record += RECORD_SIZE;
+        }
+
+        byte[] data = new byte[HEADER_SIZE + records.capacity() + strings.getSize()];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(sequence);
+        buffer.putInt(ports.size());
+        buffer.putInt(strings.getCount());
+        buffer.put(records.array());
+        strings.writeTo(buffer);
+
+        return data;
+    }
+
+    /**
+     * Loads the TravelPorts out of the passed file. The whole file gets read into a single buffer at once, and the
+     * records get read out of it by their offsets. Corrupt records get skipped.
+     * <p/>
+     * The file doesn't get mapped into the memory. A mapping is only released, when its buffer got garbage collected,
+     * and as long as a file is mapped, Windows doesn't allow to replace or delete it. This happens on every save.
+     *
+     * @param file      the file to load.
+     * @param container the container which receives the loaded ports later.
+     * @param result    collection which receives the loaded ports.
+     * @param logger    logger used for outputting corrupt records.
+     * @return the sequence number of the last record of the journal, which is contained by the file.
+     * @throws IOException thrown when the file couldn't get read or isn't a valid TravelPorts file.
+     */
+    static long load(File file, TravelPortContainer container, Collection<TravelPort> result, Logger logger)
+            throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel channel = input.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(String.format("'%s' is too large!", file.getPath()));
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read until the buffer is full.
+            }
+            if (buffer.hasRemaining()) {
+                throw new IOException(String.format("'%s' got truncated while reading!", file.getPath()));
+            }
+
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException(String.format("'%s' isn't a TravelPorts file!", file.getPath()));
+            } else if (buffer.getInt(4) != VERSION) {
+                throw new IOException(
+                    String.format("Unsupported version %d of '%s'!", buffer.getInt(4), file.getPath()));
+            }
+
+            long sequence = buffer.getLong(8);
+            int recordCount = buffer.getInt(16);
+            int stringCount = buffer.getInt(20);
+            long stringTableOffset = HEADER_SIZE + (long) recordCount * RECORD_SIZE;
+            if (recordCount < 0 || stringCount < 0 || stringTableOffset > buffer.capacity()) {
+                throw new IOException(String.format("'%s' is truncated!", file.getPath()));
+            }
+
+            String[] strings = readStrings(buffer, (int) stringTableOffset, stringCount);
+            int[] worldIds = new int[stringCount];
+            Arrays.fill(worldIds, WorldRegistry.UNKNOWN_WORLD);
+
+            for (int index = 0; index < recordCount; ++index) {
+                try {
+                    result.add(readRecord(buffer, HEADER_SIZE + index * RECORD_SIZE, container, strings, worldIds));
+                } catch (SyntaxException exception) {
+                    logger.warning(String.format("Corrupt TravelPort record %d!", index));
+                    logger.info("Exception: " + exception.getMessage());
+                }
+            }
+
+            return sequence;
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Reads the string table.
+     *
+     * @param buffer the buffer to read from.
+     * @param offset the offset of the string table.
+     * @param count  the number of strings.
+     * @return the read strings.
+     * @throws IOException thrown when the table is truncated.
+     */
+    private static String[] readStrings(ByteBuffer buffer, int offset, int count) throws IOException {
+        String[] strings = new String[count];
+        byte[] bytes = new byte[256];
+
+        int position = offset;
+        for (int index = 0; index < count; ++index) {
+            if (position + 4 > buffer.capacity()) {
+                throw new IOException("String table is truncated!");
+            }
+            int length = buffer.getInt(position);
+            position += 4;
+            if (length < 0 || length > buffer.capacity() - position) {
+                throw new IOException("String table is truncated!");
+            }
+
+            if (length > bytes.length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            buffer.position(position);
+            buffer.get(bytes, 0, length);
+            strings[index] = new String(bytes, 0, length, UTF8);
+            position += length;
+        }
+
+        return strings;
+    }
+
+    /**
+     * Reads a single TravelPort.
+     *
+     * @param buffer    the buffer to read from.
+     * @param record    the offset of the record.
+     * @param container the container of the TravelPort.
+     * @param strings   the string table.
+     * @param worldIds  the ids of the worlds, mapped by the indexes of their names. Filled when used first.
+     * @return the read TravelPort.
+     * @throws SyntaxException thrown when the record contains invalid references.
+     */
+    private static TravelPort readRecord(ByteBuffer buffer, int record, TravelPortContainer container,
+                                         String[] strings, int[] worldIds) throws SyntaxException {
+        TravelPort port = new FlatFileTravelPort(container, buffer.getInt(record + OFFSET_ID));
+        port.setName(getString(strings, buffer.getInt(record + OFFSET_NAME)));
+        port.setPrice(buffer.getDouble(record + OFFSET_PRICE));
+        int target = buffer.getInt(record + OFFSET_TARGET);
+        port.setTargetId(target != NULL ? Integer.valueOf(target) : null);
+        port.setPassword(getString(strings, buffer.getInt(record + OFFSET_PASSWORD)));
+        port.setOwner(getString(strings, buffer.getInt(record + OFFSET_OWNER)));
+        port.setAllowed(StringHelper.decode(getString(strings, buffer.getInt(record + OFFSET_ALLOWED))));
+
+        String departure = getString(strings, buffer.getInt(record + OFFSET_DEPARTURE));
+        if (departure != null) {
+            port.setDeparture(DepartureHelper.load(port, departure));
+        } else {
+            throw new SyntaxException("No departure found!");
+        }
+
+        switch (buffer.getInt(record + OFFSET_AREA_TYPE)) {
+            case AREA_NONE:
+                break;
+            case AREA_CUBOID:
+                int areaWorld = getWorldId(strings, worldIds, buffer.getInt(record + OFFSET_AREA));
+                port.setArea(new CuboidArea(areaWorld,
+                    buffer.getInt(record + OFFSET_AREA_BOUNDS), buffer.getInt(record + OFFSET_AREA_BOUNDS + 12),
+                    buffer.getInt(record + OFFSET_AREA_BOUNDS + 4), buffer.getInt(record + OFFSET_AREA_BOUNDS + 16),
+                    buffer.getInt(record + OFFSET_AREA_BOUNDS + 8), buffer.getInt(record + OFFSET_AREA_BOUNDS + 20)));
+                break;
+            case AREA_SERIALIZED:
+                port.setArea(AreaHelper.load(getString(strings, buffer.getInt(record + OFFSET_AREA))));
+                break;
+            default:
+                throw new SyntaxException("Unknown type of area!");
+        }
+
+        int destinationWorld = buffer.getInt(record + OFFSET_DESTINATION_WORLD);
+        if (destinationWorld != NULL) {
+            port.setDestination(new Destination(getWorldId(strings, worldIds, destinationWorld),
+                buffer.getDouble(record + OFFSET_DESTINATION),
+                buffer.getDouble(record + OFFSET_DESTINATION + 8),
+                buffer.getDouble(record + OFFSET_DESTINATION + 16),
+                buffer.getFloat(record + OFFSET_DESTINATION + 28),
+                buffer.getFloat(record + OFFSET_DESTINATION + 24)));
+        }
+
+        return port;
+    }
+
+    /**
+     * Gets the string with the passed reference.
+     *
+     * @param strings   the string table.
+     * @param reference the index of the string, or NULL.
+     * @return the string, or null if the reference is NULL.
+     * @throws SyntaxException thrown when the reference is invalid.
+     */
+    private static String getString(String[] strings, int reference) throws SyntaxException {
+        if (reference == NULL) {
+            return null;
+        } else if (reference < 0 || reference >= strings.length) {
+            throw new SyntaxException("Invalid string reference!");
+        } else {
+            return strings[reference];
+        }
+    }
+
+    /**
+     * Gets the id of the world, which name has the passed reference.
+     *
+     * @param strings   the string table.
+     * @param worldIds  the ids of the worlds, mapped by the indexes of their names.
+     * @param reference the index of the name of the world.
+     * @return the id of the world, assigned by the WorldRegistry.
+     * @throws SyntaxException thrown when the reference is invalid.
+     */
+    private static int getWorldId(String[] strings, int[] worldIds, int reference) throws SyntaxException {
+        String worldName = getString(strings, reference);
+
+        if (worldName == null) {
+            throw new SyntaxException("No world found!");
+        } else if (worldIds[reference] == WorldRegistry.UNKNOWN_WORLD) {
+            worldIds[reference] = WorldRegistry.getId(worldName);
+        }
+
+        return worldIds[reference];
+    }
+
+    /**
+     * Table which stores every string only once.
+     */
+    private static final class StringTable {
+        /**
+         * Indexes of the strings.
+         */
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+        /**
+         * The encoded strings.
+         */
+        private final List<byte[]> strings = new ArrayList<byte[]>();
+
+        /**
+         * Size of the encoded table in bytes.
+         */
+        private int size;
+
+        /**
+         * Adds the passed string, if it isn't contained yet.
+         *
+         * @param string the string to add.
+         * @return the index of the string, or NULL if the string is null.
+         */
+        int add(String string) {
+            if (string == null) {
+                return NULL;
+            }
+
+            Integer index = indexes.get(string);
+            if (index == null) {
+                byte[] bytes = string.getBytes(UTF8);
+                index = strings.size();
+                indexes.put(string, index);
+                strings.add(bytes);
+                size += 4 + bytes.length;
+            }
+
+            return index;
+        }
+
+        /**
+         * @return number of strings.
+         */
+        int getCount() {
+            return strings.size();
+        }
+
+        /**
+         * @return size of the encoded table in bytes.
+         */
+        int getSize() {
+            return size;
+        }
+
+        /**
+         * Writes the table into the passed buffer.
+         *
+         * @param buffer the buffer to write to.
+         */
+        void writeTo(ByteBuffer buffer) {
+            for (byte[] bytes : strings) {
+                buffer.putInt(bytes.length);
+                buffer.put(bytes);
+            }
+        }
+    }
+
+    /**
+     * No need of creating an instance of that!
+     */
+    private BinaryPortStore() {
+    }
+}
@@ -105,6 +105,7 @@ public class FlatFileTravelPort extends AbstractTravelPort {
     @Override
     public void setAllowed(List<String> allowed) {
         this.allowed = allowed;
+        container.onPortChanged(this);
     }
 
     /**
@@ -145,6 +146,7 @@ public class FlatFileTravelPort extends AbstractTravelPort {
     @Override
     public void setAllowedToEverybody() {
         allowed.clear();
+        container.onPortChanged(this);
     }
 
     /**
@@ -155,6 +157,7 @@ public class FlatFileTravelPort extends AbstractTravelPort {
     @Override
     public void addAllowed(String allowed) {
         this.allowed.add(allowed.trim());
+        container.onPortChanged(this);
     }
 
     /**
@@ -165,6 +168,7 @@ public class FlatFileTravelPort extends AbstractTravelPort {
     @Override
     public void removeAllowed(String allowed) {
         this.allowed.remove(allowed);
+        container.onPortChanged(this);
     }
 
     /**
@@ -183,6 +187,7 @@ public class FlatFileTravelPort extends AbstractTravelPort {
     @Override
     public void setDeparture(Departure departure) {
         this.departure = departure;
+        container.onPortChanged(this);
     }
 
     /**
@@ -209,6 +214,7 @@ public class FlatFileTravelPort extends AbstractTravelPort {
     @Override
     public void setArea(Area area) {
         this.area = area;
+        container.onAreaChanged(this);
     }
 
     /**
@@ -227,6 +233,7 @@ public class FlatFileTravelPort extends AbstractTravelPort {
     @Override
     public void setDestination(Destination destination) {
         this.destination = destination;
+        container.onPortChanged(this);
     }
 
     /**
@@ -245,6 +252,7 @@ public class FlatFileTravelPort extends AbstractTravelPort {
     @Override
     public final void setName(String name) {
         this.name = name;
+        container.onPortChanged(this);
     }
 
     /**
@@ -275,6 +283,7 @@ public class FlatFileTravelPort extends AbstractTravelPort {
     @Override
     public final void setTargetId(Integer targetId) {
         this.targetId = targetId;
+        container.onPortChanged(this);
     }
 
     /**
@@ -293,6 +302,7 @@ public class FlatFileTravelPort extends AbstractTravelPort {
     @Override
     public final void setPrice(double price) {
         this.price = price;
+        container.onPortChanged(this);
     }
 
     /**
@@ -317,6 +327,7 @@ public class FlatFileTravelPort extends AbstractTravelPort {
     @Override
     public final void setPassword(String password) {
         this.password = password;
+        container.onPortChanged(this);
     }
 
     /**
@@ -343,5 +354,6 @@ public class FlatFileTravelPort extends AbstractTravelPort {
     @Override
     public void setOwner(String owner) {
         this.owner = owner;
+        container.onPortChanged(this);
     }
 }
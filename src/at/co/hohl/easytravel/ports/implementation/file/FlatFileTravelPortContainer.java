@@ -21,11 +21,20 @@ package at.co.hohl.easytravel.ports.implementation.file;
 import at.co.hohl.easytravel.TravelPlugin;
 import at.co.hohl.easytravel.ports.*;
 import at.co.hohl.easytravel.ports.depart.DepartureHelper;
+import at.co.hohl.easytravel.ports.index.AreaSnapshot;
+import at.co.hohl.easytravel.ports.index.ChunkSpatialIndex;
+import at.co.hohl.easytravel.ports.index.IdAllocator;
+import at.co.hohl.easytravel.ports.index.NameIndex;
+import at.co.hohl.easytravel.ports.index.NameMatch;
+import at.co.hohl.easytravel.ports.index.PortTable;
+import at.co.hohl.easytravel.ports.index.SpatialIndex;
+import at.co.hohl.easytravel.ports.index.SpatialIndexHelper;
 import at.co.hohl.utils.StringHelper;
 import at.co.hohl.utils.storage.CsvLineParser;
 import at.co.hohl.utils.storage.SyntaxException;
 import org.bukkit.Location;
 import org.bukkit.Server;
+import org.bukkit.World;
 
 import java.io.*;
 import java.util.*;
@@ -50,6 +59,18 @@ public class FlatFileTravelPortContainer implements TravelPortContainer {
     private static final int INDEX_DEPARTURE = 9;
     private static final int CSV_COLUMNS = 10;
 
+    // Constants for the journal
+    private static final String SEQUENCE_HEADER = "#sequence=";
+    private static final String RECORD_PUT = "P";
+    private static final String RECORD_REMOVE = "R";
+    private static final int DEFAULT_JOURNAL_COMPACTION_SIZE = 65536;
+
+    // Size of the buffer used for reading the CSV file
+    private static final int LOAD_BUFFER_SIZE = 65536;
+
+    // Number of recent searches, which results are kept
+    private static final int SEARCH_CACHE_SIZE = 64;
+
     /**
      * The plugin which holds this instance.
      */
@@ -60,21 +81,160 @@ public class FlatFileTravelPortContainer implements TravelPortContainer {
      */
     private final TravelPlugin plugin;
 
+    /**
+     * Container which gets assigned to the TravelPorts. Differs from this container, if this is a shard of a
+     * ShardedTravelPortContainer.
+     */
+    private final TravelPortContainer owner;
+
     /**
      * The file used for storing the TravelPorts.
      */
     private final File csvFile;
 
+    /**
+     * The file used for storing the TravelPorts in the binary format.
+     */
+    private final File binaryFile;
+
+    /**
+     * Flag if the TravelPorts get stored in the binary format, instead of the CSV file.
+     */
+    private final boolean binaryStorage;
+
+    /**
+     * The journal which contains the changes since the last save.
+     */
+    private final File journalFile;
+
+    /**
+     * Flag if changes get appended to the journal.
+     */
+    private final boolean journalEnabled;
+
+    /**
+     * Writes the TravelPorts into the CSV or binary file on another thread.
+     */
+    private final WriteBehindFile fileWriter;
+
+    /**
+     * Applies the changes of the CSV file, which got made by other programs.
+     */
+    private final PortFileWatcher watcher;
+
+    /**
+     * Size of the journal in bytes, after which the TravelPorts get saved and the journal gets cleared.
+     */
+    private final long journalCompactionSize;
+
+    /**
+     * Number of threads used for parsing the CSV file.
+     */
+    private final int loadThreads;
+
     /**
      * Logger used for outputting debug information.
      */
     private final Logger logger;
 
     /**
-     * Contains all travel ports.
+     * Contains all travel ports. Only used by the thread which changes the TravelPorts.
      */
     private final Map<Integer, TravelPort> travelPorts = new HashMap<Integer, TravelPort>();
 
+    /**
+     * Snapshot of the travel ports, which gets replaced every time TravelPorts get added or removed. Read by the
+     * other threads without locking.
+     */
+    private volatile PortTable portTable = PortTable.EMPTY;
+
+    /**
+     * Serialized lines of the TravelPorts, sorted by the ids. Used for saving, so only the lines of changed
+     * TravelPorts need to get created again.
+     */
+    private final SortedMap<Integer, String> savedLines = new TreeMap<Integer, String>();
+
+    /**
+     * Ids of the TravelPorts, which got changed since their lines got created.
+     */
+    private final Set<Integer> dirtyPorts = new HashSet<Integer>();
+
+    /**
+     * Flag if the TravelPorts got changed since the last save.
+     */
+    private boolean dirty;
+
+    /**
+     * Ids of the TravelPorts, which got changed or removed since the last records got appended to the journal.
+     */
+    private final Set<Integer> journalPorts = new HashSet<Integer>();
+
+    /**
+     * Ids of the TravelPorts, which got removed since the last save. They could still be contained by the file.
+     */
+    private final Set<Integer> removedPorts = new HashSet<Integer>();
+
+    /**
+     * Counter which gets increased every time a snapshot for saving gets created, or the TravelPorts get loaded.
+     */
+    private int saveGeneration;
+
+    /**
+     * Sequence number of the last record of the journal. The saved file contains the sequence number at the time it
+     * got saved, so older records get skipped when replaying the journal.
+     */
+    private long sequence;
+
+    /**
+     * Estimated size of the journal in bytes.
+     */
+    private long journalSize;
+
+    /**
+     * Index used for searching TravelPorts by location.
+     */
+    private final SpatialIndex spatialIndex;
+
+    /**
+     * Index used for searching TravelPorts by name.
+     */
+    private final NameIndex nameIndex = new NameIndex();
+
+    /**
+     * Hands out the ids of created TravelPorts.
+     */
+    private final IdAllocator idAllocator;
+
+    /**
+     * Counter which gets increased on every change of the TravelPorts, their areas or their names.
+     */
+    private int modificationCount;
+
+    /**
+     * Last created snapshot of the areas.
+     */
+    private AreaSnapshot areaSnapshot;
+
+    /**
+     * Modification count, when the last snapshot of the areas got created.
+     */
+    private int areaSnapshotModificationCount;
+
+    /**
+     * Results of the recent ranked searches, mapped by the maximum number of results and the normalized keyword.
+     */
+    private final Map<String, List<NameMatch>> searchCache = new LinkedHashMap<String, List<NameMatch>>(16, 0.75f,
+        true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<NameMatch>> eldest) {
+            return size() > SEARCH_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Modification count, when the cached search results got created.
+     */
+    private int searchCacheModificationCount;
 
     /**
      * Creates a new container for TravelPorts.
@@ -83,10 +243,42 @@ public class FlatFileTravelPortContainer implements TravelPortContainer {
      * @param csvFile the fle used for storing the TravelPorts.
      */
     public FlatFileTravelPortContainer(TravelPlugin plugin, File csvFile) {
+        this(plugin, csvFile, null);
+    }
+
+    /**
+     * Creates a new container for TravelPorts, which is a shard of another container.
+     *
+     * @param plugin  the plugin which holds the instance.
+     * @param csvFile the fle used for storing the TravelPorts.
+     * @param owner   the container which gets assigned to the TravelPorts, or null to use this container.
+     */
+    FlatFileTravelPortContainer(TravelPlugin plugin, File csvFile, TravelPortContainer owner) {
+        String baseName = csvFile.getName().replaceFirst("\\.csv$", "");
         this.csvFile = csvFile;
+        this.binaryFile = new File(csvFile.getParentFile(), baseName + ".dat");
+        this.binaryStorage = "binary".equalsIgnoreCase(plugin.getConfig().getString("storage-format", "csv"));
+        this.journalFile = new File(csvFile.getParentFile(), baseName + ".journal");
+        this.journalEnabled = plugin.getConfig().getBoolean("journal", true);
+        this.fileWriter = new WriteBehindFile(plugin, binaryStorage ? binaryFile : csvFile, journalFile);
+        this.watcher = new PortFileWatcher(this, plugin, csvFile);
+        if (!binaryStorage) {
+            this.fileWriter.setWriteListener(watcher);
+        }
+        this.journalCompactionSize =
+            plugin.getConfig().getInt("journal-compaction-size", DEFAULT_JOURNAL_COMPACTION_SIZE);
+        int configuredLoadThreads = plugin.getConfig().getInt("load-threads", 0);
+        this.loadThreads =
+            configuredLoadThreads > 0 ? configuredLoadThreads : Runtime.getRuntime().availableProcessors();
         this.logger = plugin.getLogger();
         this.server = plugin.getServer();
         this.plugin = plugin;
+        this.owner = owner != null ? owner : this;
+
+        this.spatialIndex = SpatialIndexHelper.create(plugin.getConfig().getString("spatial-index", "chunk"),
+            plugin.getConfig().getInt("index-cell-size", ChunkSpatialIndex.DEFAULT_CELL_SIZE));
+        this.idAllocator =
+            new IdAllocator(plugin.getConfig().getInt("id-quarantine", IdAllocator.DEFAULT_QUARANTINE) * 1000L);
     }
 
     /**
@@ -97,41 +289,38 @@ public class FlatFileTravelPortContainer implements TravelPortContainer {
      * @throws TravelPortNotFound thrown when there isn't any port with the passed id.
      */
     public TravelPort get(Integer id) throws TravelPortNotFound {
-        if (id != null && travelPorts.containsKey(id)) {
-            return travelPorts.get(id);
+        TravelPort port = portTable.get(id);
+
+        if (port != null) {
+            return port;
         } else {
             throw new TravelPortNotFound();
         }
     }
 
     /**
-     * @return list of TravelPorts.
+     * @return unmodifiable snapshot of the TravelPorts.
      */
     public Collection<TravelPort> getAll() {
-        return travelPorts.values();
+        return portTable.getAll();
     }
 
     /**
-     * Searches a TravelPort.
+     * Searches a TravelPort. If the id isn't a number, the TravelPort which name matches best is used.
      *
      * @param id could be a part of the name or the id.
      * @return the founded TravelPort.
-     * @throws TravelPortNotFound thrown when there is no match for the id.
+     * @throws TravelPortNotFound thrown when there is no match, or several names match equally well.
      */
     public TravelPort search(String id) throws TravelPortNotFound {
         try {
             Integer portId = Integer.valueOf(id);
             return get(portId);
         } catch (Exception exception) {
-            List<TravelPort> foundedResults = new LinkedList<TravelPort>();
-            for (TravelPort port : travelPorts.values()) {
-                if (port.getName().toLowerCase().contains(id.toLowerCase())) {
-                    foundedResults.add(port);
-                }
-            }
+            TravelPort bestMatch = NameMatch.getBestMatch(rank(id, 2, false));
 
-            if (foundedResults.size() == 1) {
-                return foundedResults.get(0);
+            if (bestMatch != null) {
+                return bestMatch;
             } else {
                 throw new TravelPortNotFound();
             }
@@ -145,16 +334,70 @@ public class FlatFileTravelPortContainer implements TravelPortContainer {
      * @return search result.
      */
     public Collection<TravelPort> search(Location location) {
-        Collection<TravelPort> ports = plugin.getTravelPorts().getAll();
         Collection<TravelPort> result = new LinkedList<TravelPort>();
+        spatialIndex.search(location, result);
+        return result;
+    }
 
-        for (TravelPort port : ports) {
-            if (port.getArea().contains(location)) {
-                result.add(port);
-            }
+    /**
+     * Searches the TravelPorts containing the passed block and adds them to the passed collection. Other than
+     * search(Location), no objects get allocated, as long as the collection has enough capacity. So the collection
+     * could get reused for every lookup.
+     *
+     * @param worldId the id of the world of the block, assigned by the WorldRegistry.
+     * @param x       the x coord of the block.
+     * @param y       the y coord of the block.
+     * @param z       the z coord of the block.
+     * @param result  collection which receives the TravelPorts containing the block.
+     */
+    public void search(int worldId, int x, int y, int z, Collection<TravelPort> result) {
+        spatialIndex.search(worldId, x, y, z, result);
+    }
+
+    /**
+     * Searches the TravelPorts which could contain blocks of the passed chunk.
+     *
+     * @param world  the id of the world.
+     * @param chunkX the x coord of the chunk.
+     * @param chunkZ the z coord of the chunk.
+     * @return the TravelPorts which bounding boxes overlap the chunk.
+     */
+    public TravelPort[] getPortsInChunk(int world, int chunkX, int chunkZ) {
+        BoundingBox chunk = new BoundingBox(world, chunkX << 4, Integer.MIN_VALUE, chunkZ << 4,
+            (chunkX << 4) + 15, Integer.MAX_VALUE, (chunkZ << 4) + 15);
+        List<TravelPort> result = new ArrayList<TravelPort>();
+        spatialIndex.search(chunk, result);
+        return result.toArray(new TravelPort[result.size()]);
+    }
+
+    /**
+     * Calculates a lower bound of the distance between the passed location and the nearest TravelPort.
+     *
+     * @param location    the location to measure from.
+     * @param maxDistance the maximum distance to look for TravelPorts.
+     * @return the distance in blocks, or maxDistance if there is no TravelPort nearer.
+     */
+    public double getDistanceToNearestPort(Location location, double maxDistance) {
+        return spatialIndex.distanceToNearest(location, maxDistance);
+    }
+
+    /**
+     * @return immutable snapshot of the areas of the TravelPorts, which could get read from any thread.
+     */
+    public AreaSnapshot getAreaSnapshot() {
+        if (areaSnapshot == null || areaSnapshotModificationCount != modificationCount) {
+            areaSnapshot = new AreaSnapshot(portTable.getAll());
+            areaSnapshotModificationCount = modificationCount;
         }
 
-        return result;
+        return areaSnapshot;
+    }
+
+    /**
+     * @return immutable snapshot of the TravelPorts mapped by their ids, which could get read from any thread.
+     */
+    public PortTable getPortTable() {
+        return portTable;
     }
 
     /**
@@ -164,12 +407,21 @@ public class FlatFileTravelPortContainer implements TravelPortContainer {
      * @return all TravelPorts matching the keyword.
      */
     public Collection<TravelPort> searchAll(String keyword) {
-        List<TravelPort> result = new LinkedList<TravelPort>();
+        return nameIndex.search(keyword, Integer.MAX_VALUE);
+    }
 
-        for (TravelPort port : travelPorts.values()) {
-            if (port.getName().toLowerCase().contains(keyword.toLowerCase())) {
-                result.add(port);
-            }
+    /**
+     * Searches the TravelPorts, which names match the keyword best.
+     *
+     * @param keyword    the keyword to search for.
+     * @param maxResults the maximum number of results.
+     * @return the found TravelPorts, sorted from the best to the worst match.
+     */
+    public List<TravelPort> searchRanked(String keyword, int maxResults) {
+        List<TravelPort> result = new ArrayList<TravelPort>();
+
+        for (NameMatch match : rank(keyword, maxResults, true)) {
+            result.add(match.getPort());
         }
 
         return result;
@@ -181,7 +433,7 @@ public class FlatFileTravelPortContainer implements TravelPortContainer {
      * @return the created TravelPort
      */
     public TravelPort create() {
-        TravelPort createdPort = new FlatFileTravelPort(this, findUnusedId());
+        TravelPort createdPort = new FlatFileTravelPort(owner, idAllocator.allocate());
         add(createdPort);
         return createdPort;
     }
@@ -192,7 +444,9 @@ public class FlatFileTravelPortContainer implements TravelPortContainer {
      * @param port the port to add.
      */
     public void add(TravelPort port) {
-        travelPorts.put(port.getId(), port);
+        put(port);
+        idAllocator.markUsed(port.getId());
+        publish(port.getId());
     }
 
     /**
@@ -209,7 +463,59 @@ public class FlatFileTravelPortContainer implements TravelPortContainer {
             }
         }
 
-        travelPorts.remove(port.getId());
+        detach(port);
+    }
+
+    /**
+     * Removes the travel port without unlinking it. Used when a TravelPort moves to another shard.
+     *
+     * @param port the port to remove.
+     */
+    void detach(TravelPort port) {
+        if (travelPorts.remove(port.getId()) != null) {
+            spatialIndex.remove(port);
+            nameIndex.remove(port);
+            ++modificationCount;
+            savedLines.remove(port.getId());
+            dirtyPorts.remove(port.getId());
+            removedPorts.add(port.getId());
+            idAllocator.release(port.getId());
+            dirty = true;
+
+            if (journalEnabled) {
+                journalPorts.add(port.getId());
+            }
+
+            publish(port.getId());
+        }
+    }
+
+    /**
+     * Called by the TravelPorts after their area got changed, so the container could update its indexes.
+     *
+     * @param port the port which area got changed.
+     */
+    public void onAreaChanged(TravelPort port) {
+        if (contains(port)) {
+            spatialIndex.update(port);
+            ++modificationCount;
+            markDirty(port);
+        }
+    }
+
+    /**
+     * Called by the TravelPorts after any of their other properties got changed, so the container knows which
+     * TravelPorts need to get saved.
+     *
+     * @param port the port which got changed.
+     */
+    public void onPortChanged(TravelPort port) {
+        if (contains(port)) {
+            if (nameIndex.update(port)) {
+                ++modificationCount;
+            }
+            markDirty(port);
+        }
     }
 
     /**
@@ -254,7 +560,170 @@ public class FlatFileTravelPortContainer implements TravelPortContainer {
      * @return number of available entries.
      */
     public int size() {
-        return travelPorts.size();
+        return portTable.size();
+    }
+
+    /**
+     * @return counter which gets increased every time TravelPorts get added, removed, renamed or their areas get
+     *         changed.
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Returns the TravelPort with the passed id, or null if there is none.
+     *
+     * @param id the id of the TravelPort.
+     * @return the TravelPort or null.
+     */
+    TravelPort find(Integer id) {
+        return travelPorts.get(id);
+    }
+
+    /**
+     * @param port the port to check.
+     * @return true, if the passed TravelPort is held by this container.
+     */
+    boolean contains(TravelPort port) {
+        return portTable.get(port.getId()) == port;
+    }
+
+    /**
+     * Searches the TravelPorts, which names match the keyword best. The results of recent searches get reused, until
+     * the TravelPorts get changed.
+     *
+     * @param keyword    the keyword to search for.
+     * @param maxResults the maximum number of results.
+     * @param typos      flag if names which differ by a few typos should get found, when no name contains the keyword.
+     * @return the matches, sorted from the best to the worst.
+     */
+    List<NameMatch> rank(String keyword, int maxResults, boolean typos) {
+        if (searchCacheModificationCount != modificationCount) {
+            searchCache.clear();
+            searchCacheModificationCount = modificationCount;
+        }
+
+        String key = (typos ? "~" : "") + maxResults + ":" + keyword.trim().toLowerCase();
+        List<NameMatch> matches = searchCache.get(key);
+        if (matches == null) {
+            matches = Collections.unmodifiableList(nameIndex.rank(keyword, maxResults, typos));
+            searchCache.put(key, matches);
+        }
+
+        return matches;
+    }
+
+    /**
+     * @return counter which gets increased every time a snapshot for saving gets created, or the TravelPorts get
+     *         loaded.
+     */
+    int getSaveGeneration() {
+        return saveGeneration;
+    }
+
+    /**
+     * @return true, if nothing is waiting for getting written, and nothing gets written right now.
+     */
+    boolean isWriterIdle() {
+        return fileWriter.isIdle();
+    }
+
+    /**
+     * Applies the changes of the CSV file, which got made by another program. TravelPorts which still exist get
+     * updated instead of replaced, so they keep their departures and the players inside. Lines which equal the current
+     * state of their TravelPorts get skipped.
+     *
+     * @param changedPorts the TravelPorts of the changed lines.
+     * @param changedLines the changed lines, in the same order as the TravelPorts.
+     * @param removedIds   the ids of the TravelPorts, which got removed from the file.
+     */
+    void applyExternalChanges(List<TravelPort> changedPorts, List<String> changedLines, List<Integer> removedIds) {
+        int appliedChanges = 0;
+
+        for (Integer id : removedIds) {
+            TravelPort port = travelPorts.get(id);
+            if (port != null) {
+                owner.remove(port);
+                ++appliedChanges;
+            }
+        }
+
+        for (int index = 0; index < changedPorts.size(); ++index) {
+            TravelPort changedPort = changedPorts.get(index);
+            TravelPort port = travelPorts.get(changedPort.getId());
+
+            if (port == null) {
+                // TravelPorts removed since the last save are still contained by the file.
+                if (!removedPorts.contains(changedPort.getId())) {
+                    owner.add(changedPort);
+                    ++appliedChanges;
+                }
+            } else if (!changedLines.get(index).equals(toLine(port))) {
+                update(port, changedPort);
+                ++appliedChanges;
+            }
+        }
+
+        if (appliedChanges > 0) {
+            server.getLogger().info(String.format("Applied %d changes of %s!", appliedChanges, csvFile.getName()));
+        }
+    }
+
+    /**
+     * Copies the properties of the changed TravelPort into the passed one. The area, destination and departure only
+     * get replaced, if they got changed.
+     *
+     * @param port        the TravelPort to update.
+     * @param changedPort the TravelPort with the changed properties.
+     */
+    private void update(TravelPort port, TravelPort changedPort) {
+        port.setName(changedPort.getName());
+        port.setTargetId(changedPort.getTargetId());
+        port.setOwner(changedPort.getOwner());
+        port.setPassword(changedPort.getPassword());
+        port.setPrice(changedPort.getPrice());
+        port.setAllowed(changedPort.getAllowed());
+
+        if (!String.valueOf(port.getArea()).equals(String.valueOf(changedPort.getArea()))) {
+            port.setArea(changedPort.getArea());
+        }
+        if (!String.valueOf(port.getDestination()).equals(String.valueOf(changedPort.getDestination()))) {
+            port.setDestination(changedPort.getDestination());
+        }
+
+        // The departure is bound to its TravelPort, so it needs to get created again.
+        String departure = changedPort.getDeparture() != null ? changedPort.getDeparture().toString() : null;
+        if (departure != null && !departure.equals(String.valueOf(port.getDeparture()))) {
+            try {
+                port.setDeparture(DepartureHelper.load(port, departure));
+            } catch (SyntaxException exception) {
+                logger.warning(String.format("Couldn't apply the departure of TravelPort %d!", port.getId()));
+            }
+        }
+    }
+
+    /**
+     * @return true, if there is a file or a journal, which the TravelPorts could get loaded from.
+     */
+    boolean hasStoredPorts() {
+        return csvFile.exists() || binaryFile.exists() || journalFile.exists();
+    }
+
+    /**
+     * Called after a world got loaded. All TravelPorts are always loaded, so there is nothing to do.
+     *
+     * @param world the loaded world.
+     */
+    public void onWorldLoaded(World world) {
+    }
+
+    /**
+     * Called before a world gets unloaded. All TravelPorts are always loaded, so there is nothing to do.
+     *
+     * @param world the world to unload.
+     */
+    public void onWorldUnloaded(World world) {
     }
 
     /**
@@ -272,140 +741,536 @@ public class FlatFileTravelPortContainer implements TravelPortContainer {
     }
 
     /**
-     * Loads the TravelPorts.
+     * Loads the TravelPorts out of the newer one of the CSV and the binary file. Replays the changes of the journal
+     * afterwards. If the loaded file doesn't have the configured storage format, the TravelPorts get converted.
      */
     public void load() {
-        if (csvFile.exists()) {
+        // Remove TravelPorts in RAM before!
+        travelPorts.clear();
+        spatialIndex.clear();
+        nameIndex.clear();
+        savedLines.clear();
+        dirtyPorts.clear();
+        journalPorts.clear();
+        removedPorts.clear();
+        sequence = 0;
+        journalSize = 0;
+        ++saveGeneration;
+
+        // Resolve the worlds of the areas and destinations to the loaded ones.
+        WorldRegistry.resolve(server.getWorlds());
+
+        boolean loadBinary;
+        if (binaryFile.exists() && csvFile.exists()) {
+            loadBinary = binaryFile.lastModified() != csvFile.lastModified() ?
+                binaryFile.lastModified() > csvFile.lastModified() : binaryStorage;
+        } else {
+            loadBinary = binaryFile.exists();
+        }
+
+        if (loadBinary) {
+            try {
+                List<TravelPort> loadedPorts = new ArrayList<TravelPort>();
+                sequence = BinaryPortStore.load(binaryFile, owner, loadedPorts, server.getLogger());
+                for (TravelPort port : loadedPorts) {
+                    put(port);
+                }
+                dirty = false;
+            } catch (IOException exception) {
+                logger.severe("Error occurred when loading TravelPorts!");
+                logger.severe(exception.getMessage());
+            }
+        } else if (csvFile.exists()) {
             try {
-                // Remove TravelPorts in RAM before!
-                travelPorts.clear();
-
-                // Parse the CSV file.
-                FileReader reader = new FileReader(csvFile);
-                Scanner scanner = new Scanner(reader);
-                while (scanner.hasNextLine()) {
-                    String line = scanner.nextLine();
-                    try {
-                        CsvLineParser parser = new CsvLineParser(line);
-                        TravelPort port = new FlatFileTravelPort(this, parser.getInt(INDEX_ID));
-                        port.setName(parser.getString(INDEX_NAME));
-                        port.setPrice(parser.getDouble(INDEX_PRICE));
-                        port.setTargetId(parser.getInteger(INDEX_TARGET));
-                        port.setPassword(parser.getString(INDEX_PASSWORD));
-                        port.setOwner(parser.getString(INDEX_OWNER));
-                        port.setAllowed(StringHelper.decode(parser.getString(INDEX_ALLOWED)));
-                        port.setDeparture(DepartureHelper.load(port, parser.getString(INDEX_DEPARTURE)));
-
-                        String areaString = parser.getString(INDEX_AREA);
-                        if (areaString != null) {
-                            port.setArea(new CuboidArea(areaString));
-                        }
-
-                        String destinationString = parser.getString(INDEX_DESTINATION);
-                        if (destinationString != null) {
-                            port.setDestination(new Destination(server, destinationString));
-                        }
-
-                        travelPorts.put(port.getId(), port);
-                    } catch (SyntaxException e) {
-                        server.getLogger().warning(
-                            String.format("Corrupt TravelPort configuration line! '%s'", line));
-                        server.getLogger().info("Exception: " + e.getMessage());
-                    } catch (NumberFormatException e) {
-                        server.getLogger().warning(String.format("Invalid TravelPort configuration line! '%s'", line));
+                // Read the CSV file. The header isn't a TravelPort, so it gets replaced by null.
+                long lastModified = csvFile.lastModified(), length = csvFile.length();
+                BufferedReader reader = new BufferedReader(new FileReader(csvFile), LOAD_BUFFER_SIZE);
+                List<String> lines = new ArrayList<String>();
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (line.startsWith(SEQUENCE_HEADER)) {
+                        sequence = Long.parseLong(line.substring(SEQUENCE_HEADER.length()).trim());
+                        lines.add(null);
+                    } else {
+                        lines.add(line);
                     }
                 }
-                scanner.close();
                 reader.close();
+                watcher.reset(lines, lastModified, length);
 
-                server.getLogger().info(String.format("Loaded %d TravelPorts!", travelPorts.size()));
+                // Parse the lines in parallel, but add the TravelPorts in the order of the file.
+                TravelPort[] loadedPorts = new TravelPort[lines.size()];
+                Exception[] errors = new Exception[lines.size()];
+                ParallelCsvLoader.parse(this, lines, loadedPorts, errors, loadThreads);
+                for (int index = 0; index < loadedPorts.length; ++index) {
+                    if (loadedPorts[index] != null) {
+                        addLoadedPort(loadedPorts[index], lines.get(index));
+                    } else if (errors[index] != null) {
+                        reportCorruptLine(csvFile, index + 1, lines.get(index), errors[index]);
+                    }
+                }
+                dirty = false;
+            } catch (NumberFormatException exception) {
+                logger.severe("Invalid sequence number in the TravelPorts file!");
             } catch (IOException exception) {
                 logger.severe("Error occurred when loading TravelPorts!");
                 logger.severe(exception.getMessage());
             }
         } else {
             logger.warning("TravelPorts file didn't exist! Create new one...");
-            travelPorts.clear();
+            dirty = true;
+        }
+
+        // Even if the journal is disabled now, it could contain changes of an earlier run.
+        if (journalFile.exists()) {
+            replayJournal();
+        }
+
+        // The loaded TravelPorts are already stored in the file or in the journal.
+        journalPorts.clear();
+        idAllocator.reset(travelPorts.keySet());
+        publish();
+
+        if (loadBinary != binaryStorage && (binaryFile.exists() || csvFile.exists())) {
+            logger.info(String.format("Converting TravelPorts into %s format...", binaryStorage ? "binary" : "CSV"));
+            dirty = true;
+            save();
         }
+
+        server.getLogger().info(String.format("Loaded %d TravelPorts!", travelPorts.size()));
     }
 
     /**
-     * Saves the TravelPorts.
+     * Saves the changed TravelPorts on another thread. Does nothing, if no TravelPort got changed since the last save.
      */
     public void save() {
-        try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(csvFile));
-
-            for (TravelPort port : travelPorts.values()) {
-                StringBuilder line = new StringBuilder();
-
-                for (int index = 0; index < CSV_COLUMNS; ++index) {
-                    switch (index) {
-                        case INDEX_ID:
-                            line.append(port.getId());
-                            break;
-                        case INDEX_NAME:
-                            line.append(port.getName().replace(";", "&#59"));
-                            break;
-                        case INDEX_TARGET:
-                            line.append(port.getTargetId());
-                            break;
-                        case INDEX_OWNER:
-                            line.append(port.getOwner());
-                            break;
-                        case INDEX_ALLOWED:
-                            if (port.isAllowedToEverybody()) {
-                                line.append("null");
-                            } else {
-                                line.append(StringHelper.encode(port.getAllowed()));
-                            }
-                            break;
-                        case INDEX_PASSWORD:
-                            line.append(port.getPassword());
-                            break;
-                        case INDEX_PRICE:
-                            line.append(port.getPrice());
-                            break;
-                        case INDEX_AREA:
-                            line.append(port.getArea().toString());
-                            break;
-                        case INDEX_DESTINATION:
-                            line.append(port.getDestination().toString());
-                            break;
-                        case INDEX_DEPARTURE:
-                            line.append(port.getDeparture().toString());
-                            break;
-                        default:
-                            throw new RuntimeException(
-                                "This Code should never get reached! Error in program, please contact the developer.");
-                    }
+        if (binaryStorage) {
+            byte[] data = createBinarySnapshot();
 
-                    if (index + 1 < CSV_COLUMNS) {
-                        line.append(";");
-                    }
-                }
+            if (data != null) {
+                fileWriter.write(data);
+            }
+        } else {
+            List<String> lines = createSnapshot();
+
+            if (lines != null) {
+                fileWriter.write(lines);
+            }
+        }
+    }
+
+    /**
+     * Saves the changed TravelPorts on the calling thread. Used when the plugin gets disabled, because no tasks could
+     * get scheduled then.
+     */
+    public void saveNow() {
+        if (binaryStorage) {
+            byte[] data = createBinarySnapshot();
+
+            if (data != null) {
+                fileWriter.writeNow(data);
+            } else {
+                fileWriter.flush();
+            }
+        } else {
+            List<String> lines = createSnapshot();
+
+            if (lines != null) {
+                fileWriter.writeNow(lines);
+            } else {
+                fileWriter.flush();
+            }
+        }
+    }
+
+    /**
+     * Appends the changes since the last call to the journal on another thread. Saves the TravelPorts instead, if the
+     * journal got too large.
+     */
+    public void flushChanges() {
+        List<String> records = createRecords();
+
+        if (records != null) {
+            fileWriter.append(records);
+
+            if (journalSize > journalCompactionSize) {
+                save();
+            }
+        }
+    }
+
+    /**
+     * Checks on another thread, if the CSV file got changed by another program. The changed TravelPorts get applied on
+     * the main thread afterwards. TravelPorts stored in the binary format don't get watched.
+     */
+    public void checkForChanges() {
+        if (!binaryStorage) {
+            watcher.check();
+        }
+    }
+
+    /**
+     * Appends the remaining changes to the journal and waits until all saves got written into the file.
+     */
+    public void flush() {
+        List<String> records = createRecords();
+
+        if (records != null) {
+            fileWriter.appendNow(records);
+        } else {
+            fileWriter.flush();
+        }
+    }
+
+    /**
+     * Writes the remaining changes and waits until all saves got written into the file. The file isn't held open, so
+     * there is nothing else to release.
+     */
+    public void close() {
+        flush();
+    }
+
+    /**
+     * Marks the passed TravelPort as changed.
+     *
+     * @param port the changed port.
+     */
+    private void markDirty(TravelPort port) {
+        dirtyPorts.add(port.getId());
+        dirty = true;
+
+        if (journalEnabled) {
+            journalPorts.add(port.getId());
+        }
+    }
+
+    /**
+     * Creates the journal records of the TravelPorts, which got changed or removed since the last records got created.
+     *
+     * @return the records to append, or null if there are no changes or the journal is disabled.
+     */
+    private List<String> createRecords() {
+        if (!journalEnabled || journalPorts.isEmpty()) {
+            return null;
+        }
+
+        List<String> records = new ArrayList<String>(journalPorts.size());
+        for (Integer id : journalPorts) {
+            TravelPort port = travelPorts.get(id);
+            String record;
 
-                writer.append(line.toString());
-                writer.newLine();
+            if (port != null) {
+                String line = toLine(port);
+                savedLines.put(id, line);
+                dirtyPorts.remove(id);
+                record = ++sequence + ";" + RECORD_PUT + ";" + line;
+            } else {
+                record = ++sequence + ";" + RECORD_REMOVE + ";" + id;
             }
 
-            writer.close();
+            records.add(record);
+            journalSize += record.length() + 1;
+        }
+        journalPorts.clear();
+
+        return records;
+    }
+
+    /**
+     * Applies the records of the journal, which are newer than the loaded file. An incomplete last record, which got
+     * cut off by a crash, gets ignored.
+     */
+    private void replayJournal() {
+        String content;
+        try {
+            Reader reader = new FileReader(journalFile);
+            StringBuilder builder = new StringBuilder();
+            char[] buffer = new char[8192];
+            for (int read = reader.read(buffer); read >= 0; read = reader.read(buffer)) {
+                builder.append(buffer, 0, read);
+            }
+            reader.close();
+            content = builder.toString();
         } catch (IOException exception) {
-            logger.severe("Error occurred during saving TravelPorts!");
+            logger.severe("Error occurred when loading the journal of the TravelPorts!");
             logger.severe(exception.getMessage());
+            return;
         }
+
+        int replayedRecords = 0, lineNumber = 0;
+        CsvLineParser parser = new CsvLineParser();
+        int end = content.lastIndexOf('\n');
+        for (int begin = 0; begin <= end; ) {
+            int lineEnd = content.indexOf('\n', begin);
+            String record = content.substring(begin, lineEnd).trim();
+            begin = lineEnd + 1;
+            ++lineNumber;
+
+            String[] parts = record.split(";", 3);
+            if (parts.length != 3) {
+                continue;
+            }
+
+            try {
+                long recordSequence = Long.parseLong(parts[0]);
+                if (recordSequence <= sequence) {
+                    continue; // Already contained by the loaded file.
+                }
+                sequence = recordSequence;
+
+                if (RECORD_PUT.equals(parts[1])) {
+                    loadLine(parser, parts[2], lineNumber);
+                } else if (RECORD_REMOVE.equals(parts[1])) {
+                    Integer id = Integer.valueOf(parts[2]);
+                    TravelPort port = travelPorts.remove(id);
+                    if (port != null) {
+                        spatialIndex.remove(port);
+                        nameIndex.remove(port);
+                        ++modificationCount;
+                    }
+                    savedLines.remove(id);
+                    dirtyPorts.remove(id);
+                }
+                ++replayedRecords;
+            } catch (NumberFormatException exception) {
+                logger.warning(String.format("Invalid TravelPort journal record! '%s'", record));
+            }
+        }
+
+        if (replayedRecords > 0) {
+            dirty = true;
+            journalSize = journalFile.length();
+            server.getLogger().info(String.format("Replayed %d changes of the TravelPorts journal!", replayedRecords));
+        }
+    }
+
+    /**
+     * Creates the TravelPort out of the passed line of the journal and adds it.
+     *
+     * @param parser     the parser to use for the line. Gets reused for all lines of the journal.
+     * @param line       the line to load.
+     * @param lineNumber the number of the line in the journal.
+     */
+    private void loadLine(CsvLineParser parser, String line, int lineNumber) {
+        try {
+            addLoadedPort(parseLine(parser, line), line);
+        } catch (SyntaxException exception) {
+            reportCorruptLine(journalFile, lineNumber, line, exception);
+        } catch (NumberFormatException exception) {
+            reportCorruptLine(journalFile, lineNumber, line, exception);
+        }
+    }
+
+    /**
+     * Creates the TravelPort out of the passed line, without adding it. Gets called by several threads at once, when
+     * the file gets loaded in parallel.
+     *
+     * @param parser the parser to use for the line.
+     * @param line   the line to parse.
+     * @return the created TravelPort.
+     * @throws SyntaxException       thrown when the area, the destination or the departure is corrupt.
+     * @throws NumberFormatException thrown when a number of the line is invalid.
+     */
+    TravelPort parseLine(CsvLineParser parser, String line) throws SyntaxException {
+        parser.parse(line);
+        TravelPort port = new FlatFileTravelPort(owner, parser.getInt(INDEX_ID));
+        port.setName(parser.getString(INDEX_NAME));
+        port.setPrice(parser.getDouble(INDEX_PRICE));
+        port.setTargetId(parser.getInteger(INDEX_TARGET));
+        port.setPassword(parser.getString(INDEX_PASSWORD));
+        port.setOwner(parser.getString(INDEX_OWNER));
+        port.setAllowed(StringHelper.decode(parser.getString(INDEX_ALLOWED)));
+        port.setDeparture(DepartureHelper.load(port, parser.getString(INDEX_DEPARTURE)));
+
+        String areaString = parser.getString(INDEX_AREA);
+        if (areaString != null) {
+            port.setArea(AreaHelper.load(areaString));
+        }
+
+        String destinationString = parser.getString(INDEX_DESTINATION);
+        if (destinationString != null) {
+            port.setDestination(new Destination(destinationString));
+        }
+
+        return port;
     }
 
     /**
-     * @return the next free travel port id.
+     * Adds the passed TravelPort to the table and the index, without publishing a new snapshot. So loading many
+     * TravelPorts doesn't copy the table for each of them.
+     *
+     * @param port the port to add.
      */
-    private Integer findUnusedId() {
-        Integer currentId = Integer.valueOf(0);
+    private void put(TravelPort port) {
+        TravelPort replacedPort = travelPorts.put(port.getId(), port);
+        if (replacedPort != null) {
+            spatialIndex.remove(replacedPort);
+        }
+        spatialIndex.add(port);
+        nameIndex.add(port);
+        ++modificationCount;
+        markDirty(port);
+    }
 
-        while (travelPorts.containsKey(currentId)) {
-            currentId++;
+    /**
+     * Replaces the snapshot of the TravelPorts with a copy of the current table. The TravelPorts got added or
+     * removed already, so other threads only see complete changes. Used after loading many TravelPorts at once.
+     */
+    private void publish() {
+        portTable = PortTable.create(travelPorts.values(), modificationCount);
+    }
+
+    /**
+     * Replaces the snapshot of the TravelPorts with a version, which contains the current state of the TravelPort
+     * with the passed id. The new version shares everything else with the old one, so it doesn't copy the table.
+     *
+     * @param id the id of the added or removed TravelPort.
+     */
+    private void publish(Integer id) {
+        TravelPort port = travelPorts.get(id);
+        portTable = port != null ? portTable.with(port, modificationCount) : portTable.without(id, modificationCount);
+    }
+
+    /**
+     * Adds a loaded TravelPort.
+     *
+     * @param port the loaded TravelPort.
+     * @param line the line, which the TravelPort got loaded from.
+     */
+    private void addLoadedPort(TravelPort port, String line) {
+        put(port);
+
+        // The line is still up to date, as long as the TravelPort doesn't get changed.
+        savedLines.put(port.getId(), line);
+        dirtyPorts.remove(port.getId());
+    }
+
+    /**
+     * Logs a line, which couldn't get loaded.
+     *
+     * @param file       the file which contains the line.
+     * @param lineNumber the number of the line in the file.
+     * @param line       the line which couldn't get loaded.
+     * @param exception  the reason why the line couldn't get loaded.
+     */
+    void reportCorruptLine(File file, int lineNumber, String line, Exception exception) {
+        if (exception instanceof SyntaxException) {
+            server.getLogger().warning(String.format("Corrupt TravelPort configuration in line %d of %s! '%s'",
+                lineNumber, file.getName(), line));
+            server.getLogger().info("Exception: " + exception.getMessage());
+        } else {
+            server.getLogger().warning(String.format("Invalid TravelPort configuration in line %d of %s! '%s'",
+                lineNumber, file.getName(), line));
+        }
+    }
+
+    /**
+     * Creates the lines of the changed TravelPorts and returns a copy of all lines.
+     *
+     * @return the lines to save, or null if nothing changed since the last save.
+     */
+    private List<String> createSnapshot() {
+        if (!dirty) {
+            return null;
+        }
+
+        for (Integer id : dirtyPorts) {
+            savedLines.put(id, toLine(travelPorts.get(id)));
+        }
+        dirtyPorts.clear();
+        removedPorts.clear();
+        dirty = false;
+        ++saveGeneration;
+
+        // All changes until now are contained by the snapshot, so the journal gets cleared after writing it.
+        journalPorts.clear();
+        journalSize = 0;
+
+        List<String> lines = new ArrayList<String>(savedLines.size() + 1);
+        lines.add(SEQUENCE_HEADER + sequence);
+        lines.addAll(savedLines.values());
+
+        return lines;
+    }
+
+    /**
+     * Encodes all TravelPorts in the binary format.
+     *
+     * @return the data to save, or null if nothing changed since the last save.
+     */
+    private byte[] createBinarySnapshot() {
+        if (!dirty) {
+            return null;
+        }
+
+        // The lines are only needed for saving in CSV format.
+        savedLines.clear();
+        dirtyPorts.clear();
+        removedPorts.clear();
+        dirty = false;
+        ++saveGeneration;
+
+        // All changes until now are contained by the snapshot, so the journal gets cleared after writing it.
+        journalPorts.clear();
+        journalSize = 0;
+
+        return BinaryPortStore.encode(travelPorts.values(), sequence);
+    }
+
+    /**
+     * Creates the line used for saving the passed TravelPort.
+     *
+     * @param port the port to save.
+     * @return the line.
+     */
+    private static String toLine(TravelPort port) {
+        StringBuilder line = new StringBuilder();
+
+        for (int index = 0; index < CSV_COLUMNS; ++index) {
+            switch (index) {
+                case INDEX_ID:
+                    line.append(port.getId());
+                    break;
+                case INDEX_NAME:
+                    line.append(port.getName().replace(";", "&#59"));
+                    break;
+                case INDEX_TARGET:
+                    line.append(port.getTargetId());
+                    break;
+                case INDEX_OWNER:
+                    line.append(port.getOwner());
+                    break;
+                case INDEX_ALLOWED:
+                    if (port.isAllowedToEverybody()) {
+                        line.append("null");
+                    } else {
+                        line.append(StringHelper.encode(port.getAllowed()));
+                    }
+                    break;
+                case INDEX_PASSWORD:
+                    line.append(port.getPassword());
+                    break;
+                case INDEX_PRICE:
+                    line.append(port.getPrice());
+                    break;
+                case INDEX_AREA:
+                    line.append(port.getArea().toString());
+                    break;
+                case INDEX_DESTINATION:
+                    line.append(port.getDestination().toString());
+                    break;
+                case INDEX_DEPARTURE:
+                    line.append(port.getDeparture().toString());
+                    break;
+                default:
+                    throw new RuntimeException(
+                        "This Code should never get reached! Error in program, please contact the developer.");
+            }
+
+            if (index + 1 < CSV_COLUMNS) {
+                line.append(";");
+            }
         }
 
-        return currentId;
+        return line.toString();
     }
 }
@@ -0,0 +1,160 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.ports.implementation.file;
+
+import at.co.hohl.easytravel.ports.TravelPort;
+import at.co.hohl.utils.storage.CsvLineParser;
+import at.co.hohl.utils.storage.SyntaxException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Parses the lines of a CSV file in parallel. The lines get split into chunks, which get parsed by a pool of threads.
+ * The results are stored by the index of their line, so they could get merged into the container in the order of the
+ * file afterwards. Small files get parsed on the calling thread.
+ * <p/>
+ * The parsed TravelPorts aren't added to the container while parsing, so their setters don't change the container.
+ *
+ * @author Michael Hohl
+ */
+final class ParallelCsvLoader {
+    /**
+     * Minimum number of lines of a chunk. Files with less lines get parsed on the calling thread.
+     */
+    private static final int MIN_CHUNK_SIZE = 1024;
+
+    /**
+     * Number of chunks per thread, so threads which are done early could help the others.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Parses the passed lines. Lines which are null get skipped.
+     *
+     * @param container the container which parses the lines.
+     * @param lines     the lines to parse.
+     * @param ports     receives the parsed TravelPorts by the index of their lines. Null for skipped or corrupt lines.
+     * @param errors    receives the exceptions of the corrupt lines by the index of the lines.
+     * @param threads   the maximum number of threads to use.
+     */
+    static void parse(final FlatFileTravelPortContainer container, final List<String> lines, final TravelPort[] ports,
+                      final Exception[] errors, int threads) {
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, lines.size() / (threads * CHUNKS_PER_THREAD) + 1);
+
+        if (threads <= 1 || lines.size() <= chunkSize) {
+            parseChunk(container, lines, ports, errors, 0, lines.size());
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "EasyTravel Loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int begin = 0; begin < lines.size(); begin += chunkSize) {
+                final int chunkBegin = begin, chunkEnd = Math.min(lines.size(), begin + chunkSize);
+                futures.add(executor.submit(new Runnable() {
+                    public void run() {
+                        parseChunk(container, lines, ports, errors, chunkBegin, chunkEnd);
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                await(future);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Parses the lines of a single chunk.
+     *
+     * @param container the container which parses the lines.
+     * @param lines     the lines to parse.
+     * @param ports     receives the parsed TravelPorts.
+     * @param errors    receives the exceptions of the corrupt lines.
+     * @param begin     the index of the first line of the chunk.
+     * @param end       the index after the last line of the chunk.
+     */
+    private static void parseChunk(FlatFileTravelPortContainer container, List<String> lines, TravelPort[] ports,
+                                   Exception[] errors, int begin, int end) {
+        CsvLineParser parser = new CsvLineParser();
+
+        for (int index = begin; index < end; ++index) {
+            String line = lines.get(index);
+            if (line != null) {
+                try {
+                    ports[index] = container.parseLine(parser, line);
+                } catch (SyntaxException exception) {
+                    errors[index] = exception;
+                } catch (NumberFormatException exception) {
+                    errors[index] = exception;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until the passed task is done. Rethrows unexpected exceptions of the task. An interrupt doesn't stop
+     * waiting, because the results are needed, but it gets restored afterwards.
+     *
+     * @param future the task to wait for.
+     */
+    private static void await(Future<?> future) {
+        boolean interrupted = false;
+
+        try {
+            while (true) {
+                try {
+                    future.get();
+                    return;
+                } catch (InterruptedException exception) {
+                    interrupted = true;
+                } catch (ExecutionException exception) {
+                    if (exception.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) exception.getCause();
+                    } else if (exception.getCause() instanceof Error) {
+                        throw (Error) exception.getCause();
+                    }
+                    throw new RuntimeException(exception.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * No need of creating an instance of that!
+     */
+    private ParallelCsvLoader() {
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.ports.implementation.file;
+
+import at.co.hohl.easytravel.ports.TravelPort;
+import at.co.hohl.utils.storage.CsvLineParser;
+import at.co.hohl.utils.storage.SyntaxException;
+import org.bukkit.plugin.Plugin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Watches the CSV file of a FlatFileTravelPortContainer for changes made by other programs. The file gets read and
+ * compared with the last known content on another thread, so only the changed lines get parsed. The changed
+ * TravelPorts get applied to the container on the main thread afterwards.
+ * <p/>
+ * The container writes the file too. After every write, the written lines become the known content, so the own lines
+ * never look like changes. Checks which overlap a save of the container get dropped and repeated later.
+ *
+ * @author Michael Hohl
+ */
+class PortFileWatcher implements WriteBehindFile.WriteListener {
+    /**
+     * The container which gets the changes applied.
+     */
+    private final FlatFileTravelPortContainer container;
+
+    /**
+     * Plugin used for scheduling the tasks.
+     */
+    private final Plugin plugin;
+
+    /**
+     * The watched file.
+     */
+    private final File file;
+
+    /**
+     * Modification time of the file, when it got read the last time. Guarded by this.
+     */
+    private long lastModified;
+
+    /**
+     * Length of the file, when it got read the last time. Guarded by this.
+     */
+    private long length;
+
+    /**
+     * Lines of the file, when it got read the last time, mapped by the ids of the TravelPorts. Guarded by this.
+     */
+    private Map<Integer, String> knownLines = new HashMap<Integer, String>();
+
+    /**
+     * Flag if a check is running. Guarded by this.
+     */
+    private boolean checking;
+
+    /**
+     * Number of the baseline. Increased every time the known content gets replaced by the container, so running
+     * checks don't overwrite it. Guarded by this.
+     */
+    private int baseline;
+
+    /**
+     * Creates a new watcher.
+     *
+     * @param container the container which gets the changes applied.
+     * @param plugin    the plugin used for scheduling the tasks.
+     * @param file      the CSV file to watch.
+     */
+    public PortFileWatcher(FlatFileTravelPortContainer container, Plugin plugin, File file) {
+        this.container = container;
+        this.plugin = plugin;
+        this.file = file;
+    }
+
+    /**
+     * Replaces the known content of the file with the lines, which the container wrote into it.
+     *
+     * @param lines        the written lines.
+     * @param lastModified the modification time of the written file.
+     * @param length       the length of the written file.
+     */
+    public void onLinesWritten(List<String> lines, long lastModified, long length) {
+        reset(lines, lastModified, length);
+    }
+
+    /**
+     * Replaces the known content of the file. Called by the container after it loaded the file.
+     *
+     * @param lines        the loaded lines. Lines which aren't TravelPorts could be null.
+     * @param lastModified the modification time of the loaded file.
+     * @param length       the length of the loaded file.
+     */
+    public synchronized void reset(List<String> lines, long lastModified, long length) {
+        Map<Integer, String> loadedLines = new HashMap<Integer, String>(lines.size() * 4 / 3 + 1);
+        for (String line : lines) {
+            Integer id = line != null ? parseId(line) : null;
+            if (id != null) {
+                loadedLines.put(id, line);
+            }
+        }
+
+        this.knownLines = loadedLines;
+        this.lastModified = lastModified;
+        this.length = length;
+        ++baseline;
+    }
+
+    /**
+     * Starts a check of the file on another thread, if there isn't one running already. Needs to get called on the
+     * main thread.
+     */
+    public void check() {
+        final int checkedBaseline;
+        synchronized (this) {
+            if (checking) {
+                return;
+            }
+            checking = true;
+            checkedBaseline = baseline;
+        }
+
+        final int saveGeneration = container.getSaveGeneration();
+        plugin.getServer().getScheduler().scheduleAsyncDelayedTask(plugin, new Runnable() {
+            public void run() {
+                try {
+                    scan(checkedBaseline, saveGeneration);
+                } catch (RuntimeException exception) {
+                    finish();
+                    throw exception;
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the file and compares it with the known content, if it got changed. Runs on another thread.
+     *
+     * @param checkedBaseline the number of the baseline, when the check got started.
+     * @param saveGeneration  the save generation of the container, when the check got started.
+     */
+    private void scan(final int checkedBaseline, final int saveGeneration) {
+        final long modified = file.lastModified(), size = file.length();
+        final Map<Integer, String> oldLines;
+        synchronized (this) {
+            if (baseline != checkedBaseline || (modified == lastModified && size == length) ||
+                !container.isWriterIdle()) {
+                checking = false;
+                return;
+            }
+            oldLines = knownLines;
+        }
+
+        List<String> lines = new ArrayList<String>(oldLines.size() + 1);
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    lines.add(line);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException exception) {
+            finish();
+            return;
+        }
+
+        // The container could have started writing the file while it got read.
+        if (!container.isWriterIdle()) {
+            finish();
+            return;
+        }
+
+        // Parse only the lines which differ from the known content.
+        final Map<Integer, String> newLines = new HashMap<Integer, String>(lines.size() * 4 / 3 + 1);
+        final List<TravelPort> changedPorts = new ArrayList<TravelPort>();
+        final List<String> changedLines = new ArrayList<String>();
+        CsvLineParser parser = new CsvLineParser();
+        for (int index = 0; index < lines.size(); ++index) {
+            String line = lines.get(index);
+            Integer id = parseId(line);
+
+            if (id != null) {
+                newLines.put(id, line);
+
+                if (!line.equals(oldLines.get(id))) {
+                    try {
+                        changedPorts.add(container.parseLine(parser, line));
+                        changedLines.add(line);
+                    } catch (SyntaxException exception) {
+                        container.reportCorruptLine(file, index + 1, line, exception);
+                    } catch (NumberFormatException exception) {
+                        container.reportCorruptLine(file, index + 1, line, exception);
+                    }
+                }
+            }
+        }
+
+        final List<Integer> removedIds = new ArrayList<Integer>();
+        for (Integer id : oldLines.keySet()) {
+            if (!newLines.containsKey(id)) {
+                removedIds.add(id);
+            }
+        }
+
+        plugin.getServer().getScheduler().scheduleSyncDelayedTask(plugin, new Runnable() {
+            public void run() {
+                synchronized (PortFileWatcher.this) {
+                    checking = false;
+
+                    // Lines of the file could be older than the saved lines of the container. Check again later.
+                    if (baseline != checkedBaseline || container.getSaveGeneration() != saveGeneration) {
+                        return;
+                    }
+
+                    knownLines = newLines;
+                    lastModified = modified;
+                    length = size;
+                }
+
+                container.applyExternalChanges(changedPorts, changedLines, removedIds);
+            }
+        });
+    }
+
+    /**
+     * Marks the running check as finished, without changing the known content.
+     */
+    private synchronized void finish() {
+        checking = false;
+    }
+
+    /**
+     * Returns the id of the TravelPort in the passed line.
+     *
+     * @param line the line of the CSV file.
+     * @return the id, or null if the line doesn't start with a valid id.
+     */
+    private static Integer parseId(String line) {
+        int end = line.indexOf(';');
+
+        try {
+            return end > 0 ? Integer.valueOf(line.substring(0, end).trim()) : null;
+        } catch (NumberFormatException exception) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,868 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.ports.implementation.file;
+
+import at.co.hohl.easytravel.TravelPlugin;
+import at.co.hohl.easytravel.ports.*;
+import at.co.hohl.easytravel.ports.index.AreaSnapshot;
+import at.co.hohl.easytravel.ports.index.IdAllocator;
+import at.co.hohl.easytravel.ports.index.NameMatch;
+import at.co.hohl.easytravel.ports.index.PortTable;
+import at.co.hohl.utils.storage.CsvLineParser;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+
+import java.io.*;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Container which stores the TravelPorts of every world in a file of its own (a shard). The shard of a world gets
+ * loaded when the world gets loaded, and gets written back and dropped when the world gets unloaded. So only the
+ * TravelPorts of loaded worlds are held in memory.
+ * <p/>
+ * A TravelPort belongs to the world of its area, or to the world of its destination if it has no area. TravelPorts
+ * without a world, or whose world isn't loaded, are held by the default shard, which is always loaded. The default
+ * shard uses the file of the unsharded container, so existing TravelPorts move into their shards as soon as their
+ * worlds get loaded.
+ * <p/>
+ * The ids of all TravelPorts, including the ones of unloaded shards, are stored in an index. So new TravelPorts get
+ * unique ids, and links between TravelPorts of different shards resolve by the id, while both shards are loaded.
+ *
+ * @author Michael Hohl
+ */
+public class ShardedTravelPortContainer implements TravelPortContainer {
+    /**
+     * Name of the file, which contains the ids of all TravelPorts and the shards which store them.
+     */
+    private static final String INDEX_FILE = "index.csv";
+
+    /**
+     * Name of the default shard in the index.
+     */
+    private static final String DEFAULT_SHARD = "";
+
+    /**
+     * The server which holds the container.
+     */
+    private final Server server;
+
+    /**
+     * Plugin which holds the container.
+     */
+    private final TravelPlugin plugin;
+
+    /**
+     * Logger used for outputting debug information.
+     */
+    private final Logger logger;
+
+    /**
+     * The file of the default shard.
+     */
+    private final File defaultFile;
+
+    /**
+     * The directory which contains the shards of the worlds and the index.
+     */
+    private final File shardDirectory;
+
+    /**
+     * Writes the index on another thread.
+     */
+    private final WriteBehindFile indexWriter;
+
+    /**
+     * Shard which holds the TravelPorts without a loaded world.
+     */
+    private FlatFileTravelPortContainer defaultShard;
+
+    /**
+     * Loaded shards, mapped by the id of their world.
+     */
+    private final Map<Integer, FlatFileTravelPortContainer> worldShards =
+        new HashMap<Integer, FlatFileTravelPortContainer>();
+
+    /**
+     * Names of the loaded shards, as used in the index.
+     */
+    private final Map<FlatFileTravelPortContainer, String> shardNames =
+        new HashMap<FlatFileTravelPortContainer, String>();
+
+    /**
+     * Loaded shards, mapped by the ids of the TravelPorts they hold.
+     */
+    private final Map<Integer, FlatFileTravelPortContainer> portShards =
+        new HashMap<Integer, FlatFileTravelPortContainer>();
+
+    /**
+     * Snapshot of the TravelPorts of all loaded shards, which gets replaced every time TravelPorts get added or
+     * removed. Read by the other threads without locking.
+     */
+    private volatile PortTable portTable = PortTable.EMPTY;
+
+    /**
+     * Names of the shards which store the TravelPorts, mapped by the ids of all TravelPorts. (The index)
+     */
+    private final SortedMap<Integer, String> storedShards = new TreeMap<Integer, String>();
+
+    /**
+     * Flag if the index got changed since it got saved.
+     */
+    private boolean indexDirty;
+
+    /**
+     * Hands out the ids of created TravelPorts. Knows the ids of all shards, like the index.
+     */
+    private final IdAllocator idAllocator;
+
+    /**
+     * Part of the modification count, which doesn't come from the loaded shards. Increased when a shard gets loaded
+     * or unloaded, so the modification count never goes back.
+     */
+    private int modificationBase;
+
+    /**
+     * Last created snapshot of the areas.
+     */
+    private AreaSnapshot areaSnapshot;
+
+    /**
+     * Modification count, when the last snapshot of the areas got created.
+     */
+    private int areaSnapshotModificationCount;
+
+    /**
+     * Creates a new container for TravelPorts.
+     *
+     * @param plugin         the plugin which holds the instance.
+     * @param defaultFile    the file used for storing the TravelPorts without a loaded world.
+     * @param shardDirectory the directory used for storing the shards of the worlds.
+     */
+    public ShardedTravelPortContainer(TravelPlugin plugin, File defaultFile, File shardDirectory) {
+        this.server = plugin.getServer();
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+        this.defaultFile = defaultFile;
+        this.shardDirectory = shardDirectory;
+        this.indexWriter = new WriteBehindFile(plugin, new File(shardDirectory, INDEX_FILE),
+            new File(shardDirectory, INDEX_FILE + ".journal"));
+        this.idAllocator =
+            new IdAllocator(plugin.getConfig().getInt("id-quarantine", IdAllocator.DEFAULT_QUARANTINE) * 1000L);
+    }
+
+    /**
+     * Gets the travel port with the passed id.
+     *
+     * @param id the id of the travel port to get.
+     * @return the travel port.
+     * @throws TravelPortNotFound thrown when there isn't any port with the passed id, or its shard isn't loaded.
+     */
+    public TravelPort get(Integer id) throws TravelPortNotFound {
+        TravelPort port = portTable.get(id);
+
+        if (port != null) {
+            return port;
+        } else {
+            throw new TravelPortNotFound();
+        }
+    }
+
+    /**
+     * @return unmodifiable snapshot of the TravelPorts of the loaded shards.
+     */
+    public Collection<TravelPort> getAll() {
+        return portTable.getAll();
+    }
+
+    /**
+     * Searches a TravelPort. If the id isn't a number, the TravelPort which name matches best is used.
+     *
+     * @param id could be a part of the name or the id.
+     * @return the founded TravelPort.
+     * @throws TravelPortNotFound thrown when there is no match, or several names match equally well.
+     */
+    public TravelPort search(String id) throws TravelPortNotFound {
+        try {
+            Integer portId = Integer.valueOf(id);
+            return get(portId);
+        } catch (Exception exception) {
+            TravelPort bestMatch = NameMatch.getBestMatch(rank(id, 2, false));
+
+            if (bestMatch != null) {
+                return bestMatch;
+            } else {
+                throw new TravelPortNotFound();
+            }
+        }
+    }
+
+    /**
+     * Searches a TravelPort at the Location.
+     *
+     * @param location the location to search for.
+     * @return search result.
+     */
+    public Collection<TravelPort> search(Location location) {
+        Collection<TravelPort> result = new LinkedList<TravelPort>();
+        search(WorldRegistry.getId(location.getWorld()), location.getBlockX(), location.getBlockY(),
+            location.getBlockZ(), result);
+        return result;
+    }
+
+    /**
+     * Searches the TravelPorts containing the passed block and adds them to the passed collection. Only the shard of
+     * the world and the default shard get searched.
+     *
+     * @param worldId the id of the world of the block, assigned by the WorldRegistry.
+     * @param x       the x coord of the block.
+     * @param y       the y coord of the block.
+     * @param z       the z coord of the block.
+     * @param result  collection which receives the TravelPorts containing the block.
+     */
+    public void search(int worldId, int x, int y, int z, Collection<TravelPort> result) {
+        FlatFileTravelPortContainer shard = worldShards.get(worldId);
+
+        if (shard != null) {
+            shard.search(worldId, x, y, z, result);
+        }
+        defaultShard.search(worldId, x, y, z, result);
+    }
+
+    /**
+     * Searches the TravelPorts which could contain blocks of the passed chunk.
+     *
+     * @param world  the id of the world.
+     * @param chunkX the x coord of the chunk.
+     * @param chunkZ the z coord of the chunk.
+     * @return the TravelPorts which bounding boxes overlap the chunk.
+     */
+    public TravelPort[] getPortsInChunk(int world, int chunkX, int chunkZ) {
+        FlatFileTravelPortContainer shard = worldShards.get(world);
+        TravelPort[] defaultPorts = defaultShard.getPortsInChunk(world, chunkX, chunkZ);
+
+        if (shard == null) {
+            return defaultPorts;
+        }
+
+        TravelPort[] shardPorts = shard.getPortsInChunk(world, chunkX, chunkZ);
+        if (defaultPorts.length == 0) {
+            return shardPorts;
+        }
+
+        TravelPort[] result = new TravelPort[shardPorts.length + defaultPorts.length];
+        System.arraycopy(shardPorts, 0, result, 0, shardPorts.length);
+        System.arraycopy(defaultPorts, 0, result, shardPorts.length, defaultPorts.length);
+        return result;
+    }
+
+    /**
+     * Calculates a lower bound of the distance between the passed location and the nearest TravelPort.
+     *
+     * @param location    the location to measure from.
+     * @param maxDistance the maximum distance to look for TravelPorts.
+     * @return the distance in blocks, or maxDistance if there is no TravelPort nearer.
+     */
+    public double getDistanceToNearestPort(Location location, double maxDistance) {
+        FlatFileTravelPortContainer shard = worldShards.get(WorldRegistry.getId(location.getWorld()));
+        double distance = defaultShard.getDistanceToNearestPort(location, maxDistance);
+
+        if (shard != null && distance > 0) {
+            distance = shard.getDistanceToNearestPort(location, distance);
+        }
+
+        return distance;
+    }
+
+    /**
+     * @return immutable snapshot of the areas of the TravelPorts, which could get read from any thread.
+     */
+    public AreaSnapshot getAreaSnapshot() {
+        int modificationCount = getModificationCount();
+
+        if (areaSnapshot == null || areaSnapshotModificationCount != modificationCount) {
+            areaSnapshot = new AreaSnapshot(getAll());
+            areaSnapshotModificationCount = modificationCount;
+        }
+
+        return areaSnapshot;
+    }
+
+    /**
+     * @return immutable snapshot of the TravelPorts of the loaded shards, which could get read from any thread.
+     */
+    public PortTable getPortTable() {
+        return portTable;
+    }
+
+    /**
+     * Searches the TravelPorts of the loaded shards.
+     *
+     * @param keyword could be a part of the name of the TravelPort to search.
+     * @return all TravelPorts matching the keyword.
+     */
+    public Collection<TravelPort> searchAll(String keyword) {
+        List<TravelPort> result = new LinkedList<TravelPort>();
+
+        for (FlatFileTravelPortContainer shard : shardNames.keySet()) {
+            result.addAll(shard.searchAll(keyword));
+        }
+
+        return result;
+    }
+
+    /**
+     * Searches the TravelPorts of the loaded shards, which names match the keyword best.
+     *
+     * @param keyword    the keyword to search for.
+     * @param maxResults the maximum number of results.
+     * @return the found TravelPorts, sorted from the best to the worst match.
+     */
+    public List<TravelPort> searchRanked(String keyword, int maxResults) {
+        List<TravelPort> result = new ArrayList<TravelPort>();
+
+        for (NameMatch match : rank(keyword, maxResults, true)) {
+            result.add(match.getPort());
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates a new TravelPort. (This will automatically creates an unique ID for it and adds it to implementation.)
+     * The TravelPort is held by the default shard, until it gets an area.
+     *
+     * @return the created TravelPort
+     */
+    public TravelPort create() {
+        TravelPort createdPort = new FlatFileTravelPort(this, idAllocator.allocate());
+        add(createdPort);
+        return createdPort;
+    }
+
+    /**
+     * Adds the passed travel port to the shard of its world.
+     *
+     * @param port the port to add.
+     */
+    public void add(TravelPort port) {
+        FlatFileTravelPortContainer shard = getShard(port);
+        shard.add(port);
+        register(port, shard);
+        idAllocator.markUsed(port.getId());
+        portTable = portTable.with(port, getModificationCount());
+    }
+
+    /**
+     * Removes the travel port, and unlink it before, when necessary.
+     *
+     * @param port the port to remove.
+     */
+    public void remove(TravelPort port) {
+        if (port.getTargetId() != null) {
+            try {
+                unlink(port);
+            } catch (InvalidLinkException exception) {
+                logger.severe("Internal unexpected error occurred! Seems to be a multithread problem");
+            }
+        }
+
+        FlatFileTravelPortContainer shard = getLoadedShard(port);
+        if (shard != null) {
+            shard.detach(port);
+            portShards.remove(port.getId());
+            storedShards.remove(port.getId());
+            idAllocator.release(port.getId());
+            indexDirty = true;
+            portTable = portTable.without(port.getId(), getModificationCount());
+        }
+    }
+
+    /**
+     * Called by the TravelPorts after their area got changed. Moves the TravelPort into the shard of its new world.
+     *
+     * @param port the port which area got changed.
+     */
+    public void onAreaChanged(TravelPort port) {
+        FlatFileTravelPortContainer shard = getLoadedShard(port);
+
+        if (shard != null && !moveIntoShard(port, shard)) {
+            shard.onAreaChanged(port);
+        }
+    }
+
+    /**
+     * Called by the TravelPorts after any of their other properties got changed. Moves the TravelPort into the shard
+     * of its new world, if its destination defines the world.
+     *
+     * @param port the port which got changed.
+     */
+    public void onPortChanged(TravelPort port) {
+        FlatFileTravelPortContainer shard = getLoadedShard(port);
+
+        if (shard != null && !moveIntoShard(port, shard)) {
+            shard.onPortChanged(port);
+        }
+    }
+
+    /**
+     * Links the passed TravelPorts.
+     *
+     * @param port1 the first port to link.
+     * @param port2 another port to link.
+     * @throws InvalidLinkException thrown when the ports are already linked.
+     */
+    public void link(TravelPort port1, TravelPort port2) throws InvalidLinkException {
+        if (port1.getTargetId() == null && port2.getTargetId() == null) {
+            port1.setTargetId(port2.getId());
+            port2.setTargetId(port1.getId());
+        } else {
+            throw new InvalidLinkException("Ports are already linked!");
+        }
+    }
+
+    /**
+     * Unlink the passed TravelPort
+     *
+     * @param port the port to unlink
+     * @throws InvalidLinkException thrown when port isn't linked to another.
+     */
+    public void unlink(TravelPort port) throws InvalidLinkException {
+        if (port.getTargetId() != null) {
+            try {
+                TravelPort anotherPort = get(port.getTargetId());
+                anotherPort.setTargetId(null);
+            } catch (TravelPortNotFound exception) {
+                logger.warning("TravelPort wasn't linked correctly, or its world isn't loaded!");
+            }
+
+            port.setTargetId(null);
+
+        } else {
+            throw new InvalidLinkException("Can't unlink ports, which aren't linked!");
+        }
+    }
+
+    /**
+     * @return number of TravelPorts of the loaded shards.
+     */
+    public int size() {
+        return portTable.size();
+    }
+
+    /**
+     * @return counter which gets increased every time TravelPorts get added, removed, renamed or their areas get
+     *         changed.
+     */
+    public int getModificationCount() {
+        int modificationCount = modificationBase;
+
+        for (FlatFileTravelPortContainer shard : shardNames.keySet()) {
+            modificationCount += shard.getModificationCount();
+        }
+
+        return modificationCount;
+    }
+
+    /**
+     * @return the server which holds the container.
+     */
+    public Server getServer() {
+        return server;
+    }
+
+    /**
+     * @return the plugin, which holds the container.
+     */
+    public TravelPlugin getPlugin() {
+        return plugin;
+    }
+
+    /**
+     * Loads the index, the default shard and the shards of the loaded worlds.
+     */
+    public void load() {
+        defaultShard = null;
+        worldShards.clear();
+        shardNames.clear();
+        portShards.clear();
+        storedShards.clear();
+        indexDirty = false;
+        ++modificationBase;
+
+        if (!shardDirectory.isDirectory() && !shardDirectory.mkdirs()) {
+            logger.severe(String.format("Couldn't create the directory '%s'!", shardDirectory.getPath()));
+        }
+
+        // Resolve the worlds of the areas and destinations to the loaded ones.
+        WorldRegistry.resolve(server.getWorlds());
+
+        loadIndex();
+
+        defaultShard = new FlatFileTravelPortContainer(plugin, defaultFile, this);
+        defaultShard.load();
+        shardNames.put(defaultShard, DEFAULT_SHARD);
+        for (TravelPort port : defaultShard.getAll()) {
+            register(port, defaultShard);
+        }
+
+        for (World world : server.getWorlds()) {
+            loadShard(WorldRegistry.getId(world));
+        }
+        idAllocator.reset(storedShards.keySet());
+        publish();
+
+        server.getLogger().info(
+            String.format("Loaded %d TravelPorts of %d worlds!", portShards.size(), worldShards.size()));
+    }
+
+    /**
+     * Loads the shards of all worlds, even if the worlds aren't loaded. Used for copying all TravelPorts.
+     */
+    public void loadAll() {
+        File[] files = shardDirectory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                int extension = name.lastIndexOf('.');
+
+                if (extension > 0 && !name.equals(INDEX_FILE) &&
+                    (name.endsWith(".csv") || name.endsWith(".dat") || name.endsWith(".journal"))) {
+                    loadShard(WorldRegistry.getId(name.substring(0, extension)));
+                }
+            }
+        }
+        publish();
+    }
+
+    /**
+     * Saves the changed TravelPorts of all loaded shards in the background.
+     */
+    public void save() {
+        for (FlatFileTravelPortContainer shard : shardNames.keySet()) {
+            shard.save();
+        }
+        saveIndex(false);
+    }
+
+    /**
+     * Saves the changed TravelPorts of all loaded shards on the calling thread.
+     */
+    public void saveNow() {
+        for (FlatFileTravelPortContainer shard : shardNames.keySet()) {
+            shard.saveNow();
+        }
+        saveIndex(true);
+    }
+
+    /**
+     * Appends the changes since the last call to the journals of the shards.
+     */
+    public void flushChanges() {
+        for (FlatFileTravelPortContainer shard : shardNames.keySet()) {
+            shard.flushChanges();
+        }
+        saveIndex(false);
+    }
+
+    /**
+     * Checks if the files of the loaded shards got changed by another program, and applies the changed TravelPorts.
+     * The index doesn't get watched.
+     */
+    public void checkForChanges() {
+        for (FlatFileTravelPortContainer shard : shardNames.keySet()) {
+            shard.checkForChanges();
+        }
+    }
+
+    /**
+     * Appends the remaining changes to the journals and waits until all saves got written.
+     */
+    public void flush() {
+        for (FlatFileTravelPortContainer shard : shardNames.keySet()) {
+            shard.flush();
+        }
+        saveIndex(true);
+    }
+
+    /**
+     * Writes the remaining changes and waits until all saves got written.
+     */
+    public void close() {
+        for (FlatFileTravelPortContainer shard : shardNames.keySet()) {
+            shard.close();
+        }
+        saveIndex(true);
+    }
+
+    /**
+     * Called after a world got loaded. Loads the shard of the world.
+     *
+     * @param world the loaded world.
+     */
+    public void onWorldLoaded(World world) {
+        if (defaultShard != null) {
+            loadShard(WorldRegistry.getId(world));
+            publish();
+        }
+    }
+
+    /**
+     * Called before a world gets unloaded. Writes the shard of the world and drops its TravelPorts.
+     *
+     * @param world the world to unload.
+     */
+    public void onWorldUnloaded(World world) {
+        FlatFileTravelPortContainer shard = worldShards.remove(WorldRegistry.getId(world));
+
+        if (shard != null) {
+            shard.saveNow();
+            shard.close();
+            saveIndex(false);
+
+            for (TravelPort port : shard.getAll()) {
+                portShards.remove(port.getId());
+            }
+            shardNames.remove(shard);
+            modificationBase += shard.getModificationCount() + 1;
+            publish();
+        }
+    }
+
+    /**
+     * Loads the shard of the passed world, if it isn't loaded yet. TravelPorts of the world, which are held by other
+     * shards, get moved into it.
+     *
+     * @param worldId the id of the world.
+     */
+    private void loadShard(int worldId) {
+        if (worldShards.containsKey(worldId)) {
+            return;
+        }
+
+        String name = WorldRegistry.getName(worldId).toLowerCase();
+        FlatFileTravelPortContainer shard =
+            new FlatFileTravelPortContainer(plugin, new File(shardDirectory, name + ".csv"), this);
+        if (shard.hasStoredPorts()) {
+            shard.load();
+        }
+
+        worldShards.put(worldId, shard);
+        shardNames.put(shard, name);
+        ++modificationBase;
+
+        List<TravelPort> movedPorts = new ArrayList<TravelPort>();
+        for (TravelPort port : shard.getAll()) {
+            if (portShards.containsKey(port.getId())) {
+                logger.warning(String.format("TravelPort %d is stored in several shards! Using the one of '%s'.",
+                    port.getId(), name));
+            }
+            register(port, shard);
+            if (getShard(port) != shard) {
+                movedPorts.add(port);
+            }
+        }
+        for (TravelPort port : defaultShard.getAll()) {
+            if (getShard(port) == shard) {
+                movedPorts.add(port);
+            }
+        }
+
+        for (TravelPort port : movedPorts) {
+            moveIntoShard(port, portShards.get(port.getId()));
+        }
+    }
+
+    /**
+     * Merges the best matches of the loaded shards. Names with typos only get searched, if no shard has a name
+     * containing the keyword.
+     *
+     * @param keyword    the keyword to search for.
+     * @param maxResults the maximum number of results.
+     * @param typos      flag if names which differ by a few typos should get found, when no name contains the keyword.
+     * @return the matches, sorted from the best to the worst.
+     */
+    private List<NameMatch> rank(String keyword, int maxResults, boolean typos) {
+        List<NameMatch> matches = new ArrayList<NameMatch>();
+
+        for (FlatFileTravelPortContainer shard : shardNames.keySet()) {
+            matches.addAll(shard.rank(keyword, maxResults, false));
+        }
+        if (typos && matches.isEmpty()) {
+            for (FlatFileTravelPortContainer shard : shardNames.keySet()) {
+                matches.addAll(shard.rank(keyword, maxResults, true));
+            }
+        }
+
+        Collections.sort(matches);
+        return matches.size() > maxResults ? matches.subList(0, maxResults) : matches;
+    }
+
+    /**
+     * Replaces the snapshot of the TravelPorts with the TravelPorts of the loaded shards. Only used when whole shards
+     * get loaded or unloaded; single TravelPorts get added to or removed from the snapshot without merging the shards.
+     * Moving a TravelPort into another shard doesn't change the snapshot, so it doesn't need to get replaced then.
+     */
+    private void publish() {
+        List<TravelPort> ports = new ArrayList<TravelPort>();
+
+        for (FlatFileTravelPortContainer shard : shardNames.keySet()) {
+            ports.addAll(shard.getAll());
+        }
+
+        portTable = PortTable.create(ports, getModificationCount());
+    }
+
+    /**
+     * Moves the passed TravelPort into the shard of its world, if it isn't held by it already.
+     *
+     * @param port  the port to move.
+     * @param shard the shard which holds the port now.
+     * @return true, if the TravelPort got moved.
+     */
+    private boolean moveIntoShard(TravelPort port, FlatFileTravelPortContainer shard) {
+        FlatFileTravelPortContainer targetShard = getShard(port);
+
+        if (targetShard != shard) {
+            shard.detach(port);
+            targetShard.add(port);
+            register(port, targetShard);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Registers the passed TravelPort as held by the passed shard. A TravelPort with the same id gets removed from
+     * the shard, which held it before.
+     *
+     * @param port  the port to register.
+     * @param shard the shard which holds the port.
+     */
+    private void register(TravelPort port, FlatFileTravelPortContainer shard) {
+        FlatFileTravelPortContainer previousShard = portShards.put(port.getId(), shard);
+        if (previousShard != null && previousShard != shard) {
+            TravelPort previousPort = previousShard.find(port.getId());
+            if (previousPort != null) {
+                previousShard.detach(previousPort);
+            }
+        }
+
+        String name = shardNames.get(shard);
+        if (!name.equals(storedShards.put(port.getId(), name))) {
+            indexDirty = true;
+        }
+    }
+
+    /**
+     * @param port the port to look up.
+     * @return the loaded shard which holds the passed TravelPort, or null if it isn't held by any shard.
+     */
+    private FlatFileTravelPortContainer getLoadedShard(TravelPort port) {
+        // TravelPorts which get parsed on other threads aren't contained by the snapshot, so they don't get looked up.
+        if (portTable.get(port.getId()) != port) {
+            return null;
+        }
+
+        FlatFileTravelPortContainer shard = portShards.get(port.getId());
+        return shard != null && shard.contains(port) ? shard : null;
+    }
+
+    /**
+     * @param port the port to look up.
+     * @return the shard which should hold the passed TravelPort. That's the default shard, if its world isn't loaded.
+     */
+    private FlatFileTravelPortContainer getShard(TravelPort port) {
+        FlatFileTravelPortContainer shard = worldShards.get(getWorldId(port));
+        return shard != null ? shard : defaultShard;
+    }
+
+    /**
+     * @param port the port to look up.
+     * @return the id of the world of the area, or of the destination, if there is no area.
+     */
+    private static int getWorldId(TravelPort port) {
+        Area area = port.getArea();
+        BoundingBox box = area != null ? area.getBoundingBox() : null;
+        Destination destination = port.getDestination();
+
+        if (box != null) {
+            return box.getWorldId();
+        } else if (destination != null) {
+            return destination.getWorldId();
+        } else {
+            return WorldRegistry.UNKNOWN_WORLD;
+        }
+    }
+
+    /**
+     * Loads the index, which contains the ids of the TravelPorts of all shards.
+     */
+    private void loadIndex() {
+        File indexFile = new File(shardDirectory, INDEX_FILE);
+        if (!indexFile.exists()) {
+            return;
+        }
+
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(indexFile));
+            CsvLineParser parser = new CsvLineParser();
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                try {
+                    parser.parse(line);
+                    String name = parser.getString(1);
+                    storedShards.put(parser.getInt(0), name != null ? name : DEFAULT_SHARD);
+                } catch (NumberFormatException exception) {
+                    logger.warning(String.format("Invalid line in the index of the TravelPorts! '%s'", line));
+                }
+            }
+            reader.close();
+        } catch (IOException exception) {
+            logger.severe("Error occurred when loading the index of the TravelPorts!");
+            logger.severe(exception.getMessage());
+        }
+    }
+
+    /**
+     * Saves the index, if it got changed.
+     *
+     * @param now true, if the index should get written on the calling thread.
+     */
+    private void saveIndex(boolean now) {
+        if (indexDirty) {
+            List<String> lines = new ArrayList<String>(storedShards.size());
+            for (Map.Entry<Integer, String> entry : storedShards.entrySet()) {
+                lines.add(entry.getKey() + ";" + entry.getValue());
+            }
+            indexDirty = false;
+
+            if (now) {
+                indexWriter.writeNow(lines);
+            } else {
+                indexWriter.write(lines);
+            }
+        } else if (now) {
+            indexWriter.flush();
+        }
+    }
+}
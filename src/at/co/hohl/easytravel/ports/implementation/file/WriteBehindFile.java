@@ -0,0 +1,359 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.ports.implementation.file;
+
+import org.bukkit.plugin.Plugin;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Writes lines or binary data into a file on another thread. Repeated writes get merged, so only the latest content
+ * gets written. The content gets written into a temporary file first, which replaces the file after it is synced to
+ * the disk. So the file never contains a half written state.
+ * <p/>
+ * Changes between two writes could get appended to a journal file. The journal gets deleted after the next write of
+ * the file, because the written content contains all the changes.
+ *
+ * @author Michael Hohl
+ */
+class WriteBehindFile {
+    /**
+     * Plugin which holds the instance.
+     */
+    private final Plugin plugin;
+
+    /**
+     * The file to write.
+     */
+    private final File file;
+
+    /**
+     * Temporary file, which replaces the file after writing.
+     */
+    private final File tempFile;
+
+    /**
+     * Journal file, which receives the appended records.
+     */
+    private final File journalFile;
+
+    /**
+     * Logger used for outputting errors.
+     */
+    private final Logger logger;
+
+    /**
+     * Lock which is held while writing the file.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * Lines which are waiting for getting written. Guarded by this.
+     */
+    private List<String> pendingLines;
+
+    /**
+     * Binary data which is waiting for getting written, instead of lines. Guarded by this.
+     */
+    private byte[] pendingData;
+
+    /**
+     * Records which are waiting for getting appended to the journal. Guarded by this.
+     */
+    private List<String> pendingRecords = new ArrayList<String>();
+
+    /**
+     * Flag if there is a write task scheduled. Guarded by this.
+     */
+    private boolean writeScheduled;
+
+    /**
+     * Flag if pending content is getting written right now. Guarded by this.
+     */
+    private boolean writing;
+
+    /**
+     * Listener which gets notified after lines got written into the file, or null.
+     */
+    private volatile WriteListener writeListener;
+
+    /**
+     * Writes the pending content on another thread.
+     */
+    private final Runnable writeTask = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Creates a new WriteBehindFile.
+     *
+     * @param plugin      the plugin which holds the instance.
+     * @param file        the file to write.
+     * @param journalFile the journal file, which gets deleted after every write of the file.
+     */
+    public WriteBehindFile(Plugin plugin, File file, File journalFile) {
+        this.plugin = plugin;
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+        this.journalFile = journalFile;
+        this.logger = plugin.getServer().getLogger();
+    }
+
+    /**
+     * Sets the listener, which gets notified after lines got written into the file.
+     *
+     * @param writeListener the listener, or null to remove it.
+     */
+    public void setWriteListener(WriteListener writeListener) {
+        this.writeListener = writeListener;
+    }
+
+    /**
+     * Writes the passed lines on another thread. Replaces the lines of previous calls, which aren't written yet.
+     *
+     * @param lines the lines to write. Must not be changed afterwards.
+     */
+    public void write(List<String> lines) {
+        synchronized (this) {
+            pendingLines = lines;
+            pendingData = null;
+            pendingRecords.clear(); // Contained by the lines.
+        }
+
+        scheduleWrite();
+    }
+
+    /**
+     * Writes the passed data on another thread. Replaces the content of previous calls, which isn't written yet.
+     *
+     * @param data the data to write. Must not be changed afterwards.
+     */
+    public void write(byte[] data) {
+        synchronized (this) {
+            pendingLines = null;
+            pendingData = data;
+            pendingRecords.clear(); // Contained by the data.
+        }
+
+        scheduleWrite();
+    }
+
+    /**
+     * Appends the passed records to the journal on another thread.
+     *
+     * @param records the records to append.
+     */
+    public void append(List<String> records) {
+        synchronized (this) {
+            pendingRecords.addAll(records);
+        }
+
+        scheduleWrite();
+    }
+
+    /**
+     * Writes the passed lines on the calling thread. Replaces the lines of previous calls, which aren't written yet.
+     *
+     * @param lines the lines to write.
+     */
+    public void writeNow(List<String> lines) {
+        synchronized (this) {
+            pendingLines = lines;
+            pendingData = null;
+            pendingRecords.clear(); // Contained by the lines.
+        }
+
+        flush();
+    }
+
+    /**
+     * Writes the passed data on the calling thread. Replaces the content of previous calls, which isn't written yet.
+     *
+     * @param data the data to write.
+     */
+    public void writeNow(byte[] data) {
+        synchronized (this) {
+            pendingLines = null;
+            pendingData = data;
+            pendingRecords.clear(); // Contained by the data.
+        }
+
+        flush();
+    }
+
+    /**
+     * Appends the passed records to the journal on the calling thread.
+     *
+     * @param records the records to append.
+     */
+    public void appendNow(List<String> records) {
+        synchronized (this) {
+            pendingRecords.addAll(records);
+        }
+
+        flush();
+    }
+
+    /**
+     * Writes the pending content on the calling thread, or waits until it got written by the write task.
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            while (true) {
+                List<String> lines, records;
+                byte[] data;
+                synchronized (this) {
+                    lines = pendingLines;
+                    data = pendingData;
+                    records = pendingRecords;
+                    pendingLines = null;
+                    pendingData = null;
+                    pendingRecords = new ArrayList<String>();
+
+                    if (lines == null && data == null && records.isEmpty()) {
+                        writeScheduled = false;
+                        writing = false;
+                        return;
+                    }
+                    writing = true;
+                }
+
+                // The records got appended after the content, so they need to get written afterwards.
+                if ((lines != null || data != null) && writeFile(lines, data)) {
+                    if (journalFile.exists() && !journalFile.delete()) {
+                        logger.warning(String.format("Couldn't delete '%s'!", journalFile.getPath()));
+                    }
+
+                    WriteListener listener = writeListener;
+                    if (lines != null && listener != null) {
+                        listener.onLinesWritten(lines, file.lastModified(), file.length());
+                    }
+                }
+                if (!records.isEmpty()) {
+                    appendJournal(records);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true, if there is no pending content and nothing gets written right now.
+     */
+    public synchronized boolean isIdle() {
+        return !writeScheduled && !writing && pendingLines == null && pendingData == null && pendingRecords.isEmpty();
+    }
+
+    /**
+     * Schedules the write task, if it isn't scheduled yet.
+     */
+    private void scheduleWrite() {
+        boolean scheduleWrite;
+        synchronized (this) {
+            scheduleWrite = !writeScheduled;
+            writeScheduled = true;
+        }
+
+        if (scheduleWrite) {
+            plugin.getServer().getScheduler().scheduleAsyncDelayedTask(plugin, writeTask);
+        }
+    }
+
+    /**
+     * Writes the passed lines or data into the temporary file and replaces the file with it.
+     *
+     * @param lines the lines to write, or null if data should get written.
+     * @param data  the data to write, if there are no lines.
+     * @return true, if the file got written successfully.
+     */
+    private boolean writeFile(List<String> lines, byte[] data) {
+        try {
+            FileOutputStream output = new FileOutputStream(tempFile);
+            try {
+                if (lines != null) {
+                    BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output));
+                    for (String line : lines) {
+                        writer.append(line);
+                        writer.newLine();
+                    }
+                    writer.flush();
+                } else {
+                    output.write(data);
+                }
+                output.getFD().sync();
+            } finally {
+                output.close();
+            }
+
+            // Renaming doesn't replace existing files on every platform.
+            if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+                throw new IOException(String.format("Couldn't replace '%s'!", file.getPath()));
+            }
+
+            return true;
+        } catch (IOException exception) {
+            logger.severe("Error occurred during saving TravelPorts!");
+            logger.severe(exception.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Appends the passed records to the journal and syncs it to the disk.
+     *
+     * @param records the records to append.
+     */
+    private void appendJournal(List<String> records) {
+        try {
+            FileOutputStream output = new FileOutputStream(journalFile, true);
+            try {
+                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output));
+                for (String record : records) {
+                    writer.append(record);
+                    writer.newLine();
+                }
+                writer.flush();
+                output.getFD().sync();
+            } finally {
+                output.close();
+            }
+        } catch (IOException exception) {
+            logger.severe("Error occurred during writing the journal of the TravelPorts!");
+            logger.severe(exception.getMessage());
+        }
+    }
+
+    /**
+     * Gets notified after lines got written into the file.
+     */
+    interface WriteListener {
+        /**
+         * Called on the writing thread, after the file got replaced by the passed lines.
+         *
+         * @param lines        the written lines.
+         * @param lastModified the modification time of the written file.
+         * @param length       the length of the written file.
+         */
+        void onLinesWritten(List<String> lines, long lastModified, long length);
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.ports.implementation.sql;
+
+import at.co.hohl.easytravel.TravelPermissions;
+import at.co.hohl.easytravel.ports.Area;
+import at.co.hohl.easytravel.ports.Destination;
+import at.co.hohl.easytravel.ports.TravelPort;
+import at.co.hohl.easytravel.ports.TravelPortNotFound;
+import at.co.hohl.easytravel.ports.depart.Departure;
+import at.co.hohl.easytravel.ports.depart.ManualDeparture;
+import at.co.hohl.easytravel.ports.implementation.AbstractTravelPort;
+import at.co.hohl.permissions.PermissionHandler;
+import org.bukkit.entity.Player;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Represents a TravelPort stored inside a database. Only the id and the area are always kept in memory, because they
+ * are needed for locating the players. The other properties get loaded from the database, when they are used first,
+ * and get unloaded again by the container, when the TravelPort wasn't used for a long time.
+ *
+ * @author Michael Hohl
+ */
+public class SqlTravelPort extends AbstractTravelPort {
+    /**
+     * Unique ID of the Travel Port.
+     */
+    private final Integer id;
+
+    /**
+     * Container which holds the instance.
+     */
+    private final SqlTravelPortContainer sqlContainer;
+
+    /**
+     * Area of the port.
+     */
+    private Area area;
+
+    /**
+     * The properties of the port, or null if they aren't loaded.
+     */
+    private Details details;
+
+    /**
+     * Creates a new travel port.
+     *
+     * @param container container which holds the instance.
+     * @param id        id used for this port.
+     */
+    public SqlTravelPort(SqlTravelPortContainer container, Integer id) {
+        super(container);
+
+        this.sqlContainer = container;
+        this.id = id;
+    }
+
+    /**
+     * Sets who is allowed to use this TravelPort. If set to null, everybody is allowed to use.
+     *
+     * @param allowed list of Strings with names of groups and players.
+     */
+    @Override
+    public void setAllowed(List<String> allowed) {
+        getDetails().allowed = allowed;
+        container.onPortChanged(this);
+    }
+
+    /**
+     * @return true, if this TravelPort is allowed to everybody.
+     */
+    @Override
+    public boolean isAllowedToEverybody() {
+        List<String> allowed = getDetails().allowed;
+        return allowed == null || allowed.size() == 0;
+    }
+
+    /**
+     * Checks if the players is allowed to use the TravelPort.
+     *
+     * @param permissions needed to check if the user is in group.
+     * @param player      the players to check.
+     * @return true, if the players is allowed to.
+     */
+    @Override
+    public boolean isAllowed(PermissionHandler permissions, Player player) {
+        if (permissions.hasPermission(player, TravelPermissions.DEPART)) {
+            List<String> allowed = getDetails().allowed;
+
+            if (isAllowedToEverybody() || allowed.contains(player.getName())) {
+                return true;
+            } else {
+                for (String group : permissions.getGroups(player)) {
+                    if (allowed.contains(group)) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Allows this TravelPort to everybody.
+     */
+    @Override
+    public void setAllowedToEverybody() {
+        getDetails().allowed.clear();
+        container.onPortChanged(this);
+    }
+
+    /**
+     * Adds somebody to the allowed list.
+     *
+     * @param allowed the one to add.
+     */
+    @Override
+    public void addAllowed(String allowed) {
+        getDetails().allowed.add(allowed.trim());
+        container.onPortChanged(this);
+    }
+
+    /**
+     * Removes someone from the allowed list. If the allowed list is empty, everybody is allowed to use!
+     *
+     * @param allowed the one to remove.
+     */
+    @Override
+    public void removeAllowed(String allowed) {
+        getDetails().allowed.remove(allowed);
+        container.onPortChanged(this);
+    }
+
+    /**
+     * @return the departure.
+     */
+    @Override
+    public Departure getDeparture() {
+        return getDetails().departure;
+    }
+
+    /**
+     * Sets the departure.
+     *
+     * @param departure the departure to set.
+     */
+    @Override
+    public void setDeparture(Departure departure) {
+        getDetails().departure = departure;
+        container.onPortChanged(this);
+    }
+
+    /**
+     * @return the unique id of the travel port.
+     */
+    @Override
+    public final Integer getId() {
+        return id;
+    }
+
+    /**
+     * @return area of the port.
+     */
+    @Override
+    public Area getArea() {
+        return area;
+    }
+
+    /**
+     * Sets the area of the port.
+     *
+     * @param area the area to set.
+     */
+    @Override
+    public void setArea(Area area) {
+        this.area = area;
+        container.onAreaChanged(this);
+    }
+
+    /**
+     * @return the destination
+     */
+    @Override
+    public Destination getDestination() {
+        return getDetails().destination;
+    }
+
+    /**
+     * Sets the destination.
+     *
+     * @param destination the destination to set.
+     */
+    @Override
+    public void setDestination(Destination destination) {
+        getDetails().destination = destination;
+        container.onPortChanged(this);
+    }
+
+    /**
+     * @return the name of the travel point.
+     */
+    @Override
+    public final String getName() {
+        return getDetails().name;
+    }
+
+    /**
+     * Sets the name of the TravelPoint.
+     *
+     * @param name the name to set.
+     */
+    @Override
+    public final void setName(String name) {
+        getDetails().name = name;
+        container.onPortChanged(this);
+    }
+
+    /**
+     * @return the id of the target.
+     */
+    @Override
+    public final Integer getTargetId() {
+        return getDetails().targetId;
+    }
+
+    /**
+     * @return the target or null if not linked to any.
+     */
+    @Override
+    public TravelPort getTarget() {
+        try {
+            return container.get(getTargetId());
+        } catch (TravelPortNotFound e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sets the id of the target.
+     *
+     * @param targetId the id of the target.
+     */
+    @Override
+    public final void setTargetId(Integer targetId) {
+        getDetails().targetId = targetId;
+        container.onPortChanged(this);
+    }
+
+    /**
+     * @return the price it costs to travel.
+     */
+    @Override
+    public final double getPrice() {
+        return getDetails().price;
+    }
+
+    /**
+     * Sets the price it costs to travel.
+     *
+     * @param price the price it costs to travel
+     */
+    @Override
+    public final void setPrice(double price) {
+        getDetails().price = price;
+        container.onPortChanged(this);
+    }
+
+    /**
+     * @return the password needed to travel with this port.
+     */
+    @Override
+    public final String getPassword() {
+        return getDetails().password;
+    }
+
+    /**
+     * @return true if the TravelPort is locked with a password.
+     */
+    @Override
+    public final boolean isPasswordLocked() {
+        return getPassword() != null;
+    }
+
+    /**
+     * @param password sets the password needed to travel
+     */
+    @Override
+    public final void setPassword(String password) {
+        getDetails().password = password;
+        container.onPortChanged(this);
+    }
+
+    /**
+     * @return a list of allowed groups and players. If null everybody is allowed to use that TravelPort.
+     */
+    @Override
+    public List<String> getAllowed() {
+        return getDetails().allowed;
+    }
+
+    /**
+     * @return owner of the port.
+     */
+    @Override
+    public String getOwner() {
+        return getDetails().owner;
+    }
+
+    /**
+     * Sets the owner of the port.
+     *
+     * @param owner the name of the owner to set.
+     */
+    @Override
+    public void setOwner(String owner) {
+        getDetails().owner = owner;
+        container.onPortChanged(this);
+    }
+
+    /**
+     * @return the loaded properties of the port, or null if they aren't loaded.
+     */
+    Details getLoadedDetails() {
+        return details;
+    }
+
+    /**
+     * Sets the properties of the port. Called by the container, after loading them or before unloading them.
+     *
+     * @param details the properties to set, or null to unload them.
+     */
+    void setLoadedDetails(Details details) {
+        this.details = details;
+    }
+
+    /**
+     * @return the properties of the port. Loads them from the database, if they aren't loaded yet.
+     */
+    private Details getDetails() {
+        Details currentDetails = details;
+
+        if (currentDetails != null) {
+            sqlContainer.onDetailsUsed(this);
+            return currentDetails;
+        } else {
+            return sqlContainer.loadDetails(this);
+        }
+    }
+
+    /**
+     * Properties of a TravelPort, which are only kept in memory while the TravelPort is used.
+     */
+    static final class Details {
+        /**
+         * Name of the travel port.
+         */
+        String name;
+
+        /**
+         * The destination.
+         */
+        Destination destination;
+
+        /**
+         * The departure handler.
+         */
+        Departure departure;
+
+        /**
+         * Name of the target of this port.
+         */
+        Integer targetId;
+
+        /**
+         * Password for the travel port.
+         */
+        String password;
+
+        /**
+         * Owner of the travel port.
+         */
+        String owner;
+
+        /**
+         * List of allowed Groups and Players.
+         */
+        List<String> allowed = new LinkedList<String>();
+
+        /**
+         * The price to travel
+         */
+        double price;
+
+        /**
+         * Creates the properties of a new TravelPort.
+         *
+         * @param port the port which holds the properties.
+         */
+        Details(TravelPort port) {
+            departure = new ManualDeparture(port);
+        }
+    }
+}
@@ -0,0 +1,1121 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.ports.implementation.sql;
+
+import at.co.hohl.easytravel.TravelPlugin;
+import at.co.hohl.easytravel.ports.*;
+import at.co.hohl.easytravel.ports.depart.DepartureHelper;
+import at.co.hohl.easytravel.ports.implementation.sql.SqlTravelPort.Details;
+import at.co.hohl.easytravel.ports.index.AreaSnapshot;
+import at.co.hohl.easytravel.ports.index.ChunkSpatialIndex;
+import at.co.hohl.easytravel.ports.index.IdAllocator;
+import at.co.hohl.easytravel.ports.index.NameMatch;
+import at.co.hohl.easytravel.ports.index.PortTable;
+import at.co.hohl.easytravel.ports.index.SpatialIndex;
+import at.co.hohl.easytravel.ports.index.SpatialIndexHelper;
+import at.co.hohl.utils.StringHelper;
+import at.co.hohl.utils.storage.SyntaxException;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+
+import java.io.File;
+import java.sql.*;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Container for TravelPorts, which are stored inside an embedded SQLite database. Only the ids and the areas of the
+ * TravelPorts are kept in memory all the time, so the players could get located without accessing the database. The
+ * other properties get loaded when they are used and are kept in a cache of limited size.
+ * <p/>
+ * Changes get collected and written in a single transaction, when flushChanges() gets called.
+ *
+ * @author Michael Hohl
+ */
+public class SqlTravelPortContainer implements TravelPortContainer {
+    /**
+     * Default number of TravelPorts, which properties are kept in memory.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+
+    // Statements
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS travel_ports (" +
+        "id INTEGER PRIMARY KEY, name TEXT, name_key TEXT, target INTEGER, owner TEXT, allowed TEXT, " +
+        "password TEXT, price REAL NOT NULL DEFAULT 0, area TEXT, destination TEXT, departure TEXT)";
+    private static final String CREATE_NAME_INDEX =
+        "CREATE INDEX IF NOT EXISTS travel_ports_name ON travel_ports (name_key)";
+    private static final String SELECT_AREAS = "SELECT id, area FROM travel_ports";
+    private static final String SELECT_DETAILS = "SELECT name, target, owner, allowed, password, price, " +
+        "destination, departure FROM travel_ports WHERE id = ?";
+    private static final String SELECT_BY_NAME = "SELECT id FROM travel_ports WHERE name_key LIKE ? ESCAPE '!'";
+    private static final String SELECT_BY_NAME_PREFIX = "SELECT id FROM travel_ports " +
+        "WHERE name_key >= ? AND name_key < ? ORDER BY length(name_key), id LIMIT ?";
+    private static final String SELECT_BY_NAME_SUBSTRING = SELECT_BY_NAME + " AND NOT (name_key >= ? AND " +
+        "name_key < ?) ORDER BY CASE WHEN name_key LIKE ? ESCAPE '!' THEN 0 ELSE 1 END, length(name_key), id LIMIT ?";
+    private static final String INSERT_PORT = "INSERT OR REPLACE INTO travel_ports (id, name, name_key, target, " +
+        "owner, allowed, password, price, area, destination, departure) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_AREA = "UPDATE travel_ports SET area = ? WHERE id = ?";
+    private static final String DELETE_PORT = "DELETE FROM travel_ports WHERE id = ?";
+    private static final String DELETE_ALL = "DELETE FROM travel_ports";
+
+    /**
+     * The server which holds the plugin.
+     */
+    private final Server server;
+
+    /**
+     * Plugin which holds the container.
+     */
+    private final TravelPlugin plugin;
+
+    /**
+     * The file of the database.
+     */
+    private final File databaseFile;
+
+    /**
+     * Logger used for outputting debug information.
+     */
+    private final Logger logger;
+
+    /**
+     * Maximum number of TravelPorts, which properties are kept in memory.
+     */
+    private final int cacheSize;
+
+    /**
+     * Contains all travel ports. Only used by the thread which changes the TravelPorts.
+     */
+    private final Map<Integer, SqlTravelPort> travelPorts = new HashMap<Integer, SqlTravelPort>();
+
+    /**
+     * Snapshot of the travel ports, which gets replaced every time TravelPorts get added or removed. Read by the
+     * other threads without locking.
+     */
+    private volatile PortTable portTable = PortTable.EMPTY;
+
+    /**
+     * TravelPorts which properties are loaded, in the order they got used. Guarded by this.
+     */
+    private final Map<Integer, SqlTravelPort> loadedPorts = new LinkedHashMap<Integer, SqlTravelPort>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, SqlTravelPort> eldest) {
+            if (size() > cacheSize) {
+                unloadDetails(eldest.getValue());
+                return true;
+            } else {
+                return false;
+            }
+        }
+    };
+
+    /**
+     * TravelPorts which got changed since the last write, mapped by their ids. Holds the TravelPorts themselves, so
+     * the write doesn't depend on the published snapshot, which could be outdated while many TravelPorts get added.
+     * Guarded by this.
+     */
+    private final Map<Integer, SqlTravelPort> dirtyPorts = new HashMap<Integer, SqlTravelPort>();
+
+    /**
+     * Ids of the TravelPorts, which got removed since the last write. Guarded by this.
+     */
+    private final Set<Integer> removedPorts = new HashSet<Integer>();
+
+    /**
+     * Hands out the ids of created TravelPorts.
+     */
+    private final IdAllocator idAllocator;
+
+    /**
+     * Index used for searching TravelPorts by location.
+     */
+    private final SpatialIndex spatialIndex;
+
+    /**
+     * Counter which gets increased on every change of the TravelPorts or their areas.
+     */
+    private int modificationCount;
+
+    /**
+     * Last created snapshot of the areas.
+     */
+    private AreaSnapshot areaSnapshot;
+
+    /**
+     * Modification count, when the last snapshot of the areas got created.
+     */
+    private int areaSnapshotModificationCount;
+
+    /**
+     * Connection to the database. Null until the TravelPorts got loaded.
+     */
+    private Connection connection;
+
+    // Prepared statements
+    private PreparedStatement selectDetails;
+    private PreparedStatement selectByName;
+    private PreparedStatement selectByNamePrefix;
+    private PreparedStatement selectByNameSubstring;
+    private PreparedStatement insertPort;
+    private PreparedStatement updateArea;
+    private PreparedStatement deletePort;
+
+    /**
+     * Creates a new container for TravelPorts.
+     *
+     * @param plugin       the plugin which holds the instance.
+     * @param databaseFile the file of the database.
+     */
+    public SqlTravelPortContainer(TravelPlugin plugin, File databaseFile) {
+        this.databaseFile = databaseFile;
+        this.logger = plugin.getLogger();
+        this.server = plugin.getServer();
+        this.plugin = plugin;
+        this.cacheSize = Math.max(1, plugin.getConfig().getInt("sql-cache-size", DEFAULT_CACHE_SIZE));
+        this.spatialIndex = SpatialIndexHelper.create(plugin.getConfig().getString("spatial-index", "chunk"),
+            plugin.getConfig().getInt("index-cell-size", ChunkSpatialIndex.DEFAULT_CELL_SIZE));
+        this.idAllocator =
+            new IdAllocator(plugin.getConfig().getInt("id-quarantine", IdAllocator.DEFAULT_QUARANTINE) * 1000L);
+    }
+
+    /**
+     * Gets the travel port with the passed id.
+     *
+     * @param id the id of the travel port to get.
+     * @return the travel port.
+     * @throws TravelPortNotFound thrown when there isn't any port with the passed id.
+     */
+    public TravelPort get(Integer id) throws TravelPortNotFound {
+        TravelPort port = portTable.get(id);
+
+        if (port != null) {
+            return port;
+        } else {
+            throw new TravelPortNotFound();
+        }
+    }
+
+    /**
+     * @return unmodifiable snapshot of the TravelPorts.
+     */
+    public Collection<TravelPort> getAll() {
+        return portTable.getAll();
+    }
+
+    /**
+     * Searches a TravelPort. If the id isn't a number, the TravelPort which name matches best is used.
+     *
+     * @param id could be a part of the name or the id.
+     * @return the founded TravelPort.
+     * @throws TravelPortNotFound thrown when there is no match, or several names match equally well.
+     */
+    public TravelPort search(String id) throws TravelPortNotFound {
+        try {
+            Integer portId = Integer.valueOf(id);
+            return get(portId);
+        } catch (Exception exception) {
+            TravelPort bestMatch = NameMatch.getBestMatch(rankByName(id, 2, false));
+
+            if (bestMatch != null) {
+                return bestMatch;
+            } else {
+                throw new TravelPortNotFound();
+            }
+        }
+    }
+
+    /**
+     * Searches a TravelPort at the Location.
+     *
+     * @param location the location to search for.
+     * @return search result.
+     */
+    public Collection<TravelPort> search(Location location) {
+        Collection<TravelPort> result = new LinkedList<TravelPort>();
+        spatialIndex.search(location, result);
+        return result;
+    }
+
+    /**
+     * Searches the TravelPorts containing the passed block and adds them to the passed collection.
+     *
+     * @param worldId the id of the world of the block, assigned by the WorldRegistry.
+     * @param x       the x coord of the block.
+     * @param y       the y coord of the block.
+     * @param z       the z coord of the block.
+     * @param result  collection which receives the TravelPorts containing the block.
+     */
+    public void search(int worldId, int x, int y, int z, Collection<TravelPort> result) {
+        spatialIndex.search(worldId, x, y, z, result);
+    }
+
+    /**
+     * Searches the TravelPorts which could contain blocks of the passed chunk.
+     *
+     * @param world  the id of the world.
+     * @param chunkX the x coord of the chunk.
+     * @param chunkZ the z coord of the chunk.
+     * @return the TravelPorts which bounding boxes overlap the chunk.
+     */
+    public TravelPort[] getPortsInChunk(int world, int chunkX, int chunkZ) {
+        BoundingBox chunk = new BoundingBox(world, chunkX << 4, Integer.MIN_VALUE, chunkZ << 4,
+            (chunkX << 4) + 15, Integer.MAX_VALUE, (chunkZ << 4) + 15);
+        List<TravelPort> result = new ArrayList<TravelPort>();
+        spatialIndex.search(chunk, result);
+        return result.toArray(new TravelPort[result.size()]);
+    }
+
+    /**
+     * Calculates a lower bound of the distance between the passed location and the nearest TravelPort.
+     *
+     * @param location    the location to measure from.
+     * @param maxDistance the maximum distance to look for TravelPorts.
+     * @return the distance in blocks, or maxDistance if there is no TravelPort nearer.
+     */
+    public double getDistanceToNearestPort(Location location, double maxDistance) {
+        return spatialIndex.distanceToNearest(location, maxDistance);
+    }
+
+    /**
+     * @return immutable snapshot of the areas of the TravelPorts, which could get read from any thread.
+     */
+    public AreaSnapshot getAreaSnapshot() {
+        if (areaSnapshot == null || areaSnapshotModificationCount != modificationCount) {
+            areaSnapshot = new AreaSnapshot(getAll());
+            areaSnapshotModificationCount = modificationCount;
+        }
+
+        return areaSnapshot;
+    }
+
+    /**
+     * @return immutable snapshot of the TravelPorts mapped by their ids, which could get read from any thread.
+     */
+    public PortTable getPortTable() {
+        return portTable;
+    }
+
+    /**
+     * Searches the TravelPorts.
+     *
+     * @param keyword could be a part of the name of the TravelPort to search.
+     * @return all TravelPorts matching the keyword.
+     */
+    public Collection<TravelPort> searchAll(String keyword) {
+        return searchByName(keyword, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Searches the TravelPorts, which names match the keyword best. The database only finds names containing the
+     * keyword, so names with typos aren't found.
+     *
+     * @param keyword    the keyword to search for.
+     * @param maxResults the maximum number of results.
+     * @return the found TravelPorts, sorted from the best to the worst match.
+     */
+    public List<TravelPort> searchRanked(String keyword, int maxResults) {
+        List<TravelPort> result = new ArrayList<TravelPort>();
+
+        for (NameMatch match : rankByName(keyword, maxResults, true)) {
+            result.add(match.getPort());
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates a new TravelPort. (This will automatically creates an unique ID for it and adds it to implementation.)
+     *
+     * @return the created TravelPort
+     */
+    public TravelPort create() {
+        SqlTravelPort createdPort = new SqlTravelPort(this, idAllocator.allocate());
+        synchronized (this) {
+            createdPort.setLoadedDetails(new Details(createdPort));
+            loadedPorts.put(createdPort.getId(), createdPort);
+        }
+        add(createdPort);
+        return createdPort;
+    }
+
+    /**
+     * Adds the passed travel port to the port list. TravelPorts of other containers get copied.
+     *
+     * @param port the port to add.
+     */
+    public void add(TravelPort port) {
+        put(port);
+        idAllocator.markUsed(port.getId());
+        publish(port.getId());
+    }
+
+    /**
+     * Removes the travel port, and unlink it before, when necessary.
+     *
+     * @param port the port to remove.
+     */
+    public void remove(TravelPort port) {
+        if (port.getTargetId() != null) {
+            try {
+                unlink(port);
+            } catch (InvalidLinkException exception) {
+                logger.severe("Internal unexpected error occurred! Seems to be a multithread problem");
+            }
+        }
+
+        if (travelPorts.remove(port.getId()) != null) {
+            spatialIndex.remove(port);
+            ++modificationCount;
+
+            synchronized (this) {
+                dirtyPorts.remove(port.getId());
+                removedPorts.add(port.getId());
+            }
+            idAllocator.release(port.getId());
+
+            publish(port.getId());
+        }
+    }
+
+    /**
+     * Called by the TravelPorts after their area got changed, so the container could update its indexes.
+     *
+     * @param port the port which area got changed.
+     */
+    public void onAreaChanged(TravelPort port) {
+        SqlTravelPort changedPort = travelPorts.get(port.getId());
+        if (changedPort == port) {
+            spatialIndex.update(changedPort);
+            ++modificationCount;
+            markDirty(changedPort);
+        }
+    }
+
+    /**
+     * Called by the TravelPorts after any of their other properties got changed, so the container knows which
+     * TravelPorts need to get saved.
+     *
+     * @param port the port which got changed.
+     */
+    public void onPortChanged(TravelPort port) {
+        SqlTravelPort changedPort = travelPorts.get(port.getId());
+        if (changedPort == port) {
+            markDirty(changedPort);
+        }
+    }
+
+    /**
+     * Links the passed TravelPorts.
+     *
+     * @param port1 the first port to link.
+     * @param port2 another port to link.
+     * @throws InvalidLinkException thrown when the ports are already linked.
+     */
+    public void link(TravelPort port1, TravelPort port2) throws InvalidLinkException {
+        if (port1.getTargetId() == null && port2.getTargetId() == null) {
+            port1.setTargetId(port2.getId());
+            port2.setTargetId(port1.getId());
+        } else {
+            throw new InvalidLinkException("Ports are already linked!");
+        }
+    }
+
+    /**
+     * Unlink the passed TravelPort
+     *
+     * @param port the port to unlink
+     * @throws InvalidLinkException thrown when port isn't linked to another.
+     */
+    public void unlink(TravelPort port) throws InvalidLinkException {
+        if (port.getTargetId() != null) {
+            try {
+                TravelPort anotherPort = get(port.getTargetId());
+                anotherPort.setTargetId(null);
+            } catch (TravelPortNotFound exception) {
+                logger.warning("TravelPort wasn't linked correctly!");
+            }
+
+            port.setTargetId(null);
+
+        } else {
+            throw new InvalidLinkException("Can't unlink ports, which aren't linked!");
+        }
+    }
+
+    /**
+     * @return number of available entries.
+     */
+    public int size() {
+        return portTable.size();
+    }
+
+    /**
+     * @return counter which gets increased every time TravelPorts get added, removed or their areas get changed.
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Called after a world got loaded. The areas of all TravelPorts are always loaded, so there is nothing to do.
+     *
+     * @param world the loaded world.
+     */
+    public void onWorldLoaded(World world) {
+    }
+
+    /**
+     * Called before a world gets unloaded. The areas of all TravelPorts are always loaded, so there is nothing to do.
+     *
+     * @param world the world to unload.
+     */
+    public void onWorldUnloaded(World world) {
+    }
+
+    /**
+     * @return the server which holds the container.
+     */
+    public Server getServer() {
+        return server;
+    }
+
+    /**
+     * @return the plugin, which holds the container.
+     */
+    public TravelPlugin getPlugin() {
+        return plugin;
+    }
+
+    /**
+     * Loads the ids and areas of the TravelPorts. The other properties get loaded, when they are used.
+     */
+    public void load() {
+        travelPorts.clear();
+        spatialIndex.clear();
+        synchronized (this) {
+            loadedPorts.clear();
+            dirtyPorts.clear();
+            removedPorts.clear();
+        }
+        ++modificationCount;
+
+        // Resolve the worlds of the areas and destinations to the loaded ones.
+        WorldRegistry.resolve(server.getWorlds());
+
+        try {
+            openConnection();
+
+            Statement statement = connection.createStatement();
+            try {
+                ResultSet result = statement.executeQuery(SELECT_AREAS);
+                while (result.next()) {
+                    SqlTravelPort port = new SqlTravelPort(this, result.getInt(1));
+                    String areaString = result.getString(2);
+
+                    if (areaString != null) {
+                        try {
+                            port.setArea(AreaHelper.load(areaString));
+                        } catch (SyntaxException exception) {
+                            logger.warning(String.format("Corrupt area of TravelPort %d! '%s'", port.getId(),
+                                areaString));
+                            logger.info("Exception: " + exception.getMessage());
+                        }
+                    }
+
+                    travelPorts.put(port.getId(), port);
+                    spatialIndex.add(port);
+                }
+                result.close();
+            } finally {
+                statement.close();
+            }
+
+            server.getLogger().info(String.format("Loaded %d TravelPorts!", travelPorts.size()));
+        } catch (SQLException exception) {
+            logger.severe("Error occurred when loading TravelPorts!");
+            logger.severe(exception.getMessage());
+        }
+
+        idAllocator.reset(travelPorts.keySet());
+        publish();
+    }
+
+    /**
+     * Writes the changed TravelPorts into the database.
+     */
+    public void save() {
+        writeChanges();
+    }
+
+    /**
+     * Writes the changed TravelPorts into the database.
+     */
+    public void saveNow() {
+        writeChanges();
+    }
+
+    /**
+     * Writes the changes since the last call into the database, using a single transaction.
+     */
+    public void flushChanges() {
+        writeChanges();
+    }
+
+    /**
+     * Called periodically, when watching is enabled. The database is only changed by this container, so there is
+     * nothing to do.
+     */
+    public void checkForChanges() {
+    }
+
+    /**
+     * Writes the remaining changes into the database.
+     */
+    public void flush() {
+        writeChanges();
+    }
+
+    /**
+     * Writes the remaining changes and closes the connection to the database.
+     */
+    public void close() {
+        writeChanges();
+
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException exception) {
+                logger.warning("Couldn't close the connection to the database!");
+            }
+            connection = null;
+        }
+    }
+
+    /**
+     * Replaces all TravelPorts of the database with the passed ones.
+     *
+     * @param ports the ports to import.
+     */
+    public void importPorts(Collection<TravelPort> ports) {
+        try {
+            openConnection();
+
+            Statement statement = connection.createStatement();
+            try {
+                statement.executeUpdate(DELETE_ALL);
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException exception) {
+            logger.severe("Error occurred when importing TravelPorts!");
+            logger.severe(exception.getMessage());
+            return;
+        }
+
+        travelPorts.clear();
+        spatialIndex.clear();
+        synchronized (this) {
+            for (SqlTravelPort port : loadedPorts.values()) {
+                port.setLoadedDetails(null);
+            }
+            loadedPorts.clear();
+            dirtyPorts.clear();
+            removedPorts.clear();
+        }
+
+        // Write the copies in batches, before the cache gets full. Otherwise every unloaded copy would force a write.
+        int batchSize = 0;
+        for (TravelPort port : ports) {
+            put(port);
+
+            if (++batchSize == cacheSize) {
+                writeChanges();
+                batchSize = 0;
+            }
+        }
+        idAllocator.reset(travelPorts.keySet());
+        publish();
+        writeChanges();
+    }
+
+    /**
+     * Loads the properties of the passed TravelPort from the database and adds them to the cache.
+     *
+     * @param port the port to load.
+     * @return the loaded properties.
+     */
+    synchronized Details loadDetails(SqlTravelPort port) {
+        Details details = port.getLoadedDetails();
+        if (details != null) {
+            onDetailsUsed(port);
+            return details;
+        }
+
+        details = new Details(port);
+        try {
+            openConnection();
+
+            selectDetails.setInt(1, port.getId());
+            ResultSet result = selectDetails.executeQuery();
+            try {
+                if (result.next()) {
+                    details.name = result.getString(1);
+                    int targetId = result.getInt(2);
+                    details.targetId = result.wasNull() ? null : targetId;
+                    details.owner = result.getString(3);
+                    details.allowed = StringHelper.decode(result.getString(4));
+                    details.password = result.getString(5);
+                    details.price = result.getDouble(6);
+
+                    String destinationString = result.getString(7);
+                    if (destinationString != null) {
+                        details.destination = new Destination(destinationString);
+                    }
+
+                    String departureString = result.getString(8);
+                    if (departureString != null) {
+                        details.departure = DepartureHelper.load(port, departureString);
+                    }
+                }
+            } finally {
+                result.close();
+            }
+        } catch (SQLException exception) {
+            logger.severe(String.format("Error occurred when loading TravelPort %d!", port.getId()));
+            logger.severe(exception.getMessage());
+            return details; // Don't keep the incomplete details.
+        } catch (SyntaxException exception) {
+            logger.warning(String.format("Corrupt TravelPort %d in the database!", port.getId()));
+            logger.info("Exception: " + exception.getMessage());
+        }
+
+        port.setLoadedDetails(details);
+        loadedPorts.put(port.getId(), port);
+        return details;
+    }
+
+    /**
+     * Called by the TravelPorts when their loaded properties got used, so they stay in the cache.
+     *
+     * @param port the used port.
+     */
+    synchronized void onDetailsUsed(SqlTravelPort port) {
+        if (loadedPorts.get(port.getId()) != port) {
+            loadedPorts.put(port.getId(), port);
+        }
+    }
+
+    /**
+     * Removes the properties of the passed TravelPort from memory. Writes the changes before, if necessary.
+     *
+     * @param port the port to unload.
+     */
+    private void unloadDetails(SqlTravelPort port) {
+        if (dirtyPorts.containsKey(port.getId())) {
+            writeChanges();
+        }
+
+        // Keep the changes in memory, if they couldn't get written.
+        if (!dirtyPorts.containsKey(port.getId())) {
+            port.setLoadedDetails(null);
+        }
+    }
+
+    /**
+     * Marks the passed TravelPort as changed.
+     *
+     * @param port the changed port.
+     */
+    private synchronized void markDirty(SqlTravelPort port) {
+        dirtyPorts.put(port.getId(), port);
+    }
+
+    /**
+     * Writes the changed and removed TravelPorts into the database, using a single transaction.
+     */
+    private synchronized void writeChanges() {
+        if (dirtyPorts.isEmpty() && removedPorts.isEmpty()) {
+            return;
+        }
+
+        try {
+            openConnection();
+            connection.setAutoCommit(false);
+            try {
+                for (Integer id : removedPorts) {
+                    deletePort.setInt(1, id);
+                    deletePort.addBatch();
+                }
+                deletePort.executeBatch();
+
+                for (SqlTravelPort port : dirtyPorts.values()) {
+                    Details details = port.getLoadedDetails();
+
+                    if (details != null) {
+                        bindPort(insertPort, port.getId(), port.getArea(), details);
+                        insertPort.addBatch();
+                    } else {
+                        // Only the area could get changed without loading the other properties.
+                        updateArea.setString(1, port.getArea() != null ? port.getArea().toString() : null);
+                        updateArea.setInt(2, port.getId());
+                        updateArea.addBatch();
+                    }
+                }
+                insertPort.executeBatch();
+                updateArea.executeBatch();
+
+                connection.commit();
+                dirtyPorts.clear();
+                removedPorts.clear();
+            } catch (SQLException exception) {
+                connection.rollback();
+                throw exception;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException exception) {
+            logger.severe("Error occurred during saving TravelPorts!");
+            logger.severe(exception.getMessage());
+        }
+    }
+
+    /**
+     * Adds the passed TravelPort to the table and the index, without publishing a new snapshot. TravelPorts of other
+     * containers get copied.
+     *
+     * @param port the port to add.
+     */
+    private void put(TravelPort port) {
+        SqlTravelPort addedPort = port instanceof SqlTravelPort ? (SqlTravelPort) port : copy(port);
+
+        TravelPort replacedPort = travelPorts.put(addedPort.getId(), addedPort);
+        if (replacedPort != null) {
+            spatialIndex.remove(replacedPort);
+        }
+        spatialIndex.add(addedPort);
+        ++modificationCount;
+        markDirty(addedPort);
+    }
+
+    /**
+     * Replaces the snapshot of the TravelPorts with a copy of the current table. Used after loading many TravelPorts
+     * at once.
+     */
+    private void publish() {
+        portTable = PortTable.create(travelPorts.values(), modificationCount);
+    }
+
+    /**
+     * Replaces the snapshot of the TravelPorts with a version, which contains the current state of the TravelPort
+     * with the passed id. The new version shares everything else with the old one, so it doesn't copy the table.
+     *
+     * @param id the id of the added or removed TravelPort.
+     */
+    private void publish(Integer id) {
+        TravelPort port = travelPorts.get(id);
+        portTable = port != null ? portTable.with(port, modificationCount) : portTable.without(id, modificationCount);
+    }
+
+    /**
+     * Searches the TravelPorts, which names match the passed keyword best. Names starting with the keyword get looked
+     * up by a range of the index of the names. Only if there are less of them than wanted, the names containing the
+     * keyword get searched too, which needs to scan all names. Names which aren't written into the database yet get
+     * matched in memory, so searching doesn't need to write the changes.
+     *
+     * @param keyword    the keyword to search for.
+     * @param maxResults the maximum number of results.
+     * @param fill       flag if names containing the keyword should get added, when there are less names starting
+     *                   with it than wanted. Otherwise they only get searched, if no name starts with the keyword.
+     * @return the matches, sorted from the best to the worst.
+     */
+    private List<NameMatch> rankByName(String keyword, int maxResults, boolean fill) {
+        String lowerKeyword = keyword.trim().toLowerCase();
+        Set<Integer> staleIds = new HashSet<Integer>();
+        Map<Integer, String> unwrittenNames = getUnwrittenNames(staleIds);
+        List<NameMatch> result = new ArrayList<NameMatch>();
+
+        for (Map.Entry<Integer, String> entry : unwrittenNames.entrySet()) {
+            TravelPort port = portTable.get(entry.getKey());
+            NameMatch match = port != null ? NameMatch.create(port, entry.getValue(), lowerKeyword) : null;
+            if (match != null) {
+                result.add(match);
+            }
+        }
+
+        String upperBound = getUpperBound(lowerKeyword);
+        int limit = maxResults + staleIds.size();
+        try {
+            openConnection();
+
+            int prefixMatches = 0;
+            if (lowerKeyword.length() > 0) {
+                selectByNamePrefix.setString(1, lowerKeyword);
+                selectByNamePrefix.setString(2, upperBound);
+                selectByNamePrefix.setInt(3, limit);
+                addMatches(selectByNamePrefix.executeQuery(), lowerKeyword, staleIds, result);
+            }
+            for (NameMatch match : result) {
+                if (match.getScore() <= NameMatch.PREFIX) {
+                    ++prefixMatches;
+                }
+            }
+
+            if (prefixMatches < maxResults && (fill || prefixMatches == 0)) {
+                String pattern = escape(lowerKeyword);
+                selectByNameSubstring.setString(1, "%" + pattern + "%");
+                selectByNameSubstring.setString(2, lowerKeyword);
+                selectByNameSubstring.setString(3, upperBound);
+                selectByNameSubstring.setString(4, "% " + pattern + "%");
+                selectByNameSubstring.setInt(5, limit);
+                addMatches(selectByNameSubstring.executeQuery(), lowerKeyword, staleIds, result);
+            }
+        } catch (SQLException exception) {
+            logger.severe("Error occurred when searching TravelPorts!");
+            logger.severe(exception.getMessage());
+        }
+
+        Collections.sort(result);
+        return result.size() > maxResults ? new ArrayList<NameMatch>(result.subList(0, maxResults)) : result;
+    }
+
+    /**
+     * Matches the TravelPorts of the passed ids against the keyword and adds the matches to the result.
+     *
+     * @param ids          the ids returned by the database. Closed afterwards.
+     * @param lowerKeyword the lowercased keyword.
+     * @param staleIds     ids which rows of the database are outdated.
+     * @param result       list which receives the matches.
+     * @throws SQLException thrown when the ids couldn't get read.
+     */
+    private void addMatches(ResultSet ids, String lowerKeyword, Set<Integer> staleIds, List<NameMatch> result)
+            throws SQLException {
+        try {
+            while (ids.next()) {
+                int id = ids.getInt(1);
+                TravelPort port = staleIds.contains(id) ? null : portTable.get(id);
+                NameMatch match = port != null && port.getName() != null ?
+                    NameMatch.create(port, port.getName().toLowerCase(), lowerKeyword) : null;
+
+                if (match != null) {
+                    result.add(match);
+                }
+            }
+        } finally {
+            ids.close();
+        }
+    }
+
+    /**
+     * Searches the TravelPorts, which names contain the passed keyword. Names which aren't written into the database
+     * yet get matched in memory.
+     *
+     * @param keyword    the keyword to search for.
+     * @param maxResults the maximum number of results.
+     * @return the found TravelPorts.
+     */
+    private List<TravelPort> searchByName(String keyword, int maxResults) {
+        String lowerKeyword = keyword.toLowerCase();
+        Set<Integer> staleIds = new HashSet<Integer>();
+        Map<Integer, String> unwrittenNames = getUnwrittenNames(staleIds);
+        List<TravelPort> result = new LinkedList<TravelPort>();
+
+        for (Map.Entry<Integer, String> entry : unwrittenNames.entrySet()) {
+            TravelPort port = portTable.get(entry.getKey());
+            if (port != null && result.size() < maxResults && entry.getValue().contains(lowerKeyword)) {
+                result.add(port);
+            }
+        }
+
+        try {
+            openConnection();
+
+            selectByName.setString(1, "%" + escape(lowerKeyword) + "%");
+            ResultSet ids = selectByName.executeQuery();
+            try {
+                while (result.size() < maxResults && ids.next()) {
+                    int id = ids.getInt(1);
+                    TravelPort port = staleIds.contains(id) ? null : portTable.get(id);
+                    if (port != null) {
+                        result.add(port);
+                    }
+                }
+            } finally {
+                ids.close();
+            }
+        } catch (SQLException exception) {
+            logger.severe("Error occurred when searching TravelPorts!");
+            logger.severe(exception.getMessage());
+        }
+
+        return result;
+    }
+
+    /**
+     * Collects the names of the TravelPorts, which got changed since the last write. The rows of these TravelPorts
+     * and of the removed ones are outdated. TravelPorts without loaded properties only got a new area, so their
+     * names in the database are still valid.
+     *
+     * @param staleIds set which receives the ids, which rows of the database are outdated.
+     * @return the lowercased names, which aren't written yet, mapped by the ids of their TravelPorts.
+     */
+    private synchronized Map<Integer, String> getUnwrittenNames(Set<Integer> staleIds) {
+        Map<Integer, String> names = new HashMap<Integer, String>();
+        staleIds.addAll(removedPorts);
+
+        for (SqlTravelPort port : dirtyPorts.values()) {
+            Details details = port.getLoadedDetails();
+
+            if (details != null) {
+                staleIds.add(port.getId());
+                if (details.name != null) {
+                    names.put(port.getId(), details.name.toLowerCase());
+                }
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Returns the smallest string, which is greater than all strings starting with the passed prefix.
+     *
+     * @param prefix the prefix.
+     * @return the exclusive upper bound of the strings starting with the prefix.
+     */
+    private static String getUpperBound(String prefix) {
+        int last = prefix.length() - 1;
+
+        if (last < 0 || prefix.charAt(last) == Character.MAX_VALUE) {
+            return prefix + Character.MAX_VALUE;
+        } else {
+            return prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+        }
+    }
+
+    /**
+     * Escapes the wildcards of the passed text, for using it inside a LIKE pattern with '!' as escape character.
+     *
+     * @param text the text to escape.
+     * @return the escaped text.
+     */
+    private static String escape(String text) {
+        return text.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    /**
+     * Opens the connection to the database and prepares the statements, if it isn't opened yet.
+     *
+     * @throws SQLException thrown when the database couldn't get opened.
+     */
+    private void openConnection() throws SQLException {
+        if (connection != null) {
+            return;
+        }
+
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException exception) {
+            throw new SQLException("SQLite driver not found!");
+        }
+
+        connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getPath());
+
+        Statement statement = connection.createStatement();
+        try {
+            statement.executeUpdate(CREATE_TABLE);
+            statement.executeUpdate(CREATE_NAME_INDEX);
+        } finally {
+            statement.close();
+        }
+
+        selectDetails = connection.prepareStatement(SELECT_DETAILS);
+        selectByName = connection.prepareStatement(SELECT_BY_NAME);
+        selectByNamePrefix = connection.prepareStatement(SELECT_BY_NAME_PREFIX);
+        selectByNameSubstring = connection.prepareStatement(SELECT_BY_NAME_SUBSTRING);
+        insertPort = connection.prepareStatement(INSERT_PORT);
+        updateArea = connection.prepareStatement(UPDATE_AREA);
+        deletePort = connection.prepareStatement(DELETE_PORT);
+    }
+
+    /**
+     * Creates a copy of a TravelPort of another container.
+     *
+     * @param port the port to copy.
+     * @return the created copy.
+     */
+    private SqlTravelPort copy(TravelPort port) {
+        SqlTravelPort copiedPort = new SqlTravelPort(this, port.getId());
+        Details details = new Details(copiedPort);
+        details.name = port.getName();
+        details.targetId = port.getTargetId();
+        details.owner = port.getOwner();
+        details.allowed = port.isAllowedToEverybody() ?
+            new LinkedList<String>() : new LinkedList<String>(port.getAllowed());
+        details.password = port.getPassword();
+        details.price = port.getPrice();
+        details.destination = port.getDestination();
+
+        if (port.getDeparture() != null) {
+            try {
+                details.departure = DepartureHelper.load(copiedPort, port.getDeparture().toString());
+            } catch (SyntaxException exception) {
+                logger.warning(String.format("Couldn't copy the departure of TravelPort %d!", port.getId()));
+            }
+        }
+
+        copiedPort.setArea(port.getArea());
+        synchronized (this) {
+            copiedPort.setLoadedDetails(details);
+            loadedPorts.put(copiedPort.getId(), copiedPort);
+        }
+
+        return copiedPort;
+    }
+
+    /**
+     * Binds the properties of a TravelPort to the passed insert statement.
+     *
+     * @param statement the statement to bind.
+     * @param id        the id of the port.
+     * @param area      the area of the port.
+     * @param details   the other properties of the port.
+     * @throws SQLException thrown when the values couldn't get bound.
+     */
+    private static void bindPort(PreparedStatement statement, Integer id, Area area, Details details)
+            throws SQLException {
+        statement.setInt(1, id);
+        statement.setString(2, details.name);
+        statement.setString(3, details.name != null ? details.name.toLowerCase() : null);
+        if (details.targetId != null) {
+            statement.setInt(4, details.targetId);
+        } else {
+            statement.setNull(4, Types.INTEGER);
+        }
+        statement.setString(5, details.owner);
+        statement.setString(6, details.allowed == null || details.allowed.isEmpty() ?
+            null : StringHelper.encode(details.allowed));
+        statement.setString(7, details.password);
+        statement.setDouble(8, details.price);
+        statement.setString(9, area != null ? area.toString() : null);
+        statement.setString(10, details.destination != null ? details.destination.toString() : null);
+        statement.setString(11, details.departure != null ? details.departure.toString() : null);
+    }
+}
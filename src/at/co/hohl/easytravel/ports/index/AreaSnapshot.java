@@ -0,0 +1,192 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.ports.index;
+
+import at.co.hohl.easytravel.ports.Area;
+import at.co.hohl.easytravel.ports.BoundingBox;
+import at.co.hohl.easytravel.ports.TravelPort;
+import at.co.hohl.utils.LongHashMap;
+
+import java.util.*;
+
+/**
+ * Immutable copy of the areas of the TravelPorts, indexed by chunk. Other than the TravelPorts themselves, it could
+ * get read from any thread.
+ *
+ * @author Michael Hohl
+ */
+public final class AreaSnapshot {
+    /**
+     * Ids of the TravelPorts, sorted ascending.
+     */
+    private final int[] portIds;
+
+    /**
+     * Areas of the TravelPorts, in the same order as the ids.
+     */
+    private final Area[] areas;
+
+    /**
+     * Indices of the areas inside the chunks, mapped by the id of the world and the key of the chunk.
+     */
+    private final Map<Integer, LongHashMap<int[]>> chunks;
+
+    /**
+     * Indices of the areas, which have no bounding box. They get checked on every lookup.
+     */
+    private final int[] unassignedAreas;
+
+    /**
+     * Creates a snapshot of the areas of the passed TravelPorts.
+     *
+     * @param ports the TravelPorts to copy.
+     */
+    public AreaSnapshot(Collection<TravelPort> ports) {
+        // Copy the areas ordered by the ids of the TravelPorts.
+        SortedMap<Integer, Area> sortedAreas = new TreeMap<Integer, Area>();
+        for (TravelPort port : ports) {
+            if (port.getArea() != null) {
+                sortedAreas.put(port.getId(), port.getArea());
+            }
+        }
+
+        portIds = new int[sortedAreas.size()];
+        areas = new Area[sortedAreas.size()];
+        int index = 0;
+        for (Map.Entry<Integer, Area> entry : sortedAreas.entrySet()) {
+            portIds[index] = entry.getKey();
+            areas[index] = entry.getValue();
+            ++index;
+        }
+
+        // Assign the areas to the chunks they overlap.
+        Map<Integer, Map<Long, List<Integer>>> chunkLists = new HashMap<Integer, Map<Long, List<Integer>>>();
+        List<Integer> unassignedList = new LinkedList<Integer>();
+        for (index = 0; index < areas.length; ++index) {
+            BoundingBox box = areas[index].getBoundingBox();
+
+            if (box != null) {
+                Map<Long, List<Integer>> worldChunks = chunkLists.get(box.getWorldId());
+                if (worldChunks == null) {
+                    worldChunks = new HashMap<Long, List<Integer>>();
+                    chunkLists.put(box.getWorldId(), worldChunks);
+                }
+
+                for (int chunkX = box.getLowX() >> 4; chunkX <= box.getHighX() >> 4; ++chunkX) {
+                    for (int chunkZ = box.getLowZ() >> 4; chunkZ <= box.getHighZ() >> 4; ++chunkZ) {
+                        Long key = toKey(chunkX, chunkZ);
+                        List<Integer> chunk = worldChunks.get(key);
+                        if (chunk == null) {
+                            chunk = new ArrayList<Integer>(2);
+                            worldChunks.put(key, chunk);
+                        }
+                        chunk.add(index);
+                    }
+                }
+            } else {
+                unassignedList.add(index);
+            }
+        }
+
+        chunks = new HashMap<Integer, LongHashMap<int[]>>();
+        for (Map.Entry<Integer, Map<Long, List<Integer>>> worldEntry : chunkLists.entrySet()) {
+            LongHashMap<int[]> worldChunks = new LongHashMap<int[]>();
+            for (Map.Entry<Long, List<Integer>> chunkEntry : worldEntry.getValue().entrySet()) {
+                worldChunks.put(chunkEntry.getKey(), toArray(chunkEntry.getValue()));
+            }
+            chunks.put(worldEntry.getKey(), worldChunks);
+        }
+        unassignedAreas = toArray(unassignedList);
+    }
+
+    /**
+     * Checks if the TravelPort with the passed id contains the passed block.
+     *
+     * @param portId the id of the TravelPort.
+     * @param world  the id of the world of the block.
+     * @param x      the x coord of the block.
+     * @param y      the y coord of the block.
+     * @param z      the z coord of the block.
+     * @return true, if the TravelPort exists and contains the block.
+     */
+    public boolean contains(int portId, int world, int x, int y, int z) {
+        int index = Arrays.binarySearch(portIds, portId);
+        return index >= 0 && areas[index].contains(world, x, y, z);
+    }
+
+    /**
+     * Searches a TravelPort containing the passed block.
+     *
+     * @param world the id of the world of the block.
+     * @param x     the x coord of the block.
+     * @param y     the y coord of the block.
+     * @param z     the z coord of the block.
+     * @return the id of the TravelPort with the lowest id containing the block, or -1 if there is none.
+     */
+    public int search(int world, int x, int y, int z) {
+        int foundIndex = Integer.MAX_VALUE;
+
+        LongHashMap<int[]> worldChunks = chunks.get(world);
+        if (worldChunks != null) {
+            int[] chunk = worldChunks.get(toKey(x >> 4, z >> 4));
+
+            if (chunk != null) {
+                for (int index : chunk) {
+                    if (index < foundIndex && areas[index].contains(world, x, y, z)) {
+                        foundIndex = index;
+                    }
+                }
+            }
+        }
+
+        for (int index : unassignedAreas) {
+            if (index < foundIndex && areas[index].contains(world, x, y, z)) {
+                foundIndex = index;
+            }
+        }
+
+        return foundIndex != Integer.MAX_VALUE ? portIds[foundIndex] : -1;
+    }
+
+    /**
+     * Converts the passed list to an array.
+     *
+     * @param list the list to convert.
+     * @return the created array.
+     */
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        int index = 0;
+        for (Integer value : list) {
+            array[index++] = value;
+        }
+        return array;
+    }
+
+    /**
+     * Creates the key of a chunk.
+     *
+     * @param chunkX the x coord of the chunk.
+     * @param chunkZ the z coord of the chunk.
+     * @return the key for the chunk.
+     */
+    private static long toKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+}
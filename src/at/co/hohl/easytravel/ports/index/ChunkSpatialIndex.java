@@ -0,0 +1,281 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.ports.index;
+
+import at.co.hohl.easytravel.ports.Area;
+import at.co.hohl.easytravel.ports.BoundingBox;
+import at.co.hohl.easytravel.ports.TravelPort;
+import at.co.hohl.easytravel.ports.WorldRegistry;
+import at.co.hohl.utils.LongHashMap;
+import org.bukkit.Location;
+
+import java.util.*;
+
+/**
+ * Spatial hash which assigns the bounding boxes of the TravelPorts to the cells they overlap. A cell is a column of
+ * blocks, which is by default as large as a chunk. So a lookup only needs to check the few TravelPorts of a single
+ * cell.
+ *
+ * @author Michael Hohl
+ */
+public class ChunkSpatialIndex implements SpatialIndex {
+    /**
+     * Default size of a cell. (Same as a chunk)
+     */
+    public static final int DEFAULT_CELL_SIZE = 16;
+
+    /**
+     * Number of bits to shift a block coord to get the cell coord.
+     */
+    private final int cellShift;
+
+    /**
+     * Cells of the worlds, mapped by the id of the world and the key of the cell.
+     */
+    private final Map<Integer, LongHashMap<List<TravelPort>>> worlds =
+        new HashMap<Integer, LongHashMap<List<TravelPort>>>();
+
+    /**
+     * The bounding boxes used when the TravelPorts got indexed, mapped by the id of the TravelPort.
+     */
+    private final Map<Integer, BoundingBox> indexedBoxes = new HashMap<Integer, BoundingBox>();
+
+    /**
+     * TravelPorts with areas which couldn't get assigned to cells. They get checked on every lookup.
+     */
+    private final List<TravelPort> unassignedPorts = new LinkedList<TravelPort>();
+
+    /**
+     * Creates a new index.
+     *
+     * @param cellSize the size of the cells in blocks. Rounded down to a power of two.
+     */
+    public ChunkSpatialIndex(int cellSize) {
+        cellShift = 31 - Integer.numberOfLeadingZeros(Math.max(1, cellSize));
+    }
+
+    /**
+     * Adds the passed TravelPort to the index.
+     *
+     * @param port the port to add.
+     */
+    public void add(TravelPort port) {
+        Area area = port.getArea();
+        BoundingBox box = area != null ? area.getBoundingBox() : null;
+
+        if (box != null) {
+            LongHashMap<List<TravelPort>> cells = worlds.get(box.getWorldId());
+            if (cells == null) {
+                cells = new LongHashMap<List<TravelPort>>();
+                worlds.put(box.getWorldId(), cells);
+            }
+
+            int highCellX = box.getHighX() >> cellShift, highCellZ = box.getHighZ() >> cellShift;
+            for (int cellX = box.getLowX() >> cellShift; cellX <= highCellX; ++cellX) {
+                for (int cellZ = box.getLowZ() >> cellShift; cellZ <= highCellZ; ++cellZ) {
+                    long key = toKey(cellX, cellZ);
+                    List<TravelPort> cell = cells.get(key);
+                    if (cell == null) {
+                        cell = new ArrayList<TravelPort>(2);
+                        cells.put(key, cell);
+                    }
+                    cell.add(port);
+                }
+            }
+
+            indexedBoxes.put(port.getId(), box);
+        } else if (area != null) {
+            unassignedPorts.add(port);
+        }
+    }
+
+    /**
+     * Removes the passed TravelPort from the index. Uses the area the TravelPort had, when it got added.
+     *
+     * @param port the port to remove.
+     */
+    public void remove(TravelPort port) {
+        BoundingBox box = indexedBoxes.remove(port.getId());
+
+        if (box != null) {
+            LongHashMap<List<TravelPort>> cells = worlds.get(box.getWorldId());
+
+            int highCellX = box.getHighX() >> cellShift, highCellZ = box.getHighZ() >> cellShift;
+            for (int cellX = box.getLowX() >> cellShift; cellX <= highCellX; ++cellX) {
+                for (int cellZ = box.getLowZ() >> cellShift; cellZ <= highCellZ; ++cellZ) {
+                    long key = toKey(cellX, cellZ);
+                    List<TravelPort> cell = cells.get(key);
+                    cell.remove(port);
+                    if (cell.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+
+            if (cells.isEmpty()) {
+                worlds.remove(box.getWorldId());
+            }
+        } else {
+            unassignedPorts.remove(port);
+        }
+    }
+
+    /**
+     * Updates the passed TravelPort, after its area got changed.
+     *
+     * @param port the port to update.
+     */
+    public void update(TravelPort port) {
+        remove(port);
+        add(port);
+    }
+
+    /**
+     * Removes all TravelPorts from the index.
+     */
+    public void clear() {
+        worlds.clear();
+        indexedBoxes.clear();
+        unassignedPorts.clear();
+    }
+
+    /**
+     * Searches the TravelPorts at the passed location and adds them to the passed collection.
+     *
+     * @param location the location to search for.
+     * @param result   collection which receives the TravelPorts containing the location.
+     */
+    public void search(Location location, Collection<TravelPort> result) {
+        search(WorldRegistry.getId(location.getWorld()), location.getBlockX(), location.getBlockY(),
+            location.getBlockZ(), result);
+    }
+
+    /**
+     * Searches the TravelPorts containing the passed block and adds them to the passed collection.
+     *
+     * @param worldId the id of the world of the block.
+     * @param x       the x coord of the block.
+     * @param y       the y coord of the block.
+     * @param z       the z coord of the block.
+     * @param result  collection which receives the TravelPorts containing the block.
+     */
+    public void search(int worldId, int x, int y, int z, Collection<TravelPort> result) {
+        LongHashMap<List<TravelPort>> cells = worlds.get(worldId);
+
+        if (cells != null) {
+            List<TravelPort> cell = cells.get(toKey(x >> cellShift, z >> cellShift));
+
+            if (cell != null) {
+                for (int index = 0, size = cell.size(); index < size; ++index) {
+                    TravelPort port = cell.get(index);
+                    if (port.getArea().contains(worldId, x, y, z)) {
+                        result.add(port);
+                    }
+                }
+            }
+        }
+
+        if (!unassignedPorts.isEmpty()) {
+            for (TravelPort port : unassignedPorts) {
+                if (port.getArea().contains(worldId, x, y, z)) {
+                    result.add(port);
+                }
+            }
+        }
+    }
+
+    /**
+     * Searches the TravelPorts which bounding boxes intersect the passed box and adds them to the passed collection.
+     *
+     * @param box    the box to search for.
+     * @param result collection which receives the TravelPorts intersecting the box.
+     */
+    public void search(BoundingBox box, Collection<TravelPort> result) {
+        LongHashMap<List<TravelPort>> cells = worlds.get(box.getWorldId());
+        Set<TravelPort> foundPorts = new HashSet<TravelPort>();
+
+        if (cells != null) {
+            int highCellX = box.getHighX() >> cellShift, highCellZ = box.getHighZ() >> cellShift;
+            for (int cellX = box.getLowX() >> cellShift; cellX <= highCellX; ++cellX) {
+                for (int cellZ = box.getLowZ() >> cellShift; cellZ <= highCellZ; ++cellZ) {
+                    List<TravelPort> cell = cells.get(toKey(cellX, cellZ));
+
+                    if (cell != null) {
+                        for (TravelPort port : cell) {
+                            if (indexedBoxes.get(port.getId()).intersects(box)) {
+                                foundPorts.add(port);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        result.addAll(foundPorts);
+        result.addAll(unassignedPorts);
+    }
+
+    /**
+     * Calculates a lower bound of the distance between the passed location and the nearest TravelPort.
+     *
+     * @param location    the location to measure from.
+     * @param maxDistance the maximum distance to look for TravelPorts.
+     * @return the distance in blocks, or maxDistance if there is no TravelPort nearer.
+     */
+    public double distanceToNearest(Location location, double maxDistance) {
+        LongHashMap<List<TravelPort>> cells = worlds.get(WorldRegistry.getId(location.getWorld()));
+
+        if (!unassignedPorts.isEmpty()) {
+            return 0;
+        } else if (cells == null) {
+            return maxDistance;
+        }
+
+        int x = location.getBlockX(), y = location.getBlockY(), z = location.getBlockZ();
+        int radius = (int) Math.ceil(maxDistance);
+        double nearestDistance = maxDistance;
+
+        int highCellX = (x + radius) >> cellShift, highCellZ = (z + radius) >> cellShift;
+        for (int cellX = (x - radius) >> cellShift; cellX <= highCellX; ++cellX) {
+            for (int cellZ = (z - radius) >> cellShift; cellZ <= highCellZ; ++cellZ) {
+                List<TravelPort> cell = cells.get(toKey(cellX, cellZ));
+
+                if (cell != null) {
+                    for (int index = 0, size = cell.size(); index < size; ++index) {
+                        BoundingBox box = indexedBoxes.get(cell.get(index).getId());
+                        nearestDistance = Math.min(nearestDistance, box.distance(x, y, z));
+                    }
+                }
+            }
+        }
+
+        return nearestDistance;
+    }
+
+    /**
+     * Creates the key of a cell.
+     *
+     * @param cellX the x coord of the cell.
+     * @param cellZ the z coord of the cell.
+     * @return the key for the cell.
+     */
+    private static long toKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.ports.index;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Hands out the ids of new TravelPorts. Keeps the highest used id and a bitset of the free ids below it, so finding
+ * an unused id doesn't need to check every used one. Ids of removed TravelPorts are held back for the quarantine
+ * time, so links and compass targets still pointing at them don't end up at a new TravelPort.
+ *
+ * @author Michael Hohl
+ */
+public final class IdAllocator {
+    /**
+     * Default time (in seconds) the ids of removed TravelPorts are held back.
+     */
+    public static final int DEFAULT_QUARANTINE = 300;
+
+    /**
+     * Time (in milliseconds) the ids of removed TravelPorts are held back.
+     */
+    private final long quarantineTime;
+
+    /**
+     * Ids below the high water mark, which could get handed out.
+     */
+    private final BitSet freeIds = new BitSet();
+
+    /**
+     * Ends of the quarantines (in milliseconds) of the ids, which are still held back. Only the latest release of an id
+     * counts, so an older release still waiting inside the queue can't end a newer quarantine early.
+     */
+    private final Map<Integer, Long> quarantinedIds = new HashMap<Integer, Long>();
+
+    /**
+     * Releases of the ids of removed TravelPorts, in the order they got removed.
+     */
+    private final Queue<Release> releases = new LinkedList<Release>();
+
+    /**
+     * Lowest id, which could be free. There is no free id below it.
+     */
+    private int lowestFreeId;
+
+    /**
+     * The id following the highest id, which got used.
+     */
+    private int highWaterMark;
+
+    /**
+     * Creates a new allocator.
+     *
+     * @param quarantineTime time (in milliseconds) the ids of removed TravelPorts are held back.
+     */
+    public IdAllocator(long quarantineTime) {
+        this.quarantineTime = Math.max(0, quarantineTime);
+    }
+
+    /**
+     * Forgets all ids and marks the passed ones as used. The ids between them are free immediately.
+     *
+     * @param usedIds the ids of the TravelPorts.
+     */
+    public void reset(Collection<Integer> usedIds) {
+        freeIds.clear();
+        quarantinedIds.clear();
+        releases.clear();
+        lowestFreeId = 0;
+        highWaterMark = 0;
+
+        for (Integer id : usedIds) {
+            markUsed(id);
+        }
+    }
+
+    /**
+     * Marks the passed id as used. Called when a TravelPort with a known id gets added.
+     *
+     * @param id the id of the TravelPort.
+     */
+    public void markUsed(int id) {
+        if (id < 0) {
+            return;
+        }
+
+        if (id >= highWaterMark) {
+            freeIds.set(highWaterMark, id);
+            lowestFreeId = Math.min(lowestFreeId, highWaterMark);
+            highWaterMark = id + 1;
+        } else {
+            freeIds.clear(id);
+            quarantinedIds.remove(id);
+        }
+    }
+
+    /**
+     * Releases the id of a removed TravelPort. It gets handed out again after the quarantine time.
+     *
+     * @param id the id of the removed TravelPort.
+     */
+    public void release(int id) {
+        if (id < 0 || id >= highWaterMark) {
+            return;
+        }
+
+        if (quarantineTime > 0) {
+            long time = System.currentTimeMillis() + quarantineTime;
+            quarantinedIds.put(id, time);
+            releases.add(new Release(id, time));
+        } else {
+            free(id);
+        }
+    }
+
+    /**
+     * Hands out the lowest free id and marks it as used.
+     *
+     * @return the unused id.
+     */
+    public int allocate() {
+        long now = System.currentTimeMillis();
+        while (!releases.isEmpty() && releases.peek().time <= now) {
+            Release release = releases.poll();
+
+            // The id could have been used again by a TravelPort, which got added with it, and released again later.
+            Long time = quarantinedIds.get(release.id);
+            if (time != null && time == release.time) {
+                quarantinedIds.remove(release.id);
+                free(release.id);
+            }
+        }
+
+        int id = freeIds.nextSetBit(lowestFreeId);
+        if (id >= 0) {
+            freeIds.clear(id);
+            lowestFreeId = id + 1;
+        } else {
+            id = highWaterMark++;
+            lowestFreeId = highWaterMark;
+        }
+
+        return id;
+    }
+
+    /**
+     * Marks the passed id as free.
+     *
+     * @param id the id to free.
+     */
+    private void free(int id) {
+        freeIds.set(id);
+        lowestFreeId = Math.min(lowestFreeId, id);
+    }
+
+    /**
+     * Id of a removed TravelPort and the time it could get handed out again.
+     */
+    private static final class Release {
+        /**
+         * The released id.
+         */
+        private final int id;
+
+        /**
+         * Time (in milliseconds) the quarantine of the id ends.
+         */
+        private final long time;
+
+        /**
+         * Creates a new release.
+         *
+         * @param id   the released id.
+         * @param time time (in milliseconds) the quarantine of the id ends.
+         */
+        private Release(int id, long time) {
+            this.id = id;
+            this.time = time;
+        }
+    }
+}
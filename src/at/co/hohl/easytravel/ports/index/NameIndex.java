@@ -0,0 +1,293 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.ports.index;
+
+import at.co.hohl.easytravel.ports.TravelPort;
+import at.co.hohl.utils.LongHashMap;
+
+import java.util.*;
+
+/**
+ * Inverted index of the trigrams of the lowercased names of the TravelPorts. A search only checks the TravelPorts,
+ * which names contain the rarest trigram of the keyword, instead of all TravelPorts. Keywords shorter than a trigram
+ * and searches for names with typos get compared with all the lowercased names.
+ *
+ * @author Michael Hohl
+ */
+public class NameIndex {
+    /**
+     * Number of characters of a trigram.
+     */
+    private static final int GRAM_LENGTH = 3;
+
+    /**
+     * Compares the TravelPorts by their ids.
+     */
+    private static final Comparator<TravelPort> ID_ORDER = new Comparator<TravelPort>() {
+        public int compare(TravelPort port1, TravelPort port2) {
+            return port1.getId().compareTo(port2.getId());
+        }
+    };
+
+    /**
+     * Indexed names, mapped by the ids of the TravelPorts.
+     */
+    private final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+
+    /**
+     * Entries of the names containing a trigram, mapped by the key of the trigram.
+     */
+    private final LongHashMap<List<Entry>> postings = new LongHashMap<List<Entry>>();
+
+    /**
+     * Adds the passed TravelPort to the index.
+     *
+     * @param port the port to add.
+     */
+    public void add(TravelPort port) {
+        Entry entry = new Entry(port);
+        Entry replacedEntry = entries.put(port.getId(), entry);
+        if (replacedEntry != null) {
+            removePostings(replacedEntry);
+        }
+
+        for (long key : getKeys(entry.name)) {
+            List<Entry> posting = postings.get(key);
+            if (posting == null) {
+                posting = new ArrayList<Entry>(2);
+                postings.put(key, posting);
+            }
+            posting.add(entry);
+        }
+    }
+
+    /**
+     * Removes the passed TravelPort from the index.
+     *
+     * @param port the port to remove.
+     */
+    public void remove(TravelPort port) {
+        Entry entry = entries.get(port.getId());
+
+        if (entry != null && entry.port == port) {
+            entries.remove(port.getId());
+            removePostings(entry);
+        }
+    }
+
+    /**
+     * Updates the passed TravelPort, if its name got changed since it got indexed.
+     *
+     * @param port the port to update.
+     * @return true, if the name got changed.
+     */
+    public boolean update(TravelPort port) {
+        Entry entry = entries.get(port.getId());
+
+        if (entry != null && entry.port == port && !entry.originalName.equals(toName(port))) {
+            add(port);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Removes all TravelPorts from the index.
+     */
+    public void clear() {
+        entries.clear();
+        postings.clear();
+    }
+
+    /**
+     * Searches the TravelPorts, which names contain the passed keyword. The case gets ignored.
+     *
+     * @param keyword    the keyword to search for.
+     * @param maxResults the maximum number of results.
+     * @return the found TravelPorts, sorted by their ids.
+     */
+    public List<TravelPort> search(String keyword, int maxResults) {
+        List<TravelPort> result = new ArrayList<TravelPort>();
+        for (Entry entry : findEntries(keyword.toLowerCase())) {
+            result.add(entry.port);
+        }
+
+        Collections.sort(result, ID_ORDER);
+        return result.size() > maxResults ? new ArrayList<TravelPort>(result.subList(0, maxResults)) : result;
+    }
+
+    /**
+     * Searches the TravelPorts, which names match the passed keyword best. The case and surrounding whitespaces of
+     * the keyword get ignored. Names with typos only get compared, if they are wanted and no name contains the
+     * keyword, because that needs to compare every name.
+     *
+     * @param keyword    the keyword to search for.
+     * @param maxResults the maximum number of results.
+     * @param typos      flag if names which differ by a few typos should get found.
+     * @return the matches, sorted from the best to the worst.
+     */
+    public List<NameMatch> rank(String keyword, int maxResults, boolean typos) {
+        String lowerKeyword = keyword.trim().toLowerCase();
+        List<NameMatch> matches = new ArrayList<NameMatch>();
+
+        for (Entry entry : findEntries(lowerKeyword)) {
+            matches.add(NameMatch.create(entry.port, entry.name, lowerKeyword));
+        }
+
+        if (typos && matches.isEmpty() && NameMatch.getMaxDistance(lowerKeyword.length()) > 0) {
+            // Typos could replace any trigram, so all names need to get compared.
+            for (Entry entry : entries.values()) {
+                NameMatch match = NameMatch.create(entry.port, entry.name, lowerKeyword);
+                if (match != null) {
+                    matches.add(match);
+                }
+            }
+        }
+
+        Collections.sort(matches);
+        return matches.size() > maxResults ? new ArrayList<NameMatch>(matches.subList(0, maxResults)) : matches;
+    }
+
+    /**
+     * Returns the entries, which names contain the passed keyword.
+     *
+     * @param keyword the lowercased keyword.
+     * @return the entries in no particular order.
+     */
+    private List<Entry> findEntries(String keyword) {
+        List<Entry> result = new ArrayList<Entry>();
+
+        if (keyword.length() < GRAM_LENGTH) {
+            for (Entry entry : entries.values()) {
+                if (entry.name.contains(keyword)) {
+                    result.add(entry);
+                }
+            }
+        } else {
+            // Only the names containing the rarest trigram could contain the keyword.
+            List<Entry> rarestPosting = null;
+            for (long key : getKeys(keyword)) {
+                List<Entry> posting = postings.get(key);
+                if (posting == null) {
+                    return result;
+                } else if (rarestPosting == null || posting.size() < rarestPosting.size()) {
+                    rarestPosting = posting;
+                }
+            }
+
+            for (int index = 0, size = rarestPosting.size(); index < size; ++index) {
+                Entry entry = rarestPosting.get(index);
+                if (entry.name.contains(keyword)) {
+                    result.add(entry);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes the passed entry from the postings of its trigrams.
+     *
+     * @param entry the entry to remove.
+     */
+    private void removePostings(Entry entry) {
+        for (long key : getKeys(entry.name)) {
+            List<Entry> posting = postings.get(key);
+
+            for (int index = posting.size() - 1; index >= 0; --index) {
+                if (posting.get(index) == entry) {
+                    posting.remove(index);
+                    break;
+                }
+            }
+
+            if (posting.isEmpty()) {
+                postings.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the distinct keys of the trigrams of the passed text.
+     *
+     * @param text the lowercased text.
+     * @return the sorted keys without duplicates.
+     */
+    private static long[] getKeys(String text) {
+        int count = Math.max(0, text.length() - GRAM_LENGTH + 1);
+        long[] keys = new long[count];
+
+        for (int index = 0; index < count; ++index) {
+            keys[index] = ((long) text.charAt(index) << 32) | ((long) text.charAt(index + 1) << 16) |
+                text.charAt(index + 2);
+        }
+
+        Arrays.sort(keys);
+        int distinctCount = 0;
+        for (int index = 0; index < count; ++index) {
+            if (index == 0 || keys[index] != keys[index - 1]) {
+                keys[distinctCount++] = keys[index];
+            }
+        }
+
+        return distinctCount < count ? Arrays.copyOf(keys, distinctCount) : keys;
+    }
+
+    /**
+     * @param port the port.
+     * @return the name of the port, or an empty string if it has none.
+     */
+    private static String toName(TravelPort port) {
+        return port.getName() != null ? port.getName() : "";
+    }
+
+    /**
+     * Indexed name of a TravelPort.
+     */
+    private static final class Entry {
+        /**
+         * The indexed TravelPort.
+         */
+        final TravelPort port;
+
+        /**
+         * The name of the TravelPort, when it got indexed.
+         */
+        final String originalName;
+
+        /**
+         * The lowercased name.
+         */
+        final String name;
+
+        /**
+         * Creates a new entry.
+         *
+         * @param port the TravelPort to index.
+         */
+        Entry(TravelPort port) {
+            this.port = port;
+            this.originalName = toName(port);
+            this.name = originalName.toLowerCase();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.ports.index;
+
+import at.co.hohl.easytravel.ports.TravelPort;
+
+import java.util.List;
+
+/**
+ * TravelPort which name matches a keyword, together with the quality of the match. Matches with lower scores are
+ * better: exact matches come first, followed by names starting with the keyword, names with a word starting with the
+ * keyword, names containing the keyword and finally names which differ by a few typos.
+ *
+ * @author Michael Hohl
+ */
+public final class NameMatch implements Comparable<NameMatch> {
+    /**
+     * Score of a name, which equals the keyword.
+     */
+    public static final int EXACT = 0;
+
+    /**
+     * Score of a name, which starts with the keyword.
+     */
+    public static final int PREFIX = 1;
+
+    /**
+     * Score of a name, which contains a word starting with the keyword.
+     */
+    public static final int WORD_PREFIX = 2;
+
+    /**
+     * Score of a name, which contains the keyword.
+     */
+    public static final int SUBSTRING = 3;
+
+    /**
+     * The matching TravelPort.
+     */
+    private final TravelPort port;
+
+    /**
+     * The score of the match. A typo increases the score by one, starting at SUBSTRING.
+     */
+    private final int score;
+
+    /**
+     * The length of the name, used for preferring shorter names with the same score.
+     */
+    private final int nameLength;
+
+    /**
+     * Creates a new match.
+     *
+     * @param port       the matching TravelPort.
+     * @param score      the score of the match.
+     * @param nameLength the length of the name.
+     */
+    private NameMatch(TravelPort port, int score, int nameLength) {
+        this.port = port;
+        this.score = score;
+        this.nameLength = nameLength;
+    }
+
+    /**
+     * Matches the name of a TravelPort against the keyword.
+     *
+     * @param port    the TravelPort.
+     * @param name    the lowercased name of the TravelPort.
+     * @param keyword the lowercased keyword.
+     * @return the match, or null if the name doesn't match the keyword.
+     */
+    public static NameMatch create(TravelPort port, String name, String keyword) {
+        int index = name.indexOf(keyword);
+        int score;
+
+        if (index == 0) {
+            score = name.length() == keyword.length() ? EXACT : PREFIX;
+        } else if (index > 0) {
+            score = name.contains(" " + keyword) ? WORD_PREFIX : SUBSTRING;
+        } else {
+            int maxDistance = getMaxDistance(keyword.length());
+            int distance = maxDistance > 0 ? getWordDistance(name, keyword, maxDistance) : Integer.MAX_VALUE;
+
+            if (distance > maxDistance) {
+                return null;
+            }
+            score = SUBSTRING + distance;
+        }
+
+        return new NameMatch(port, score, name.length());
+    }
+
+    /**
+     * Returns the maximum number of typos, which a name could differ from the keyword.
+     *
+     * @param keywordLength the length of the keyword.
+     * @return the maximum number of typos.
+     */
+    public static int getMaxDistance(int keywordLength) {
+        if (keywordLength < 4) {
+            return 0;
+        } else if (keywordLength < 8) {
+            return 1;
+        } else {
+            return 2;
+        }
+    }
+
+    /**
+     * Returns the TravelPort of the best match, if there is only one match with the best score. Names with typos are
+     * never used, so a typo can't make a command act on another TravelPort.
+     *
+     * @param matches the matches, sorted by their score.
+     * @return the TravelPort, or null if there is no unique best match.
+     */
+    public static TravelPort getBestMatch(List<NameMatch> matches) {
+        if (matches.isEmpty() || matches.get(0).score > SUBSTRING) {
+            return null;
+        } else if (matches.size() == 1 || matches.get(0).score < matches.get(1).score) {
+            return matches.get(0).port;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Compares the matches by their score, the length of the names and the ids of the TravelPorts.
+     *
+     * @param match the other match.
+     * @return negative, if this is the better match.
+     */
+    public int compareTo(NameMatch match) {
+        if (score != match.score) {
+            return score < match.score ? -1 : 1;
+        } else if (nameLength != match.nameLength) {
+            return nameLength < match.nameLength ? -1 : 1;
+        } else {
+            return port.getId().compareTo(match.port.getId());
+        }
+    }
+
+    /**
+     * @return the matching TravelPort.
+     */
+    public TravelPort getPort() {
+        return port;
+    }
+
+    /**
+     * @return the score of the match. Lower is better.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Returns the lowest number of typos between the keyword and the whole name or one of its words.
+     *
+     * @param name        the lowercased name.
+     * @param keyword     the lowercased keyword.
+     * @param maxDistance the maximum number of typos of interest.
+     * @return the number of typos, or a value above maxDistance.
+     */
+    private static int getWordDistance(String name, String keyword, int maxDistance) {
+        int distance = getDistance(name, 0, name.length(), keyword, maxDistance);
+
+        for (int begin = 0; begin < name.length() && distance > 0; ) {
+            int end = name.indexOf(' ', begin);
+            if (end < 0) {
+                end = name.length();
+            }
+
+            if (end - begin != name.length()) {
+                distance = Math.min(distance, getDistance(name, begin, end, keyword, Math.min(distance, maxDistance)));
+            }
+            begin = end + 1;
+        }
+
+        return distance;
+    }
+
+    /**
+     * Calculates the number of insertions, deletions, substitutions and transpositions of neighbours, which turn a
+     * part of the name into the keyword. Stops as soon as the number exceeds the maximum.
+     *
+     * @param name        the lowercased name.
+     * @param begin       the first index of the part of the name.
+     * @param end         the index after the last one of the part of the name.
+     * @param keyword     the lowercased keyword.
+     * @param maxDistance the maximum number of typos of interest.
+     * @return the number of typos, or a value above maxDistance.
+     */
+    private static int getDistance(String name, int begin, int end, String keyword, int maxDistance) {
+        int nameLength = end - begin, keywordLength = keyword.length();
+        if (Math.abs(nameLength - keywordLength) > maxDistance) {
+            return maxDistance + 1;
+        }
+
+        int[] previousRow = new int[keywordLength + 1];
+        int[] row = new int[keywordLength + 1];
+        int[] nextRow = new int[keywordLength + 1];
+        for (int column = 0; column <= keywordLength; ++column) {
+            row[column] = column;
+        }
+
+        for (int line = 1; line <= nameLength; ++line) {
+            int[] swap = previousRow;
+            previousRow = row;
+            row = nextRow;
+            nextRow = swap;
+
+            char nameChar = name.charAt(begin + line - 1);
+            int rowMinimum = row[0] = line;
+            for (int column = 1; column <= keywordLength; ++column) {
+                char keywordChar = keyword.charAt(column - 1);
+                int cost = nameChar == keywordChar ? 0 : 1;
+                int distance = Math.min(Math.min(previousRow[column] + 1, row[column - 1] + 1),
+                    previousRow[column - 1] + cost);
+
+                if (line > 1 && column > 1 && nameChar == keyword.charAt(column - 2) &&
+                    name.charAt(begin + line - 2) == keywordChar) {
+                    distance = Math.min(distance, nextRow[column - 2] + cost);
+                }
+
+                row[column] = distance;
+                rowMinimum = Math.min(rowMinimum, distance);
+            }
+
+            if (rowMinimum > maxDistance) {
+                return maxDistance + 1;
+            }
+        }
+
+        return row[keywordLength];
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.ports.index;
+
+import at.co.hohl.easytravel.ports.BoundingBox;
+import at.co.hohl.easytravel.ports.TravelPort;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Table of the bounding boxes of TravelPorts inside a single world. The bounds are stored in parallel arrays, indexed
+ * by a dense slot, so a scan over all boxes runs over packed memory. The scans first only check whether any slot
+ * matches at all. That loop is a plain reduction over the bounds, which gets vectorized by the JIT. Most lookups miss
+ * all boxes, only the others search the matching slots by splitting the slots in halves.
+ *
+ * @author Michael Hohl
+ */
+public class PackedAreaTable {
+    /**
+     * Initial number of slots.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * All bounds and coords get clamped to this limit, so the differences calculated by the scans can't overflow.
+     */
+    private static final int LIMIT = (1 << 30) - 1;
+
+    /**
+     * Number of slots, which get tested one by one when collecting the matches. Larger ranges get split first.
+     */
+    private static final int COLLECTED_RANGE = 128;
+
+    /**
+     * Bounds of the boxes.
+     */
+    private int[] lowX, lowY, lowZ, highX, highY, highZ;
+
+    /**
+     * TravelPorts of the slots.
+     */
+    private TravelPort[] ports;
+
+    /**
+     * Slots of the TravelPorts, mapped by the id of the TravelPort.
+     */
+    private final Map<Integer, Integer> slots = new HashMap<Integer, Integer>();
+
+    /**
+     * Number of used slots.
+     */
+    private int size;
+
+    /**
+     * Creates a new empty table.
+     */
+    public PackedAreaTable() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Adds the passed TravelPort with its bounding box.
+     *
+     * @param port the port to add.
+     * @param box  the bounding box of the port.
+     */
+    public void add(TravelPort port, BoundingBox box) {
+        if (size == ports.length) {
+            allocate(size * 2);
+        }
+
+        lowX[size] = clamp(box.getLowX());
+        lowY[size] = clamp(box.getLowY());
+        lowZ[size] = clamp(box.getLowZ());
+        highX[size] = clamp(box.getHighX());
+        highY[size] = clamp(box.getHighY());
+        highZ[size] = clamp(box.getHighZ());
+        ports[size] = port;
+        slots.put(port.getId(), size);
+        ++size;
+    }
+
+    /**
+     * Removes the passed TravelPort. The last slot gets moved into the freed one, so the slots stay dense.
+     *
+     * @param port the port to remove.
+     * @return true, if the port was inside the table.
+     */
+    public boolean remove(TravelPort port) {
+        Integer slot = slots.remove(port.getId());
+
+        if (slot == null) {
+            return false;
+        }
+
+        int last = --size;
+        if (slot != last) {
+            lowX[slot] = lowX[last];
+            lowY[slot] = lowY[last];
+            lowZ[slot] = lowZ[last];
+            highX[slot] = highX[last];
+            highY[slot] = highY[last];
+            highZ[slot] = highZ[last];
+            ports[slot] = ports[last];
+            slots.put(ports[slot].getId(), slot);
+        }
+        ports[last] = null;
+
+        return true;
+    }
+
+    /**
+     * Scans all slots for boxes containing the passed block.
+     *
+     * @param x       the x coord of the block.
+     * @param y       the y coord of the block.
+     * @param z       the z coord of the block.
+     * @param matches array which receives the matching slots. Needs to be at least as large as the table.
+     * @return the number of matching slots.
+     */
+    public int scan(int x, int y, int z, int[] matches) {
+        x = clamp(x);
+        y = clamp(y);
+        z = clamp(z);
+
+        // A block is a box, which is only one block large.
+        return scan(x, y, z, x, y, z, matches);
+    }
+
+    /**
+     * Scans all slots for boxes intersecting the passed box.
+     *
+     * @param box     the box to check.
+     * @param matches array which receives the matching slots. Needs to be at least as large as the table.
+     * @return the number of matching slots.
+     */
+    public int scan(BoundingBox box, int[] matches) {
+        return scan(clamp(box.getLowX()), clamp(box.getLowY()), clamp(box.getLowZ()),
+            clamp(box.getHighX()), clamp(box.getHighY()), clamp(box.getHighZ()), matches);
+    }
+
+    /**
+     * Scans all slots for boxes intersecting the passed box. The bounds need to be clamped already.
+     *
+     * @param boxLowX  the lowest x coord of the box.
+     * @param boxLowY  the lowest y coord of the box.
+     * @param boxLowZ  the lowest z coord of the box.
+     * @param boxHighX the highest x coord of the box.
+     * @param boxHighY the highest y coord of the box.
+     * @param boxHighZ the highest z coord of the box.
+     * @param matches  array which receives the matching slots.
+     * @return the number of matching slots.
+     */
+    private int scan(int boxLowX, int boxLowY, int boxLowZ, int boxHighX, int boxHighY, int boxHighZ,
+                     int[] matches) {
+        if (!intersectsAny(0, size, boxLowX, boxLowY, boxLowZ, boxHighX, boxHighY, boxHighZ)) {
+            return 0;
+        }
+
+        return collect(0, size, boxLowX, boxLowY, boxLowZ, boxHighX, boxHighY, boxHighZ, matches, 0);
+    }
+
+    /**
+     * Checks if any box of the passed range of slots intersects the passed box. The loop is a plain reduction over the
+     * bounds, which carries no dependency from one slot to the next, so it gets vectorized by the JIT.
+     *
+     * @param from     the first slot of the range.
+     * @param to       the slot after the last one of the range.
+     * @param boxLowX  the lowest x coord of the box.
+     * @param boxLowY  the lowest y coord of the box.
+     * @param boxLowZ  the lowest z coord of the box.
+     * @param boxHighX the highest x coord of the box.
+     * @param boxHighY the highest y coord of the box.
+     * @param boxHighZ the highest z coord of the box.
+     * @return true, if at least one box intersects.
+     */
+    private boolean intersectsAny(int from, int to, int boxLowX, int boxLowY, int boxLowZ,
+                                  int boxHighX, int boxHighY, int boxHighZ) {
+        int intersecting = 0;
+
+        // The sign bit of a difference is set, if the boxes are on the wrong side of that bound. So the sign bit of the
+        // inverted differences is only set for slots which intersect the box.
+        for (int slot = from; slot < to; ++slot) {
+            intersecting |= ~((boxHighX - lowX[slot]) | (highX[slot] - boxLowX)
+                | (boxHighY - lowY[slot]) | (highY[slot] - boxLowY)
+                | (boxHighZ - lowZ[slot]) | (highZ[slot] - boxLowZ));
+        }
+
+        return intersecting < 0;
+    }
+
+    /**
+     * Collects the slots of the passed range, which boxes intersect the passed box. Testing every slot on its own
+     * can't get vectorized, so large ranges get split in halves first, and only halves with matches get searched.
+     *
+     * @param from     the first slot of the range.
+     * @param to       the slot after the last one of the range.
+     * @param boxLowX  the lowest x coord of the box.
+     * @param boxLowY  the lowest y coord of the box.
+     * @param boxLowZ  the lowest z coord of the box.
+     * @param boxHighX the highest x coord of the box.
+     * @param boxHighY the highest y coord of the box.
+     * @param boxHighZ the highest z coord of the box.
+     * @param matches  array which receives the matching slots.
+     * @param count    the number of slots inside matches already.
+     * @return the number of slots inside matches now.
+     */
+    private int collect(int from, int to, int boxLowX, int boxLowY, int boxLowZ, int boxHighX, int boxHighY,
+                        int boxHighZ, int[] matches, int count) {
+        if (to - from <= COLLECTED_RANGE) {
+            for (int slot = from; slot < to; ++slot) {
+                if (lowX[slot] <= boxHighX && boxLowX <= highX[slot]
+                    && lowY[slot] <= boxHighY && boxLowY <= highY[slot]
+                    && lowZ[slot] <= boxHighZ && boxLowZ <= highZ[slot]) {
+                    matches[count++] = slot;
+                }
+            }
+            return count;
+        }
+
+        int middle = (from + to) >>> 1;
+        if (intersectsAny(from, middle, boxLowX, boxLowY, boxLowZ, boxHighX, boxHighY, boxHighZ)) {
+            count = collect(from, middle, boxLowX, boxLowY, boxLowZ, boxHighX, boxHighY, boxHighZ, matches, count);
+        }
+        if (intersectsAny(middle, to, boxLowX, boxLowY, boxLowZ, boxHighX, boxHighY, boxHighZ)) {
+            count = collect(middle, to, boxLowX, boxLowY, boxLowZ, boxHighX, boxHighY, boxHighZ, matches, count);
+        }
+        return count;
+    }
+
+    /**
+     * Calculates the distance between the passed block and the nearest box.
+     *
+     * @param x           the x coord of the block.
+     * @param y           the y coord of the block.
+     * @param z           the z coord of the block.
+     * @param maxDistance the maximum distance.
+     * @return the distance in blocks, or maxDistance if there is no box nearer.
+     */
+    public double distanceToNearest(int x, int y, int z, double maxDistance) {
+        double nearestSquared = maxDistance * maxDistance;
+        x = clamp(x);
+        y = clamp(y);
+        z = clamp(z);
+
+        for (int slot = 0; slot < size; ++slot) {
+            double distanceX = Math.max(0, Math.max(lowX[slot] - x, x - highX[slot]));
+            double distanceY = Math.max(0, Math.max(lowY[slot] - y, y - highY[slot]));
+            double distanceZ = Math.max(0, Math.max(lowZ[slot] - z, z - highZ[slot]));
+            nearestSquared = Math.min(nearestSquared,
+                distanceX * distanceX + distanceY * distanceY + distanceZ * distanceZ);
+        }
+
+        return Math.sqrt(nearestSquared);
+    }
+
+    /**
+     * Returns the TravelPort of the passed slot.
+     *
+     * @param slot the slot.
+     * @return the TravelPort.
+     */
+    public TravelPort getPort(int slot) {
+        return ports[slot];
+    }
+
+    /**
+     * @return number of used slots.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Resizes the arrays to the passed capacity.
+     *
+     * @param capacity the new capacity.
+     */
+    private void allocate(int capacity) {
+        lowX = resize(lowX, capacity);
+        lowY = resize(lowY, capacity);
+        lowZ = resize(lowZ, capacity);
+        highX = resize(highX, capacity);
+        highY = resize(highY, capacity);
+        highZ = resize(highZ, capacity);
+
+        TravelPort[] resizedPorts = new TravelPort[capacity];
+        if (ports != null) {
+            System.arraycopy(ports, 0, resizedPorts, 0, size);
+        }
+        ports = resizedPorts;
+    }
+
+    /**
+     * Clamps the passed coord to the limit of the table.
+     *
+     * @param coord the coord to clamp.
+     * @return the clamped coord.
+     */
+    private static int clamp(int coord) {
+        return Math.max(-LIMIT, Math.min(LIMIT, coord));
+    }
+
+    /**
+     * Copies the passed array into a new one with the passed capacity.
+     *
+     * @param array    the array to copy, or null.
+     * @param capacity the capacity of the new array.
+     * @return the new array.
+     */
+    private int[] resize(int[] array, int capacity) {
+        int[] resizedArray = new int[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, resizedArray, 0, size);
+        }
+        return resizedArray;
+    }
+}
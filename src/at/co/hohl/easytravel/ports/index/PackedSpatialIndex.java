@@ -0,0 +1,204 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.ports.index;
+
+import at.co.hohl.easytravel.ports.Area;
+import at.co.hohl.easytravel.ports.BoundingBox;
+import at.co.hohl.easytravel.ports.TravelPort;
+import at.co.hohl.easytravel.ports.WorldRegistry;
+import org.bukkit.Location;
+
+import java.util.*;
+
+/**
+ * Brute force index, which scans a PackedAreaTable per world. Fast enough for worlds with only a few TravelPorts,
+ * and needs no work at all when the areas get changed.
+ *
+ * @author Michael Hohl
+ */
+public class PackedSpatialIndex implements SpatialIndex {
+    /**
+     * Tables of the worlds, mapped by the id of the world.
+     */
+    private final Map<Integer, PackedAreaTable> tables = new HashMap<Integer, PackedAreaTable>();
+
+    /**
+     * Worlds used when the TravelPorts got indexed, mapped by the id of the TravelPort.
+     */
+    private final Map<Integer, Integer> indexedWorlds = new HashMap<Integer, Integer>();
+
+    /**
+     * TravelPorts with areas which have no bounding box. They get checked on every lookup.
+     */
+    private final List<TravelPort> unassignedPorts = new LinkedList<TravelPort>();
+
+    /**
+     * Buffer which receives the matching slots of a scan.
+     */
+    private int[] matches = new int[16];
+
+    /**
+     * Adds the passed TravelPort to the index.
+     *
+     * @param port the port to add.
+     */
+    public void add(TravelPort port) {
+        Area area = port.getArea();
+        BoundingBox box = area != null ? area.getBoundingBox() : null;
+
+        if (box != null) {
+            PackedAreaTable table = tables.get(box.getWorldId());
+            if (table == null) {
+                table = new PackedAreaTable();
+                tables.put(box.getWorldId(), table);
+            }
+
+            table.add(port, box);
+            indexedWorlds.put(port.getId(), box.getWorldId());
+
+            if (matches.length < table.size()) {
+                matches = new int[table.size() * 2];
+            }
+        } else if (area != null) {
+            unassignedPorts.add(port);
+        }
+    }
+
+    /**
+     * Removes the passed TravelPort from the index. Uses the area the TravelPort had, when it got added.
+     *
+     * @param port the port to remove.
+     */
+    public void remove(TravelPort port) {
+        Integer world = indexedWorlds.remove(port.getId());
+
+        if (world != null) {
+            PackedAreaTable table = tables.get(world);
+            table.remove(port);
+
+            if (table.size() == 0) {
+                tables.remove(world);
+            }
+        } else {
+            unassignedPorts.remove(port);
+        }
+    }
+
+    /**
+     * Updates the passed TravelPort, after its area got changed.
+     *
+     * @param port the port to update.
+     */
+    public void update(TravelPort port) {
+        remove(port);
+        add(port);
+    }
+
+    /**
+     * Removes all TravelPorts from the index.
+     */
+    public void clear() {
+        tables.clear();
+        indexedWorlds.clear();
+        unassignedPorts.clear();
+    }
+
+    /**
+     * Searches the TravelPorts at the passed location and adds them to the passed collection.
+     *
+     * @param location the location to search for.
+     * @param result   collection which receives the TravelPorts containing the location.
+     */
+    public void search(Location location, Collection<TravelPort> result) {
+        search(WorldRegistry.getId(location.getWorld()), location.getBlockX(), location.getBlockY(),
+            location.getBlockZ(), result);
+    }
+
+    /**
+     * Searches the TravelPorts containing the passed block and adds them to the passed collection.
+     *
+     * @param worldId the id of the world of the block.
+     * @param x       the x coord of the block.
+     * @param y       the y coord of the block.
+     * @param z       the z coord of the block.
+     * @param result  collection which receives the TravelPorts containing the block.
+     */
+    public void search(int worldId, int x, int y, int z, Collection<TravelPort> result) {
+        PackedAreaTable table = tables.get(worldId);
+
+        if (table != null) {
+            int count = table.scan(x, y, z, matches);
+
+            for (int index = 0; index < count; ++index) {
+                TravelPort port = table.getPort(matches[index]);
+                if (port.getArea().contains(worldId, x, y, z)) {
+                    result.add(port);
+                }
+            }
+        }
+
+        if (!unassignedPorts.isEmpty()) {
+            for (TravelPort port : unassignedPorts) {
+                if (port.getArea().contains(worldId, x, y, z)) {
+                    result.add(port);
+                }
+            }
+        }
+    }
+
+    /**
+     * Searches the TravelPorts which bounding boxes intersect the passed box and adds them to the passed collection.
+     *
+     * @param box    the box to search for.
+     * @param result collection which receives the TravelPorts intersecting the box.
+     */
+    public void search(BoundingBox box, Collection<TravelPort> result) {
+        PackedAreaTable table = tables.get(box.getWorldId());
+
+        if (table != null) {
+            int count = table.scan(box, matches);
+
+            for (int index = 0; index < count; ++index) {
+                result.add(table.getPort(matches[index]));
+            }
+        }
+
+        result.addAll(unassignedPorts);
+    }
+
+    /**
+     * Calculates a lower bound of the distance between the passed location and the nearest TravelPort.
+     *
+     * @param location    the location to measure from.
+     * @param maxDistance the maximum distance to look for TravelPorts.
+     * @return the distance in blocks, or maxDistance if there is no TravelPort nearer.
+     */
+    public double distanceToNearest(Location location, double maxDistance) {
+        PackedAreaTable table = tables.get(WorldRegistry.getId(location.getWorld()));
+
+        if (!unassignedPorts.isEmpty()) {
+            return 0;
+        } else if (table == null) {
+            return maxDistance;
+        }
+
+        return table.distanceToNearest(location.getBlockX(), location.getBlockY(), location.getBlockZ(),
+            maxDistance);
+    }
+}
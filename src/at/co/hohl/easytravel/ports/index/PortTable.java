@@ -0,0 +1,387 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.ports.index;
+
+import at.co.hohl.easytravel.ports.TravelPort;
+
+import java.util.*;
+
+/**
+ * Immutable table of TravelPorts, mapped by their ids. The containers replace it with a new version, every time
+ * TravelPorts get added or removed. Other than the tables of the containers, it could get read from any thread without
+ * locking.
+ * <p/>
+ * The table is a trie, which uses five bits of the id per level, starting with the highest ones. A new version only
+ * copies the nodes on the path to the changed TravelPort and shares all others with the old version. So adding or
+ * removing a TravelPort costs a few small arrays, regardless of the size of the table.
+ *
+ * @author Michael Hohl
+ */
+public final class PortTable {
+    /**
+     * Table without any TravelPorts.
+     */
+    public static final PortTable EMPTY = new PortTable(Node.EMPTY, 0, 0);
+
+    /**
+     * Number of bits of the id used per level.
+     */
+    private static final int BITS = 5;
+
+    /**
+     * Shift of the id at the root. The root uses the two highest bits, so the last level uses the lowest five.
+     */
+    private static final int ROOT_SHIFT = 30;
+
+    /**
+     * Maximum depth of the trie.
+     */
+    private static final int MAX_DEPTH = ROOT_SHIFT / BITS + 1;
+
+    /**
+     * The root of the trie.
+     */
+    private final Node root;
+
+    /**
+     * Number of TravelPorts.
+     */
+    private final int size;
+
+    /**
+     * Modification count of the container, when the table got created.
+     */
+    private final int version;
+
+    /**
+     * The TravelPorts, sorted by their ids.
+     */
+    private final Collection<TravelPort> values = new AbstractCollection<TravelPort>() {
+        @Override
+        public Iterator<TravelPort> iterator() {
+            return new PortIterator(root);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    };
+
+    /**
+     * Creates a new table.
+     *
+     * @param root    the root of the trie.
+     * @param size    the number of TravelPorts.
+     * @param version the modification count of the container.
+     */
+    private PortTable(Node root, int size, int version) {
+        this.root = root;
+        this.size = size;
+        this.version = version;
+    }
+
+    /**
+     * Creates a table out of the passed TravelPorts. If several TravelPorts have the same id, the last one is used.
+     *
+     * @param ports   the TravelPorts of the table.
+     * @param version the modification count of the container.
+     * @return the created table.
+     */
+    public static PortTable create(Collection<? extends TravelPort> ports, int version) {
+        PortTable table = EMPTY;
+
+        for (TravelPort port : ports) {
+            table = table.with(port, version);
+        }
+
+        return table.version == version ? table : new PortTable(table.root, table.size, version);
+    }
+
+    /**
+     * Returns a new version of the table, which contains the passed TravelPort. A TravelPort with the same id gets
+     * replaced.
+     *
+     * @param port    the TravelPort to add.
+     * @param version the modification count of the container.
+     * @return the new version of the table.
+     */
+    public PortTable with(TravelPort port, int version) {
+        int newSize = get(port.getId()) == null ? size + 1 : size;
+        return new PortTable(insert(root, port, port.getId(), ROOT_SHIFT), newSize, version);
+    }
+
+    /**
+     * Returns a new version of the table, which doesn't contain the TravelPort with the passed id.
+     *
+     * @param id      the id of the TravelPort to remove.
+     * @param version the modification count of the container.
+     * @return the new version of the table.
+     */
+    public PortTable without(Integer id, int version) {
+        if (get(id) == null) {
+            return new PortTable(root, size, version);
+        }
+
+        Node newRoot = remove(root, id, ROOT_SHIFT);
+        return new PortTable(newRoot != null ? newRoot : Node.EMPTY, size - 1, version);
+    }
+
+    /**
+     * Returns the TravelPort with the passed id, or null if there is none.
+     *
+     * @param id the id of the TravelPort.
+     * @return the TravelPort or null.
+     */
+    public TravelPort get(Integer id) {
+        if (id == null) {
+            return null;
+        }
+
+        int key = id;
+        Node node = root;
+        for (int shift = ROOT_SHIFT; ; shift -= BITS) {
+            int bit = 1 << ((key >>> shift) & 31);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof Node) {
+                node = (Node) slot;
+            } else {
+                TravelPort port = (TravelPort) slot;
+                return port.getId() == key ? port : null;
+            }
+        }
+    }
+
+    /**
+     * @return unmodifiable collection of the TravelPorts, sorted by their ids.
+     */
+    public Collection<TravelPort> getAll() {
+        return values;
+    }
+
+    /**
+     * @return number of TravelPorts.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return modification count of the container, when the table got created.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns a copy of the passed node, which contains the passed TravelPort.
+     *
+     * @param node  the node to copy.
+     * @param port  the TravelPort to add.
+     * @param key   the id of the TravelPort.
+     * @param shift the shift of the id at the level of the node.
+     * @return the copy of the node.
+     */
+    private static Node insert(Node node, TravelPort port, int key, int shift) {
+        int bit = 1 << ((key >>> shift) & 31);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+
+        if ((node.bitmap & bit) == 0) {
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            slots[index] = port;
+            System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+            return new Node(node.bitmap | bit, slots);
+        }
+
+        Object slot = node.slots[index];
+        Object replacement;
+        if (slot instanceof Node) {
+            replacement = insert((Node) slot, port, key, shift - BITS);
+        } else if (((TravelPort) slot).getId() == key) {
+            replacement = port;
+        } else {
+            // Both TravelPorts share the bits up to here, so they need a node of their own.
+            TravelPort other = (TravelPort) slot;
+            replacement = insert(insert(Node.EMPTY, other, other.getId(), shift - BITS), port, key, shift - BITS);
+        }
+
+        Object[] slots = node.slots.clone();
+        slots[index] = replacement;
+        return new Node(node.bitmap, slots);
+    }
+
+    /**
+     * Returns a copy of the passed node, which doesn't contain the TravelPort with the passed id.
+     *
+     * @param node  the node to copy.
+     * @param key   the id of the TravelPort to remove.
+     * @param shift the shift of the id at the level of the node.
+     * @return the copy of the node, or null if it would be empty.
+     */
+    private static Node remove(Node node, int key, int shift) {
+        int bit = 1 << ((key >>> shift) & 31);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        Object slot = node.slots[index];
+
+        if (slot instanceof Node) {
+            Node child = remove((Node) slot, key, shift - BITS);
+
+            if (child != null) {
+                // A node holding only a single TravelPort gets replaced by the TravelPort.
+                Object[] slots = node.slots.clone();
+                slots[index] = child.slots.length == 1 && !(child.slots[0] instanceof Node) ? child.slots[0] : child;
+                return new Node(node.bitmap, slots);
+            }
+        }
+
+        if (node.slots.length == 1) {
+            return null;
+        }
+
+        Object[] slots = new Object[node.slots.length - 1];
+        System.arraycopy(node.slots, 0, slots, 0, index);
+        System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+        return new Node(node.bitmap & ~bit, slots);
+    }
+
+    /**
+     * Node of the trie. The slots contain TravelPorts or other nodes, in the order of the set bits of the bitmap.
+     */
+    private static final class Node {
+        /**
+         * Node without any slots.
+         */
+        private static final Node EMPTY = new Node(0, new Object[0]);
+
+        /**
+         * Bitmap with a bit set for every used slot.
+         */
+        private final int bitmap;
+
+        /**
+         * The used slots.
+         */
+        private final Object[] slots;
+
+        /**
+         * Creates a new node.
+         *
+         * @param bitmap bitmap with a bit set for every used slot.
+         * @param slots  the used slots.
+         */
+        private Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * Iterates the TravelPorts of a trie in the order of their ids.
+     */
+    private static final class PortIterator implements Iterator<TravelPort> {
+        /**
+         * The nodes on the path to the next TravelPort.
+         */
+        private final Node[] nodes = new Node[MAX_DEPTH];
+
+        /**
+         * The index of the next slot of every node on the path.
+         */
+        private final int[] indexes = new int[MAX_DEPTH];
+
+        /**
+         * The depth of the current node, or -1 if there are no more TravelPorts.
+         */
+        private int depth;
+
+        /**
+         * The next TravelPort, or null if there are no more.
+         */
+        private TravelPort next;
+
+        /**
+         * Creates a new iterator.
+         *
+         * @param root the root of the trie.
+         */
+        private PortIterator(Node root) {
+            nodes[0] = root;
+            advance();
+        }
+
+        /**
+         * @return true, if there are more TravelPorts.
+         */
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        /**
+         * @return the next TravelPort.
+         */
+        public TravelPort next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            TravelPort port = next;
+            advance();
+            return port;
+        }
+
+        /**
+         * The table is immutable.
+         */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Moves to the next TravelPort.
+         */
+        private void advance() {
+            next = null;
+
+            while (depth >= 0) {
+                Node node = nodes[depth];
+
+                if (indexes[depth] == node.slots.length) {
+                    --depth;
+                } else {
+                    Object slot = node.slots[indexes[depth]++];
+
+                    if (slot instanceof Node) {
+                        ++depth;
+                        nodes[depth] = (Node) slot;
+                        indexes[depth] = 0;
+                    } else {
+                        next = (TravelPort) slot;
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
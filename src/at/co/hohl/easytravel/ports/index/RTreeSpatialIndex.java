@@ -0,0 +1,601 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.ports.index;
+
+import at.co.hohl.easytravel.ports.Area;
+import at.co.hohl.easytravel.ports.BoundingBox;
+import at.co.hohl.easytravel.ports.TravelPort;
+import at.co.hohl.easytravel.ports.WorldRegistry;
+import org.bukkit.Location;
+
+import java.util.*;
+
+/**
+ * Dynamic R-tree (with quadratic split) over the bounding boxes of the TravelPorts, one tree per world. Other than the
+ * ChunkSpatialIndex, a TravelPort is stored only once, no matter how large its area is. So lookups stay logarithmic,
+ * even for huge or overlapping areas.
+ *
+ * @author Michael Hohl
+ */
+public class RTreeSpatialIndex implements SpatialIndex {
+    /**
+     * Maximum number of children of a node.
+     */
+    private static final int MAX_CHILDREN = 8;
+
+    /**
+     * Minimum number of children of a node, except the root.
+     */
+    private static final int MIN_CHILDREN = 3;
+
+    /**
+     * Root nodes of the trees, mapped by the id of the world.
+     */
+    private final Map<Integer, Node> roots = new HashMap<Integer, Node>();
+
+    /**
+     * Entries of the indexed TravelPorts, mapped by the id of the TravelPort.
+     */
+    private final Map<Integer, Node> entries = new HashMap<Integer, Node>();
+
+    /**
+     * TravelPorts with areas which have no bounding box. They get checked on every lookup.
+     */
+    private final List<TravelPort> unassignedPorts = new LinkedList<TravelPort>();
+
+    /**
+     * Adds the passed TravelPort to the index.
+     *
+     * @param port the port to add.
+     */
+    public void add(TravelPort port) {
+        Area area = port.getArea();
+        BoundingBox box = area != null ? area.getBoundingBox() : null;
+
+        if (box != null) {
+            Node entry = new Node(port, box);
+            entries.put(port.getId(), entry);
+            insert(box.getWorldId(), entry);
+        } else if (area != null) {
+            unassignedPorts.add(port);
+        }
+    }
+
+    /**
+     * Removes the passed TravelPort from the index. Uses the area the TravelPort had, when it got added.
+     *
+     * @param port the port to remove.
+     */
+    public void remove(TravelPort port) {
+        Node entry = entries.remove(port.getId());
+
+        if (entry != null) {
+            delete(entry);
+        } else {
+            unassignedPorts.remove(port);
+        }
+    }
+
+    /**
+     * Updates the passed TravelPort, after its area got changed.
+     *
+     * @param port the port to update.
+     */
+    public void update(TravelPort port) {
+        remove(port);
+        add(port);
+    }
+
+    /**
+     * Removes all TravelPorts from the index.
+     */
+    public void clear() {
+        roots.clear();
+        entries.clear();
+        unassignedPorts.clear();
+    }
+
+    /**
+     * Searches the TravelPorts at the passed location and adds them to the passed collection.
+     *
+     * @param location the location to search for.
+     * @param result   collection which receives the TravelPorts containing the location.
+     */
+    public void search(Location location, Collection<TravelPort> result) {
+        search(WorldRegistry.getId(location.getWorld()), location.getBlockX(), location.getBlockY(),
+            location.getBlockZ(), result);
+    }
+
+    /**
+     * Searches the TravelPorts containing the passed block and adds them to the passed collection.
+     *
+     * @param worldId the id of the world of the block.
+     * @param x       the x coord of the block.
+     * @param y       the y coord of the block.
+     * @param z       the z coord of the block.
+     * @param result  collection which receives the TravelPorts containing the block.
+     */
+    public void search(int worldId, int x, int y, int z, Collection<TravelPort> result) {
+        Node root = roots.get(worldId);
+
+        if (root != null) {
+            search(root, worldId, x, y, z, result);
+        }
+
+        if (!unassignedPorts.isEmpty()) {
+            for (TravelPort port : unassignedPorts) {
+                if (port.getArea().contains(worldId, x, y, z)) {
+                    result.add(port);
+                }
+            }
+        }
+    }
+
+    /**
+     * Searches the TravelPorts which bounding boxes intersect the passed box and adds them to the passed collection.
+     *
+     * @param box    the box to search for.
+     * @param result collection which receives the TravelPorts intersecting the box.
+     */
+    public void search(BoundingBox box, Collection<TravelPort> result) {
+        Node root = roots.get(box.getWorldId());
+
+        if (root != null) {
+            search(root, box, result);
+        }
+
+        result.addAll(unassignedPorts);
+    }
+
+    /**
+     * Calculates a lower bound of the distance between the passed location and the nearest TravelPort.
+     *
+     * @param location    the location to measure from.
+     * @param maxDistance the maximum distance to look for TravelPorts.
+     * @return the distance in blocks, or maxDistance if there is no TravelPort nearer.
+     */
+    public double distanceToNearest(Location location, double maxDistance) {
+        Node root = roots.get(WorldRegistry.getId(location.getWorld()));
+
+        if (!unassignedPorts.isEmpty()) {
+            return 0;
+        } else if (root == null) {
+            return maxDistance;
+        }
+
+        return distanceToNearest(root, location.getBlockX(), location.getBlockY(), location.getBlockZ(),
+            maxDistance);
+    }
+
+    /**
+     * Searches the subtree of the passed node for the nearest TravelPort. Skips all nodes, which are farther away
+     * than the nearest TravelPort found so far.
+     *
+     * @param node            the node to search.
+     * @param x               the x coord to measure from.
+     * @param y               the y coord to measure from.
+     * @param z               the z coord to measure from.
+     * @param nearestDistance the distance of the nearest TravelPort found so far.
+     * @return the distance of the nearest TravelPort.
+     */
+    private static double distanceToNearest(Node node, int x, int y, int z, double nearestDistance) {
+        for (int index = 0, size = node.children.size(); index < size; ++index) {
+            Node child = node.children.get(index);
+            double distance = child.distance(x, y, z);
+
+            if (distance < nearestDistance) {
+                if (child.port == null) {
+                    nearestDistance = distanceToNearest(child, x, y, z, nearestDistance);
+                } else {
+                    nearestDistance = distance;
+                }
+            }
+        }
+
+        return nearestDistance;
+    }
+
+    /**
+     * Searches the subtree of the passed node for TravelPorts containing the block.
+     *
+     * @param node    the node to search.
+     * @param worldId the id of the world of the block.
+     * @param x       the x coord of the block.
+     * @param y       the y coord of the block.
+     * @param z       the z coord of the block.
+     * @param result  collection which receives the founded TravelPorts.
+     */
+    private static void search(Node node, int worldId, int x, int y, int z, Collection<TravelPort> result) {
+        for (int index = 0, size = node.children.size(); index < size; ++index) {
+            Node child = node.children.get(index);
+
+            if (child.contains(x, y, z)) {
+                if (child.port == null) {
+                    search(child, worldId, x, y, z, result);
+                } else if (child.port.getArea().contains(worldId, x, y, z)) {
+                    result.add(child.port);
+                }
+            }
+        }
+    }
+
+    /**
+     * Searches the subtree of the passed node for TravelPorts intersecting the box.
+     *
+     * @param node   the node to search.
+     * @param box    the box to search for.
+     * @param result collection which receives the founded TravelPorts.
+     */
+    private static void search(Node node, BoundingBox box, Collection<TravelPort> result) {
+        for (int index = 0, size = node.children.size(); index < size; ++index) {
+            Node child = node.children.get(index);
+
+            if (child.intersects(box)) {
+                if (child.port == null) {
+                    search(child, box, result);
+                } else {
+                    result.add(child.port);
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts the passed entry into the tree of the passed world.
+     *
+     * @param world the id of the world.
+     * @param entry the entry to insert.
+     */
+    private void insert(int world, Node entry) {
+        Node root = roots.get(world);
+        if (root == null) {
+            root = new Node(true);
+            roots.put(world, root);
+        }
+
+        // Choose the leaf, which needs the least enlargement.
+        Node node = root;
+        while (!node.leaf) {
+            Node bestChild = null;
+            double bestEnlargement = Double.MAX_VALUE, bestVolume = Double.MAX_VALUE;
+
+            for (Node child : node.children) {
+                double volume = child.volume();
+                double enlargement = child.volumeWith(entry) - volume;
+
+                if (enlargement < bestEnlargement || (enlargement == bestEnlargement && volume < bestVolume)) {
+                    bestChild = child;
+                    bestEnlargement = enlargement;
+                    bestVolume = volume;
+                }
+            }
+
+            node = bestChild;
+        }
+
+        node.addChild(entry);
+
+        // Split overflowing nodes and fix the bounds up to the root.
+        while (node != null) {
+            if (node.children.size() > MAX_CHILDREN) {
+                Node sibling = split(node);
+
+                if (node.parent == null) {
+                    Node newRoot = new Node(false);
+                    newRoot.addChild(node);
+                    newRoot.addChild(sibling);
+                    roots.put(world, newRoot);
+                    break;
+                } else {
+                    node.parent.addChild(sibling);
+                }
+            } else {
+                node.recalculateBounds();
+            }
+
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Deletes the passed entry out of its tree and condenses the tree afterwards.
+     *
+     * @param entry the entry to delete.
+     */
+    private void delete(Node entry) {
+        int world = entry.box.getWorldId();
+        Node node = entry.parent;
+        node.children.remove(entry);
+
+        // Remove underfull nodes and collect their entries for reinserting.
+        List<Node> orphans = new LinkedList<Node>();
+        Node root = node;
+        while (node != null) {
+            Node parent = node.parent;
+
+            if (parent != null && node.children.size() < MIN_CHILDREN) {
+                parent.children.remove(node);
+                collectEntries(node, orphans);
+            } else {
+                node.recalculateBounds();
+            }
+
+            root = node;
+            node = parent;
+        }
+
+        // Shorten the tree, when the root has only one inner node left.
+        while (!root.leaf && root.children.size() == 1) {
+            root = root.children.get(0);
+            root.parent = null;
+        }
+
+        if (root.children.isEmpty()) {
+            roots.remove(world);
+        } else {
+            roots.put(world, root);
+        }
+
+        for (Node orphan : orphans) {
+            insert(world, orphan);
+        }
+    }
+
+    /**
+     * Collects all entries inside the subtree of the passed node.
+     *
+     * @param node    the node to collect the entries of.
+     * @param entries list which receives the entries.
+     */
+    private static void collectEntries(Node node, List<Node> entries) {
+        for (Node child : node.children) {
+            if (child.port == null) {
+                collectEntries(child, entries);
+            } else {
+                entries.add(child);
+            }
+        }
+    }
+
+    /**
+     * Splits the passed overflowing node, by using the quadratic split of Guttman.
+     *
+     * @param node the node to split.
+     * @return the new sibling, which holds the half of the children.
+     */
+    private static Node split(Node node) {
+        List<Node> remaining = new LinkedList<Node>(node.children);
+        node.children.clear();
+        node.recalculateBounds();
+        Node sibling = new Node(node.leaf);
+
+        // Pick the two children, which would waste the most space inside the same node.
+        Node seed1 = null, seed2 = null;
+        double worstWaste = -Double.MAX_VALUE;
+        for (int first = 0; first < remaining.size(); ++first) {
+            for (int second = first + 1; second < remaining.size(); ++second) {
+                Node child1 = remaining.get(first), child2 = remaining.get(second);
+                double waste = child1.volumeWith(child2) - child1.volume() - child2.volume();
+
+                if (waste > worstWaste) {
+                    worstWaste = waste;
+                    seed1 = child1;
+                    seed2 = child2;
+                }
+            }
+        }
+        remaining.remove(seed1);
+        remaining.remove(seed2);
+        node.addChild(seed1);
+        sibling.addChild(seed2);
+
+        // Distribute the others to the node, which needs the least enlargement.
+        while (!remaining.isEmpty()) {
+            if (node.children.size() + remaining.size() <= MIN_CHILDREN) {
+                for (Node child : remaining) {
+                    node.addChild(child);
+                }
+                break;
+            } else if (sibling.children.size() + remaining.size() <= MIN_CHILDREN) {
+                for (Node child : remaining) {
+                    sibling.addChild(child);
+                }
+                break;
+            }
+
+            Node nextChild = null;
+            double nodeEnlargement = 0, siblingEnlargement = 0, biggestDifference = -1;
+            for (Node child : remaining) {
+                double enlargement1 = node.volumeWith(child) - node.volume();
+                double enlargement2 = sibling.volumeWith(child) - sibling.volume();
+
+                if (Math.abs(enlargement1 - enlargement2) > biggestDifference) {
+                    biggestDifference = Math.abs(enlargement1 - enlargement2);
+                    nodeEnlargement = enlargement1;
+                    siblingEnlargement = enlargement2;
+                    nextChild = child;
+                }
+            }
+            remaining.remove(nextChild);
+
+            if (nodeEnlargement < siblingEnlargement || (nodeEnlargement == siblingEnlargement &&
+                node.children.size() <= sibling.children.size())) {
+                node.addChild(nextChild);
+            } else {
+                sibling.addChild(nextChild);
+            }
+        }
+
+        return sibling;
+    }
+
+    /**
+     * Node of a tree. Entries are nodes with an TravelPort and without children.
+     */
+    private static final class Node {
+        /**
+         * True, if the children of this node are entries.
+         */
+        private final boolean leaf;
+
+        /**
+         * Children of this node. Null for entries.
+         */
+        private final List<Node> children;
+
+        /**
+         * The indexed TravelPort. Null for all nodes, except entries.
+         */
+        private final TravelPort port;
+
+        /**
+         * The bounding box used when the TravelPort got indexed. Null for all nodes, except entries.
+         */
+        private final BoundingBox box;
+
+        /**
+         * The parent node.
+         */
+        private Node parent;
+
+        /**
+         * Bounds, which contain all children.
+         */
+        private int lowX, lowY, lowZ, highX, highY, highZ;
+
+        /**
+         * Creates a new empty node.
+         *
+         * @param leaf true, if the children of this node are entries.
+         */
+        private Node(boolean leaf) {
+            this.leaf = leaf;
+            this.children = new ArrayList<Node>(MAX_CHILDREN + 1);
+            this.port = null;
+            this.box = null;
+            recalculateBounds();
+        }
+
+        /**
+         * Creates a new entry.
+         *
+         * @param port the TravelPort of the entry.
+         * @param box  the bounding box of the TravelPort.
+         */
+        private Node(TravelPort port, BoundingBox box) {
+            this.leaf = false;
+            this.children = null;
+            this.port = port;
+            this.box = box;
+            lowX = box.getLowX();
+            lowY = box.getLowY();
+            lowZ = box.getLowZ();
+            highX = box.getHighX();
+            highY = box.getHighY();
+            highZ = box.getHighZ();
+        }
+
+        /**
+         * Adds the passed child and enlarges the bounds of this node.
+         *
+         * @param child the child to add.
+         */
+        private void addChild(Node child) {
+            children.add(child);
+            child.parent = this;
+
+            lowX = Math.min(lowX, child.lowX);
+            lowY = Math.min(lowY, child.lowY);
+            lowZ = Math.min(lowZ, child.lowZ);
+            highX = Math.max(highX, child.highX);
+            highY = Math.max(highY, child.highY);
+            highZ = Math.max(highZ, child.highZ);
+        }
+
+        /**
+         * Recalculates the bounds of this node out of its children.
+         */
+        private void recalculateBounds() {
+            lowX = lowY = lowZ = Integer.MAX_VALUE;
+            highX = highY = highZ = Integer.MIN_VALUE;
+
+            for (Node child : children) {
+                lowX = Math.min(lowX, child.lowX);
+                lowY = Math.min(lowY, child.lowY);
+                lowZ = Math.min(lowZ, child.lowZ);
+                highX = Math.max(highX, child.highX);
+                highY = Math.max(highY, child.highY);
+                highZ = Math.max(highZ, child.highZ);
+            }
+        }
+
+        /**
+         * @return the number of blocks inside the bounds.
+         */
+        private double volume() {
+            if (lowX > highX) {
+                return 0;
+            }
+
+            return (highX - lowX + 1.0) * (highY - lowY + 1.0) * (highZ - lowZ + 1.0);
+        }
+
+        /**
+         * Calculates the volume of the bounds, which would contain this and the passed node.
+         *
+         * @param other the other node.
+         * @return the volume of the union.
+         */
+        private double volumeWith(Node other) {
+            if (lowX > highX) {
+                return other.volume();
+            }
+
+            return (Math.max(highX, other.highX) - Math.min(lowX, other.lowX) + 1.0)
+                * (Math.max(highY, other.highY) - Math.min(lowY, other.lowY) + 1.0)
+                * (Math.max(highZ, other.highZ) - Math.min(lowZ, other.lowZ) + 1.0);
+        }
+
+        /**
+         * @return the distance between the passed block and the bounds.
+         */
+        private double distance(int x, int y, int z) {
+            double distanceX = Math.max(0, Math.max(lowX - x, x - highX));
+            double distanceY = Math.max(0, Math.max(lowY - y, y - highY));
+            double distanceZ = Math.max(0, Math.max(lowZ - z, z - highZ));
+            return Math.sqrt(distanceX * distanceX + distanceY * distanceY + distanceZ * distanceZ);
+        }
+
+        /**
+         * @return true, if the passed block is inside the bounds.
+         */
+        private boolean contains(int x, int y, int z) {
+            return lowX <= x && x <= highX && lowY <= y && y <= highY && lowZ <= z && z <= highZ;
+        }
+
+        /**
+         * @return true, if the passed box intersects the bounds.
+         */
+        private boolean intersects(BoundingBox box) {
+            return lowX <= box.getHighX() && box.getLowX() <= highX
+                && lowY <= box.getHighY() && box.getLowY() <= highY
+                && lowZ <= box.getHighZ() && box.getLowZ() <= highZ;
+        }
+    }
+}
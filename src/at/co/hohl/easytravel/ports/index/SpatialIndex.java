@@ -0,0 +1,95 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.easytravel.ports.index;
+
+import at.co.hohl.easytravel.ports.BoundingBox;
+import at.co.hohl.easytravel.ports.TravelPort;
+import org.bukkit.Location;
+
+import java.util.Collection;
+
+/**
+ * Index used by the TravelPortContainers for looking up TravelPorts by their area.
+ *
+ * @author Michael Hohl
+ */
+public interface SpatialIndex {
+    /**
+     * Adds the passed TravelPort to the index.
+     *
+     * @param port the port to add.
+     */
+    void add(TravelPort port);
+
+    /**
+     * Removes the passed TravelPort from the index. Uses the area the TravelPort had, when it got added.
+     *
+     * @param port the port to remove.
+     */
+    void remove(TravelPort port);
+
+    /**
+     * Updates the passed TravelPort, after its area got changed.
+     *
+     * @param port the port to update.
+     */
+    void update(TravelPort port);
+
+    /**
+     * Removes all TravelPorts from the index.
+     */
+    void clear();
+
+    /**
+     * Searches the TravelPorts at the passed location and adds them to the passed collection.
+     *
+     * @param location the location to search for.
+     * @param result   collection which receives the TravelPorts containing the location.
+     */
+    void search(Location location, Collection<TravelPort> result);
+
+    /**
+     * Searches the TravelPorts containing the passed block and adds them to the passed collection. Doesn't allocate
+     * any objects, as long as the collection has enough capacity.
+     *
+     * @param worldId the id of the world of the block.
+     * @param x       the x coord of the block.
+     * @param y       the y coord of the block.
+     * @param z       the z coord of the block.
+     * @param result  collection which receives the TravelPorts containing the block.
+     */
+    void search(int worldId, int x, int y, int z, Collection<TravelPort> result);
+
+    /**
+     * Searches the TravelPorts which bounding boxes intersect the passed box and adds them to the passed collection.
+     *
+     * @param box    the box to search for.
+     * @param result collection which receives the TravelPorts intersecting the box.
+     */
+    void search(BoundingBox box, Collection<TravelPort> result);
+
+    /**
+     * Calculates a lower bound of the distance between the passed location and the nearest TravelPort.
+     *
+     * @param location    the location to measure from.
+     * @param maxDistance the maximum distance to look for TravelPorts.
+     * @return the distance in blocks, or maxDistance if there is no TravelPort nearer.
+     */
+    double distanceToNearest(Location location, double maxDistance);
+}
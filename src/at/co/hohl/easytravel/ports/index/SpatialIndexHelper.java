@@ -0,0 +1,50 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.easytravel.ports.index;
+
+/**
+ * Helper for creating the SpatialIndex configured by the user.
+ *
+ * @author Michael Hohl
+ */
+public final class SpatialIndexHelper {
+    /**
+     * Creates the SpatialIndex of the passed type.
+     *
+     * @param type     the type of the index. ('chunk', 'rtree' or 'packed')
+     * @param cellSize the size of the cells of the 'chunk' index.
+     * @return the created index. A 'chunk' index, if the type is unknown.
+     */
+    public static SpatialIndex create(String type, int cellSize) {
+        if ("rtree".equalsIgnoreCase(type)) {
+            return new RTreeSpatialIndex();
+        } else if ("packed".equalsIgnoreCase(type)) {
+            return new PackedSpatialIndex();
+        } else {
+            return new ChunkSpatialIndex(cellSize);
+        }
+    }
+
+    /**
+     * No need of creating an instance of that!
+     */
+    private SpatialIndexHelper() {
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.co.hohl.utils;
+
+/**
+ * Hash map with primitive long keys. Other than a HashMap with Long keys, looking up a value doesn't need to box the
+ * key, so no objects get allocated. Null values are not supported.
+ *
+ * @param <V> the type of the values.
+ * @author Michael Hohl
+ */
+public final class LongHashMap<V> {
+    /**
+     * Keys of the entries.
+     */
+    private long[] keys;
+
+    /**
+     * Values of the entries, in the same order as the keys. Empty slots contain null.
+     */
+    private Object[] values;
+
+    /**
+     * Number of entries inside the map.
+     */
+    private int size;
+
+    /**
+     * Creates a new empty map.
+     */
+    public LongHashMap() {
+        keys = new long[16];
+        values = new Object[16];
+    }
+
+    /**
+     * Returns the value of the passed key.
+     *
+     * @param key the key to look up.
+     * @return the value, or null if there is no value for the key.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the value of the passed key.
+     *
+     * @param key   the key.
+     * @param value the value. Must not be null.
+     */
+    public void put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("LongHashMap doesn't support null values!");
+        }
+
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (values[slot] != null && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        if (values[slot] == null) {
+            keys[slot] = key;
+            ++size;
+        }
+        values[slot] = value;
+
+        // Keep the table at most half full.
+        if (size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+    }
+
+    /**
+     * Removes the value of the passed key.
+     *
+     * @param key the key to remove.
+     */
+    public void remove(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (values[slot] != null && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        if (values[slot] == null) {
+            return;
+        }
+
+        // Move the following entries back, so no lookup stops at the removed slot.
+        values[slot] = null;
+        --size;
+        for (int next = (slot + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                keys[slot] = keys[next];
+                values[slot] = values[next];
+                values[next] = null;
+                slot = next;
+            }
+        }
+    }
+
+    /**
+     * @return number of entries inside the map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true, if there are no entries inside the map.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        keys = new long[16];
+        values = new Object[16];
+        size = 0;
+    }
+
+    /**
+     * Resizes the table and inserts all entries again.
+     *
+     * @param capacity the new capacity. Must be a power of two.
+     */
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = new long[capacity];
+        values = new Object[capacity];
+        size = 0;
+
+        for (int index = 0; index < oldKeys.length; ++index) {
+            if (oldValues[index] != null) {
+                put(oldKeys[index], (V) oldValues[index]);
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of the passed key.
+     *
+     * @param key the key.
+     * @return the hash of the key.
+     */
+    private static int hash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
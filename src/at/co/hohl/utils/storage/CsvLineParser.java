@@ -16,20 +16,54 @@
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
+
 package at.co.hohl.utils.storage;
 
 import com.sun.istack.internal.Nullable;
 
 /**
- * Implementation of a parser for a CSV line.
+ * Implementation of a parser for a CSV line. The line gets scanned once for the separators, the columns are only
+ * stored as ranges of the line. Numbers get parsed directly out of the line, strings are only created when they
+ * get requested. A parser could get reused for several lines.
  *
  * @author Michael Hohl
  */
 public class CsvLineParser {
     /**
-     * Parsed columns.
+     * Separator of the columns.
+     */
+    private static final char SEPARATOR = ';';
+
+    /**
+     * Encoded separator inside of a column.
+     */
+    private static final String ENCODED_SEPARATOR = "&#59";
+
+    /**
+     * Value of a column, which contains null.
+     */
+    private static final String NULL = "null";
+
+    /**
+     * The currently parsed line.
      */
-    private final String[] parsedColumns;
+    private CharSequence line;
+
+    /**
+     * Beginnings and ends of the parsed columns. (Two entries per column)
+     */
+    private int[] bounds = new int[32];
+
+    /**
+     * Number of parsed columns.
+     */
+    private int columns;
+
+    /**
+     * Creates a new CsvLineParser, which needs a line passed to parse() before it could get used.
+     */
+    public CsvLineParser() {
+    }
 
     /**
      * Creates a new CsvLineParser, and parses the passed line.
@@ -37,7 +71,35 @@ public class CsvLineParser {
      * @param csvLine the line to parse.
      */
     public CsvLineParser(String csvLine) {
-        parsedColumns = csvLine.split(";");
+        parse(csvLine);
+    }
+
+    /**
+     * Parses the passed line. Splits the columns like String.split(";") does, so empty columns at the end of the
+     * line get ignored.
+     *
+     * @param csvLine the line to parse.
+     */
+    public void parse(CharSequence csvLine) {
+        line = csvLine;
+        columns = 0;
+
+        int length = csvLine.length(), begin = 0;
+        for (int index = 0; index < length; ++index) {
+            if (csvLine.charAt(index) == SEPARATOR) {
+                addColumn(begin, index);
+                begin = index + 1;
+            }
+        }
+
+        if (columns == 0) {
+            addColumn(0, length);
+        } else {
+            addColumn(begin, length);
+            while (columns > 0 && bounds[columns * 2 - 2] == bounds[columns * 2 - 1]) {
+                --columns;
+            }
+        }
     }
 
     /**
@@ -48,12 +110,12 @@ public class CsvLineParser {
      */
     @Nullable
     public String getString(int index) {
-        if (index < parsedColumns.length) {
-            String column = parsedColumns[index];
-            if ("null".equals(column)) {
-                return null;
+        if (index < columns && !isNull(index)) {
+            String column = line.subSequence(bounds[index * 2], bounds[index * 2 + 1]).toString();
+            if (column.indexOf('&') >= 0) {
+                return column.replace(ENCODED_SEPARATOR, ";");
             } else {
-                return column.replace("&#59", ";");
+                return column;
             }
         } else {
             return null;
@@ -67,8 +129,8 @@ public class CsvLineParser {
      * @return the parsed value.
      */
     public double getDouble(int index) {
-        if (index < parsedColumns.length) {
-            return Double.parseDouble(parsedColumns[index]);
+        if (index < columns) {
+            return NumberParser.parseDouble(line, bounds[index * 2], bounds[index * 2 + 1]);
         } else {
             return 0;
         }
@@ -81,8 +143,8 @@ public class CsvLineParser {
      * @return the parsed value.
      */
     public int getInt(int index) {
-        if (index < parsedColumns.length) {
-            return Integer.parseInt(parsedColumns[index]);
+        if (index < columns) {
+            return NumberParser.parseInt(line, bounds[index * 2], bounds[index * 2 + 1]);
         } else {
             return 0;
         }
@@ -95,8 +157,8 @@ public class CsvLineParser {
      * @return the parsed value.
      */
     public Integer getInteger(int index) {
-        if (index < parsedColumns.length && !"null".equals(parsedColumns[index])) {
-            return Integer.valueOf(parsedColumns[index]);
+        if (index < columns && !isNull(index)) {
+            return NumberParser.parseInt(line, bounds[index * 2], bounds[index * 2 + 1]);
         } else {
             return null;
         }
@@ -106,6 +168,34 @@ public class CsvLineParser {
      * @return number of parsed columns.
      */
     public int columns() {
-        return parsedColumns.length;
+        return columns;
+    }
+
+    /**
+     * Checks if the column at the passed index contains null.
+     *
+     * @param index the index of the column.
+     * @return true, if the column contains null.
+     */
+    private boolean isNull(int index) {
+        return NumberParser.regionEquals(line, bounds[index * 2], bounds[index * 2 + 1], NULL);
+    }
+
+    /**
+     * Adds a column to the parsed columns.
+     *
+     * @param begin the index of the first char of the column.
+     * @param end   the index after the last char of the column.
+     */
+    private void addColumn(int begin, int end) {
+        if (columns * 2 == bounds.length) {
+            int[] newBounds = new int[bounds.length * 2];
+            System.arraycopy(bounds, 0, newBounds, 0, bounds.length);
+            bounds = newBounds;
+        }
+
+        bounds[columns * 2] = begin;
+        bounds[columns * 2 + 1] = end;
+        ++columns;
     }
 }
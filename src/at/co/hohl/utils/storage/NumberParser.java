@@ -0,0 +1,202 @@
+/*
+ * EasyTravel
+ * Copyright (C) 2011 Michael Hohl <http://www.hohl.co.at/>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.co.hohl.utils.storage;
+
+/**
+ * Parses numbers directly out of a range of a CharSequence, without creating a String for them. Numbers in the
+ * plain format written by the storage get parsed with a fast path. Everything else gets passed to the parse
+ * methods of Java, so the results and the thrown exceptions are exactly the same.
+ *
+ * @author Michael Hohl
+ */
+final class NumberParser {
+    /**
+     * Maximum number of digits of an int, which can't overflow.
+     */
+    private static final int MAX_INT_DIGITS = 9;
+
+    /**
+     * Maximum number of digits of a double, which are exactly representable as a double. (10^15 < 2^53)
+     */
+    private static final int MAX_DOUBLE_DIGITS = 15;
+
+    /**
+     * Maximum number of digits of a float, which are exactly representable as a float. (10^7 < 2^24)
+     */
+    private static final int MAX_FLOAT_DIGITS = 7;
+
+    /**
+     * Powers of ten, which are exactly representable as double.
+     */
+    private static final double[] DOUBLE_POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    /**
+     * Powers of ten, which are exactly representable as float.
+     */
+    private static final float[] FLOAT_POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f};
+
+    /**
+     * Parses an int like Integer.parseInt does.
+     *
+     * @param sequence the sequence which contains the number.
+     * @param begin    the index of the first char of the number.
+     * @param end      the index after the last char of the number.
+     * @return the parsed number.
+     * @throws NumberFormatException the range doesn't contain a valid int.
+     */
+    static int parseInt(CharSequence sequence, int begin, int end) {
+        int index = begin;
+        boolean negative = index < end && sequence.charAt(index) == '-';
+        if (negative) {
+            ++index;
+        }
+
+        if (index == end || end - index > MAX_INT_DIGITS) {
+            return Integer.parseInt(sequence.subSequence(begin, end).toString());
+        }
+
+        int value = 0;
+        for (; index < end; ++index) {
+            char c = sequence.charAt(index);
+            if (c < '0' || c > '9') {
+                return Integer.parseInt(sequence.subSequence(begin, end).toString());
+            }
+            value = value * 10 + (c - '0');
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a double like Double.parseDouble does. A plain decimal with up to 15 digits gets parsed by a single
+     * division of exact values, which is rounded correctly.
+     *
+     * @param sequence the sequence which contains the number.
+     * @param begin    the index of the first char of the number.
+     * @param end      the index after the last char of the number.
+     * @return the parsed number.
+     * @throws NumberFormatException the range doesn't contain a valid double.
+     */
+    static double parseDouble(CharSequence sequence, int begin, int end) {
+        int index = begin;
+        boolean negative = index < end && sequence.charAt(index) == '-';
+        if (negative) {
+            ++index;
+        }
+
+        long mantissa = 0;
+        int digits = 0, fractionDigits = 0;
+        boolean fraction = false;
+        for (; index < end; ++index) {
+            char c = sequence.charAt(index);
+            if (c >= '0' && c <= '9' && digits < MAX_DOUBLE_DIGITS) {
+                mantissa = mantissa * 10 + (c - '0');
+                ++digits;
+                if (fraction) {
+                    ++fractionDigits;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                return Double.parseDouble(sequence.subSequence(begin, end).toString());
+            }
+        }
+
+        if (digits == 0) {
+            return Double.parseDouble(sequence.subSequence(begin, end).toString());
+        }
+
+        double value = mantissa / DOUBLE_POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a float like Float.parseFloat does. A plain decimal with up to 7 digits gets parsed by a single
+     * division of exact values, which is rounded correctly.
+     *
+     * @param sequence the sequence which contains the number.
+     * @param begin    the index of the first char of the number.
+     * @param end      the index after the last char of the number.
+     * @return the parsed number.
+     * @throws NumberFormatException the range doesn't contain a valid float.
+     */
+    static float parseFloat(CharSequence sequence, int begin, int end) {
+        int index = begin;
+        boolean negative = index < end && sequence.charAt(index) == '-';
+        if (negative) {
+            ++index;
+        }
+
+        int mantissa = 0, digits = 0, fractionDigits = 0;
+        boolean fraction = false;
+        for (; index < end; ++index) {
+            char c = sequence.charAt(index);
+            if (c >= '0' && c <= '9' && digits < MAX_FLOAT_DIGITS) {
+                mantissa = mantissa * 10 + (c - '0');
+                ++digits;
+                if (fraction) {
+                    ++fractionDigits;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                return Float.parseFloat(sequence.subSequence(begin, end).toString());
+            }
+        }
+
+        if (digits == 0) {
+            return Float.parseFloat(sequence.subSequence(begin, end).toString());
+        }
+
+        float value = (float) mantissa / FLOAT_POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Checks if the range of the sequence equals the passed string.
+     *
+     * @param sequence the sequence which contains the range.
+     * @param begin    the index of the first char of the range.
+     * @param end      the index after the last char of the range.
+     * @param string   the string to compare with.
+     * @return true, if the range contains the same chars as the string.
+     */
+    static boolean regionEquals(CharSequence sequence, int begin, int end, String string) {
+        if (end - begin != string.length()) {
+            return false;
+        }
+
+        for (int index = 0; begin < end; ++begin, ++index) {
+            if (sequence.charAt(begin) != string.charAt(index)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * No need of creating an instance of that!
+     */
+    private NumberParser() {
+    }
+}
@@ -16,14 +16,13 @@
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
-package at.co.hohl.utils.storage;
 
-import java.util.HashMap;
-import java.util.Map;
+package at.co.hohl.utils.storage;
 
 /**
  * Parser used for parsing information out of a description string. A valid information string should look like:
- * CuboidArea{a=1, b=test, xyz=true}.
+ * CuboidArea{a=1, b=test, xyz=true}. The string gets scanned once, the properties are only stored as ranges of the
+ * string. Numbers get parsed directly out of the string, strings are only created when they get requested.
  *
  * @author Michael Hohl
  */
@@ -34,9 +33,19 @@ public class PropertiesParser {
     private final String type;
 
     /**
-     * Parsed properties.
+     * The parsed string.
+     */
+    private final String parsedString;
+
+    /**
+     * Beginnings and ends of the keys and values of the parsed properties. (Four entries per property)
      */
-    private final Map<String, String> properties = new HashMap<String, String>();
+    private int[] bounds = new int[32];
+
+    /**
+     * Number of parsed properties.
+     */
+    private int properties;
 
     /**
      * Creates a new parser.
@@ -45,22 +54,41 @@ public class PropertiesParser {
      * @throws SyntaxException thrown when the passed line isn't formatted valid.
      */
     public PropertiesParser(String lineToParse) throws SyntaxException {
-        if (lineToParse.matches("[A-Za-z0-9]+\\{.*\\}")) {
-            type = lineToParse.split("\\{")[0];
-            String[] propertyStrings =
-                lineToParse.substring(type.length() + 1, lineToParse.length() - 1).split(",");
+        parsedString = lineToParse;
 
-            for (String propertyString : propertyStrings) {
-                String[] splittedLine = propertyString.split("=");
+        // The string needs to look like "Type{...}" without line breaks between the braces.
+        int length = lineToParse.length(), typeEnd = 0;
+        while (typeEnd < length && isAlphanumeric(lineToParse.charAt(typeEnd))) {
+            ++typeEnd;
+        }
+        if (typeEnd == 0 || length - typeEnd < 2 || lineToParse.charAt(typeEnd) != '{' ||
+            lineToParse.charAt(length - 1) != '}') {
+            throw new SyntaxException("Invalid formatted string passed!");
+        }
+        int bodyBegin = typeEnd + 1, bodyEnd = length - 1;
+        for (int index = bodyBegin; index < bodyEnd; ++index) {
+            if (isLineTerminator(lineToParse.charAt(index))) {
+                throw new SyntaxException("Invalid formatted string passed!");
+            }
+        }
+        type = lineToParse.substring(0, typeEnd);
 
-                if (splittedLine.length == 2) {
-                    properties.put(splittedLine[0].trim(), splittedLine[1].trim());
-                } else {
-                    throw new SyntaxException("Invalid formatted properties!");
-                }
+        // Like String.split(","), empty properties at the end get ignored, if there is any comma.
+        if (lineToParse.indexOf(',', bodyBegin) >= 0) {
+            while (bodyEnd > bodyBegin && lineToParse.charAt(bodyEnd - 1) == ',') {
+                --bodyEnd;
+            }
+            if (bodyBegin == bodyEnd) {
+                return;
+            }
+        }
+
+        int propertyBegin = bodyBegin;
+        for (int index = bodyBegin; index <= bodyEnd; ++index) {
+            if (index == bodyEnd || lineToParse.charAt(index) == ',') {
+                addProperty(propertyBegin, index);
+                propertyBegin = index + 1;
             }
-        } else {
-            throw new SyntaxException("Invalid formatted string passed!");
         }
     }
 
@@ -78,7 +106,13 @@ public class PropertiesParser {
      * @return the value.
      */
     public String getString(String key) {
-        return properties.get(key);
+        int property = indexOf(key);
+
+        if (property >= 0) {
+            return parsedString.substring(bounds[property * 4 + 2], bounds[property * 4 + 3]);
+        } else {
+            return null;
+        }
     }
 
     /**
@@ -88,10 +122,10 @@ public class PropertiesParser {
      * @return the value.
      */
     public double getDouble(String key) {
-        String property = properties.get(key);
+        int property = indexOf(key);
 
-        if (property != null) {
-            return Double.parseDouble(property);
+        if (property >= 0) {
+            return NumberParser.parseDouble(parsedString, bounds[property * 4 + 2], bounds[property * 4 + 3]);
         } else {
             return 0;
         }
@@ -104,10 +138,10 @@ public class PropertiesParser {
      * @return the value.
      */
     public float getFloat(String key) {
-        String property = properties.get(key);
+        int property = indexOf(key);
 
-        if (property != null) {
-            return Float.parseFloat(property);
+        if (property >= 0) {
+            return NumberParser.parseFloat(parsedString, bounds[property * 4 + 2], bounds[property * 4 + 3]);
         } else {
             return 0;
         }
@@ -120,12 +154,112 @@ public class PropertiesParser {
      * @return the value.
      */
     public int getInt(String key) {
-        String property = properties.get(key);
+        int property = indexOf(key);
 
-        if (property != null) {
-            return Integer.parseInt(property);
+        if (property >= 0) {
+            return NumberParser.parseInt(parsedString, bounds[property * 4 + 2], bounds[property * 4 + 3]);
         } else {
             return 0;
         }
     }
+
+    /**
+     * Parses a single property and adds it. Like String.split("="), equal signs at the end of the property get
+     * ignored, so there must be exactly one equal sign before them.
+     *
+     * @param begin the index of the first char of the property.
+     * @param end   the index after the last char of the property.
+     * @throws SyntaxException thrown when the property isn't formatted valid.
+     */
+    private void addProperty(int begin, int end) throws SyntaxException {
+        while (end > begin && parsedString.charAt(end - 1) == '=') {
+            --end;
+        }
+
+        int separator = -1;
+        for (int index = begin; index < end; ++index) {
+            if (parsedString.charAt(index) == '=') {
+                if (separator >= 0) {
+                    throw new SyntaxException("Invalid formatted properties!");
+                }
+                separator = index;
+            }
+        }
+        if (separator < 0) {
+            throw new SyntaxException("Invalid formatted properties!");
+        }
+
+        if (properties * 4 == bounds.length) {
+            int[] newBounds = new int[bounds.length * 2];
+            System.arraycopy(bounds, 0, newBounds, 0, bounds.length);
+            bounds = newBounds;
+        }
+
+        int offset = properties * 4;
+        bounds[offset + 1] = trimEnd(begin, separator);
+        bounds[offset] = trimBegin(begin, bounds[offset + 1]);
+        bounds[offset + 3] = trimEnd(separator + 1, end);
+        bounds[offset + 2] = trimBegin(separator + 1, bounds[offset + 3]);
+        ++properties;
+    }
+
+    /**
+     * Looks up the property with the passed key. If a key got passed several times, the last one wins.
+     *
+     * @param key the key to look up.
+     * @return the index of the property, or -1 if there is no property with that key.
+     */
+    private int indexOf(String key) {
+        for (int property = properties - 1; property >= 0; --property) {
+            if (NumberParser.regionEquals(parsedString, bounds[property * 4], bounds[property * 4 + 1], key)) {
+                return property;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Skips the leading whitespace of a range, like String.trim() does.
+     *
+     * @param begin the index of the first char of the range.
+     * @param end   the index after the last char of the range.
+     * @return the index of the first char, which isn't whitespace.
+     */
+    private int trimBegin(int begin, int end) {
+        while (begin < end && parsedString.charAt(begin) <= ' ') {
+            ++begin;
+        }
+        return begin;
+    }
+
+    /**
+     * Skips the trailing whitespace of a range, like String.trim() does.
+     *
+     * @param begin the index of the first char of the range.
+     * @param end   the index after the last char of the range.
+     * @return the index after the last char, which isn't whitespace.
+     */
+    private int trimEnd(int begin, int end) {
+        while (end > begin && parsedString.charAt(end - 1) <= ' ') {
+            --end;
+        }
+        return end;
+    }
+
+    /**
+     * @param c the char to check.
+     * @return true, if the char is allowed in the type.
+     */
+    private static boolean isAlphanumeric(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
+    }
+
+    /**
+     * @param c the char to check.
+     * @return true, if the char terminates a line. (Not allowed between the braces)
+     */
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
 }